@@ -0,0 +1,181 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+// Represents one operation to measure, on fixtures built by setup
+interface IBenchmark {
+
+  // the name this benchmark is reported under, including its parameters
+  String name();
+
+  // builds the fixtures the operation runs on
+  void setup();
+
+  // runs the operation once and returns its result so it isn't optimized away
+  Object run();
+}
+
+// A small JMH-style harness for the game's hot paths. JMH itself can't be used here:
+// it refuses benchmark classes in the default package, and every game class is
+// package-private in the default package. Each benchmark gets timed warmup and
+// measurement iterations on one thread; the harness reports operations per second and,
+// like JMH's GC profiler, bytes allocated per operation and the collections that ran.
+//
+// Compile the bench sources together with src and javalib, then run
+//   java BenchmarkRunner [results.csv [baseline.csv]]
+// to print the results, save them as CSV, and compare them against an earlier run.
+// The kernel benchmarks cover the vector kernels too when simd is compiled in and the
+// JVM runs with --add-modules jdk.incubator.vector, as VectorKernels describes.
+class BenchmarkRunner {
+
+  static final int WARMUP_ITERATIONS = 5;
+  static final int MEASURE_ITERATIONS = 10;
+  static final long ITERATION_NANOS = 200_000_000L;
+
+  // results are written here so the JIT can't drop the operations that produced them
+  static volatile Object sink;
+
+  com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  // measures the given benchmark
+  BenchmarkResult measure(IBenchmark bench) {
+    bench.setup();
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      this.iteration(bench);
+    }
+    double[] opsPerSecond = new double[MEASURE_ITERATIONS];
+    long ops = 0;
+    long allocated = 0;
+    long collections = this.collections();
+    long thread = Thread.currentThread().getId();
+    for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+      long bytesBefore = this.threads.getThreadAllocatedBytes(thread);
+      long start = System.nanoTime();
+      long iterationOps = this.iteration(bench);
+      long elapsed = System.nanoTime() - start;
+      allocated += this.threads.getThreadAllocatedBytes(thread) - bytesBefore;
+      ops += iterationOps;
+      opsPerSecond[i] = iterationOps / (elapsed / 1e9);
+    }
+    return new BenchmarkResult(bench.name(), opsPerSecond, (double) allocated / ops,
+        this.collections() - collections);
+  }
+
+  // runs the given benchmark for one iteration and returns how many operations ran
+  long iteration(IBenchmark bench) {
+    long deadline = System.nanoTime() + ITERATION_NANOS;
+    long ops = 0;
+    while (System.nanoTime() < deadline) {
+      for (int i = 0; i < 16; i++) {
+        sink = bench.run();
+      }
+      ops += 16;
+    }
+    return ops;
+  }
+
+  // the number of garbage collections run so far
+  long collections() {
+    long total = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, gc.getCollectionCount());
+    }
+    return total;
+  }
+
+  // runs every benchmark in GameBenchmarks, prints the results, and if given file
+  // names, saves them as CSV and compares them with an earlier CSV
+  public static void main(String[] args) throws FileNotFoundException {
+    Map<String, Double> baseline = new HashMap<String, Double>();
+    if (args.length > 1) {
+      Scanner in = new Scanner(new File(args[1]));
+      in.nextLine();
+      while (in.hasNextLine()) {
+        String[] fields = in.nextLine().split(",");
+        baseline.put(fields[0], Double.parseDouble(fields[1]));
+      }
+      in.close();
+    }
+
+    BenchmarkRunner runner = new BenchmarkRunner();
+    List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+    System.out.println(BenchmarkResult.HEADER);
+    for (IBenchmark bench : GameBenchmarks.all()) {
+      BenchmarkResult result = runner.measure(bench);
+      results.add(result);
+      Double before = baseline.get(result.name);
+      System.out.println(result
+          + (before == null ? "" : String.format("  (%.2fx baseline)", result.mean() / before)));
+    }
+
+    if (args.length > 0) {
+      PrintWriter out = new PrintWriter(args[0]);
+      out.println("benchmark,ops_per_s,error,bytes_per_op,gc_count");
+      for (BenchmarkResult result : results) {
+        out.println(result.toCsv());
+      }
+      out.close();
+    }
+  }
+}
+
+// Represents the measurements of one benchmark
+class BenchmarkResult {
+
+  static final String HEADER = String.format("%-48s %14s %12s %14s %6s",
+      "Benchmark", "ops/s", "error", "B/op", "GCs");
+
+  String name;
+  double[] opsPerSecond;
+  double bytesPerOp;
+  long collections;
+
+  // Constructor
+  BenchmarkResult(String name, double[] opsPerSecond, double bytesPerOp, long collections) {
+    this.name = name;
+    this.opsPerSecond = opsPerSecond;
+    this.bytesPerOp = bytesPerOp;
+    this.collections = collections;
+  }
+
+  // the average operations per second over the measured iterations
+  double mean() {
+    double total = 0;
+    for (double ops : this.opsPerSecond) {
+      total += ops;
+    }
+    return total / this.opsPerSecond.length;
+  }
+
+  // the half-width of a 99.9% confidence interval around the mean, as JMH reports it
+  // with a normal approximation
+  double error() {
+    double mean = this.mean();
+    double squares = 0;
+    for (double ops : this.opsPerSecond) {
+      squares += (ops - mean) * (ops - mean);
+    }
+    double stdDev = Math.sqrt(squares / Math.max(1, this.opsPerSecond.length - 1));
+    return 3.29 * stdDev / Math.sqrt(this.opsPerSecond.length);
+  }
+
+  // one row of the results table
+  public String toString() {
+    return String.format("%-48s %14.1f %12.1f %14.1f %6d",
+        this.name, this.mean(), this.error(), this.bytesPerOp, this.collections);
+  }
+
+  // one line of the results CSV
+  String toCsv() {
+    return String.format("%s,%.3f,%.3f,%.3f,%d",
+        this.name, this.mean(), this.error(), this.bytesPerOp, this.collections);
+  }
+}
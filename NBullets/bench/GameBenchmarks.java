@@ -0,0 +1,445 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// The benchmarks run by BenchmarkRunner, over fixtures built from fixed seeds
+class GameBenchmarks {
+
+  static final long SEED = 20240501L;
+  static final int[] BULLET_COUNTS = {100, 1000, 5000};
+  static final int[] SHIP_COUNTS = {10, 100};
+  static final int[] CHAIN_DEPTHS = {1, 4};
+  static final int[] WAVE_SIZES = {20000, 200000};
+  static final int KERNEL_SHIPS = 8;
+
+  // every benchmark over every combination of its parameters
+  static List<IBenchmark> all() {
+    List<IBenchmark> benches = new ArrayList<IBenchmark>();
+    for (int bullets : BULLET_COUNTS) {
+      for (int ships : SHIP_COUNTS) {
+        for (int chain : CHAIN_DEPTHS) {
+          benches.add(new OnTickBenchmark(bullets, ships, chain));
+        }
+        benches.add(new UpdateBulletsBenchmark(bullets, ships));
+        benches.add(new CountHitShipsBenchmark(bullets, ships));
+        benches.add(new UpdateShipsBenchmark(bullets, ships));
+        benches.add(new MakeSceneBenchmark(bullets, ships));
+      }
+    }
+    for (int ships : SHIP_COUNTS) {
+      benches.add(new GenerateRandomShipsBenchmark(ships));
+    }
+    for (int chain : CHAIN_DEPTHS) {
+      benches.add(new GenerateNewBulletsBenchmark(chain));
+    }
+    for (String scenario : Scenario.NAMES) {
+      benches.add(new ScenarioBenchmark(scenario));
+    }
+    for (int ships : new int[] {KERNEL_SHIPS, SHIP_COUNTS[1]}) {
+      benches.add(new WaveStepBenchmark(WAVE_SIZES[0], ships, false));
+      benches.add(new WaveStepBenchmark(WAVE_SIZES[0], ships, true));
+    }
+    List<IPieceKernels> kernels = new ArrayList<IPieceKernels>();
+    kernels.add(new ScalarKernels());
+    if (PieceKernels.vector() != null) {
+      kernels.add(PieceKernels.vector());
+    }
+    for (int wave : WAVE_SIZES) {
+      for (IPieceKernels kernel : kernels) {
+        for (String op : KernelBenchmark.OPS) {
+          benches.add(new KernelBenchmark(kernel, op, wave));
+        }
+      }
+    }
+    return benches;
+  }
+
+  // the given number of bullets spread over the field, each with the given number of
+  // collisions so far, from the given seed
+  static ILoBullet bullets(int count, int chain, long seed) {
+    Random rand = new Random(seed);
+    ILoBullet bullets = new MtLoBullet();
+    for (int i = 0; i < count; i++) {
+      bullets = new ConsLoBullet(
+          new Bullet(rand.nextDouble() * NBullets.WIDTH, rand.nextDouble() * NBullets.HEIGHT,
+              NBullets.BULLETSIZE, rand.nextInt(360), chain, NBullets.BULLETCOLOR),
+          bullets);
+    }
+    return bullets;
+  }
+
+  // the given number of ships spread over the field, from the given seed
+  static ILoShip ships(int count, long seed) {
+    Random rand = new Random(seed);
+    ILoShip ships = new MtLoShip();
+    for (int i = 0; i < count; i++) {
+      ships = new ConsLoShip(
+          new Ship(rand.nextDouble() * NBullets.WIDTH, rand.nextDouble() * NBullets.HEIGHT,
+              NBullets.SHIPSIZE, 180 * rand.nextInt(2), NBullets.SHIPCOLOR),
+          ships);
+    }
+    return ships;
+  }
+}
+
+// Measures one NBullets.onTick, restarting from the same bullets and ships each time
+class OnTickBenchmark implements IBenchmark {
+  int bulletCount;
+  int shipCount;
+  int chain;
+  ILoBullet bullets;
+  ILoShip ships;
+  NBullets world;
+
+  // Constructor
+  OnTickBenchmark(int bulletCount, int shipCount, int chain) {
+    this.bulletCount = bulletCount;
+    this.shipCount = shipCount;
+    this.chain = chain;
+  }
+
+  public String name() {
+    return "onTick(bullets=" + this.bulletCount + ",ships=" + this.shipCount
+        + ",chain=" + this.chain + ")";
+  }
+
+  public void setup() {
+    this.bullets = GameBenchmarks.bullets(this.bulletCount, this.chain, GameBenchmarks.SEED);
+    this.ships = GameBenchmarks.ships(this.shipCount, GameBenchmarks.SEED + 1);
+    this.world = new NBullets(new GameRandom(GameBenchmarks.SEED + 2));
+  }
+
+  public Object run() {
+    this.world.sim.activeBullets = this.bullets;
+    this.world.sim.activeShips = this.ships;
+    return this.world.onTick();
+  }
+}
+
+// Measures playing one of the named Scenarios through, from a new game each time
+class ScenarioBenchmark implements IBenchmark {
+  String scenarioName;
+  Scenario scenario;
+
+  // Constructor
+  ScenarioBenchmark(String scenarioName) {
+    this.scenarioName = scenarioName;
+  }
+
+  public String name() {
+    return "scenario(" + this.scenarioName + ")";
+  }
+
+  public void setup() {
+    this.scenario = Scenario.named(this.scenarioName);
+  }
+
+  public Object run() {
+    try {
+      return new ScenarioRunner(this.scenario).run(null);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
+
+// Measures ILoBullet.updateBullets
+class UpdateBulletsBenchmark implements IBenchmark {
+  int bulletCount;
+  int shipCount;
+  ILoBullet bullets;
+  ILoShip ships;
+
+  // Constructor
+  UpdateBulletsBenchmark(int bulletCount, int shipCount) {
+    this.bulletCount = bulletCount;
+    this.shipCount = shipCount;
+  }
+
+  public String name() {
+    return "updateBullets(bullets=" + this.bulletCount + ",ships=" + this.shipCount + ")";
+  }
+
+  public void setup() {
+    this.bullets = GameBenchmarks.bullets(this.bulletCount, 1, GameBenchmarks.SEED);
+    this.ships = GameBenchmarks.ships(this.shipCount, GameBenchmarks.SEED + 1);
+  }
+
+  public Object run() {
+    return this.bullets.updateBullets(this.ships);
+  }
+}
+
+// Measures ILoBullet.countHitShips
+class CountHitShipsBenchmark implements IBenchmark {
+  int bulletCount;
+  int shipCount;
+  ILoBullet bullets;
+  ILoShip ships;
+
+  // Constructor
+  CountHitShipsBenchmark(int bulletCount, int shipCount) {
+    this.bulletCount = bulletCount;
+    this.shipCount = shipCount;
+  }
+
+  public String name() {
+    return "countHitShips(bullets=" + this.bulletCount + ",ships=" + this.shipCount + ")";
+  }
+
+  public void setup() {
+    this.bullets = GameBenchmarks.bullets(this.bulletCount, 1, GameBenchmarks.SEED);
+    this.ships = GameBenchmarks.ships(this.shipCount, GameBenchmarks.SEED + 1);
+  }
+
+  public Object run() {
+    return this.bullets.countHitShips(this.ships);
+  }
+}
+
+// Measures ILoShip.updateShips
+class UpdateShipsBenchmark implements IBenchmark {
+  int bulletCount;
+  int shipCount;
+  ILoBullet bullets;
+  ILoShip ships;
+
+  // Constructor
+  UpdateShipsBenchmark(int bulletCount, int shipCount) {
+    this.bulletCount = bulletCount;
+    this.shipCount = shipCount;
+  }
+
+  public String name() {
+    return "updateShips(bullets=" + this.bulletCount + ",ships=" + this.shipCount + ")";
+  }
+
+  public void setup() {
+    this.bullets = GameBenchmarks.bullets(this.bulletCount, 1, GameBenchmarks.SEED);
+    this.ships = GameBenchmarks.ships(this.shipCount, GameBenchmarks.SEED + 1);
+  }
+
+  public Object run() {
+    return this.ships.updateShips(this.bullets);
+  }
+}
+
+// Measures NBullets.makeScene
+class MakeSceneBenchmark implements IBenchmark {
+  int bulletCount;
+  int shipCount;
+  NBullets world;
+
+  // Constructor
+  MakeSceneBenchmark(int bulletCount, int shipCount) {
+    this.bulletCount = bulletCount;
+    this.shipCount = shipCount;
+  }
+
+  public String name() {
+    return "makeScene(bullets=" + this.bulletCount + ",ships=" + this.shipCount + ")";
+  }
+
+  public void setup() {
+    this.world = new NBullets(new Simulation(NBullets.DEFAULTBULLETS, 0,
+        GameBenchmarks.bullets(this.bulletCount, 1, GameBenchmarks.SEED),
+        GameBenchmarks.ships(this.shipCount, GameBenchmarks.SEED + 1), 0,
+        new Random(GameBenchmarks.SEED + 2)));
+  }
+
+  public Object run() {
+    return this.world.makeScene();
+  }
+}
+
+// Measures Simulation.generateRandomShips onto an existing list of ships
+class GenerateRandomShipsBenchmark implements IBenchmark {
+  int shipCount;
+  ILoShip ships;
+  Simulation sim;
+
+  // Constructor
+  GenerateRandomShipsBenchmark(int shipCount) {
+    this.shipCount = shipCount;
+  }
+
+  public String name() {
+    return "generateRandomShips(ships=" + this.shipCount + ")";
+  }
+
+  public void setup() {
+    this.ships = GameBenchmarks.ships(this.shipCount, GameBenchmarks.SEED + 1);
+    this.sim = new Simulation(new Random(GameBenchmarks.SEED + 2));
+  }
+
+  public Object run() {
+    return this.sim.generateRandomShips(this.ships);
+  }
+}
+
+// Measures the fan-out of one bullet hitting a ship with the given chain depth
+class GenerateNewBulletsBenchmark implements IBenchmark {
+  int chain;
+  Bullet bullet;
+  ILoBullet rest;
+
+  // Constructor
+  GenerateNewBulletsBenchmark(int chain) {
+    this.chain = chain;
+  }
+
+  public String name() {
+    return "generateNewBullets(chain=" + this.chain + ")";
+  }
+
+  public void setup() {
+    this.bullet = new Bullet(NBullets.WIDTH / 2, NBullets.HEIGHT / 2, NBullets.BULLETSIZE,
+        270, this.chain, NBullets.BULLETCOLOR);
+    this.rest = new MtLoBullet();
+  }
+
+  public Object run() {
+    return this.bullet.generateNewBullets(this.chain + 1, 360 / (this.chain + 1), this.rest);
+  }
+}
+
+// Measures one IPieceKernels operation over a wave of bullets kept in flat arrays, as a
+// BulletStore keeps them: moving them there and back, marking those off the screen, or
+// marking those that touch any of a few ships
+class KernelBenchmark implements IBenchmark {
+  static final String[] OPS = {"move", "offScreen", "collisions"};
+
+  IPieceKernels kernels;
+  String op;
+  int size;
+  double[] xs;
+  double[] ys;
+  double[] dxs;
+  double[] dys;
+  // the opposite movement, so moving there and back leaves the bullets on the field
+  double[] backDxs;
+  double[] backDys;
+  int[] sizes;
+  long[] mask;
+  double[] shipXs;
+  double[] shipYs;
+  int[] shipSizes;
+
+  // Constructor
+  KernelBenchmark(IPieceKernels kernels, String op, int size) {
+    this.kernels = kernels;
+    this.op = op;
+    this.size = size;
+  }
+
+  public String name() {
+    return "kernel." + this.op + "(" + this.kernels.name() + ",bullets=" + this.size + ")";
+  }
+
+  public void setup() {
+    Random rand = new Random(GameBenchmarks.SEED);
+    this.xs = new double[this.size];
+    this.ys = new double[this.size];
+    this.dxs = new double[this.size];
+    this.dys = new double[this.size];
+    this.backDxs = new double[this.size];
+    this.backDys = new double[this.size];
+    this.sizes = new int[this.size];
+    this.mask = new long[(this.size + 63) >>> 6];
+    for (int i = 0; i < this.size; i++) {
+      int direction = rand.nextInt(360);
+      // a few just past the edges, so some are off the screen
+      this.xs[i] = rand.nextDouble() * (NBullets.WIDTH + 20) - 10;
+      this.ys[i] = rand.nextDouble() * (NBullets.HEIGHT + 20) - 10;
+      this.dxs[i] = GameConfig.DEFAULT.dxTable[direction];
+      this.dys[i] = GameConfig.DEFAULT.dyTable[direction];
+      this.backDxs[i] = -this.dxs[i];
+      this.backDys[i] = -this.dys[i];
+      this.sizes[i] = 2 + 2 * rand.nextInt(6);
+    }
+    this.shipXs = new double[GameBenchmarks.KERNEL_SHIPS];
+    this.shipYs = new double[GameBenchmarks.KERNEL_SHIPS];
+    this.shipSizes = new int[GameBenchmarks.KERNEL_SHIPS];
+    for (int j = 0; j < GameBenchmarks.KERNEL_SHIPS; j++) {
+      this.shipXs[j] = rand.nextDouble() * NBullets.WIDTH;
+      this.shipYs[j] = rand.nextDouble() * NBullets.HEIGHT;
+      this.shipSizes[j] = NBullets.SHIPSIZE;
+    }
+  }
+
+  public Object run() {
+    if (this.op.equals("move")) {
+      // there and back, so the bullets stay on the field however long this runs
+      this.kernels.move(this.xs, this.ys, this.dxs, this.dys, 0, this.size);
+      this.kernels.move(this.xs, this.ys, this.backDxs, this.backDys, 0, this.size);
+      return this.xs;
+    }
+    if (this.op.equals("offScreen")) {
+      this.kernels.markOffScreen(this.xs, this.ys, 0, this.size, this.mask);
+      return this.mask;
+    }
+    this.kernels.markCollisions(this.xs, this.ys, this.sizes, 0, this.size,
+        this.shipXs, this.shipYs, this.shipSizes, GameBenchmarks.KERNEL_SHIPS, this.mask);
+    return this.mask;
+  }
+}
+
+// Measures a step of a wave of bullets in a BulletStore against the given number of
+// ships, in doubles or in fixed point, topping the wave back up after each, so the two
+// can be compared: fixed point must be no slower. With few ships the bullets are tested
+// with the collision kernels, and with many on the grid. The ships stay put, so a hit
+// bullet splits into none, as if the budget had no room, and the wave is topped up with
+// new bullets instead, to keep it from piling up on the ships.
+class WaveStepBenchmark implements IBenchmark {
+  int size;
+  int shipCount;
+  boolean fixedPoint;
+  GameConfig config;
+  Random rand;
+  BulletStore store;
+  ILoShip ships;
+  HitSet hits;
+
+  // Constructor
+  WaveStepBenchmark(int size, int shipCount, boolean fixedPoint) {
+    this.size = size;
+    this.shipCount = shipCount;
+    this.fixedPoint = fixedPoint;
+  }
+
+  public String name() {
+    return "waveStep(bullets=" + this.size + ",ships=" + this.shipCount
+        + (this.fixedPoint ? ",fixed" : ",double") + ")";
+  }
+
+  public void setup() {
+    this.config = this.fixedPoint ? GameConfig.DEFAULT.withFixedPoint() : GameConfig.DEFAULT;
+    this.rand = new Random(GameBenchmarks.SEED);
+    this.store = new BulletStore(this.config, this.size);
+    this.ships = GameBenchmarks.ships(this.shipCount, GameBenchmarks.SEED + 1);
+    this.hits = new HitSet();
+    this.hits.shipGrid.fixedPoint = this.fixedPoint;
+    this.hits.budgeted = true;
+    this.hits.splitLimit = 0;
+    this.topUp();
+  }
+
+  public Object run() {
+    this.hits.resolve(this.store, this.ships);
+    this.store.updateBulletsFrom(this.hits, 0);
+    this.topUp();
+    return this.store;
+  }
+
+  // adds bullets at random points on the field until the wave is full again
+  void topUp() {
+    while (this.store.count < this.size) {
+      this.store.add(this.config.snap(this.rand.nextDouble() * NBullets.WIDTH),
+          this.config.snap(this.rand.nextDouble() * NBullets.HEIGHT), NBullets.BULLETSIZE,
+          this.rand.nextInt(360), 0, NBullets.BULLETCOLOR);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// The kernels on the incubating Vector API, working through as many pieces at once as
+// the widest vectors this CPU prefers hold doubles: 2, 4 or 8. The slots before the
+// first whole vector and after the last go through ScalarKernels, as does any vector
+// with a lane off the screen or touching a circle: those are rare, and turning a
+// vector mask into bits isn't compiled to vector instructions on every JDK, while
+// anyTrue is. The lanes do the same IEEE operations in the same order as the scalar
+// loops, so the results are the same to the bit.
+//
+// This file is its own source root, since it needs the jdk.incubator.vector module to
+// compile and run. Compile it after src, and run with the module added:
+//   javac --add-modules jdk.incubator.vector -cp <src classes> -d <classes> simd/*.java
+//   java --add-modules jdk.incubator.vector -cp <classes>:... NBullets
+// PieceKernels loads it by name, and falls back to ScalarKernels without it.
+class VectorKernels implements IPieceKernels {
+
+  static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+  static final int LANES = SPECIES.length();
+  // the ints with as many lanes as SPECIES, for the sizes of the pieces
+  static final VectorSpecies<Integer> INT_SPECIES = VectorSpecies.of(int.class,
+      VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+  // the number of pieces markCollisions tests against every circle at a time, whose
+  // coordinates and sizes come to 20KB
+  static final int BLOCK = 1024;
+  ScalarKernels scalar = new ScalarKernels();
+
+  // the name these kernels are reported under
+  public String name() {
+    return "vector x" + LANES;
+  }
+
+  // moves each piece in the range by its dx and dy
+  public void move(double[] xs, double[] ys, double[] dxs, double[] dys, int from, int to) {
+    int end = from + SPECIES.loopBound(to - from);
+    for (int i = from; i < end; i += LANES) {
+      DoubleVector.fromArray(SPECIES, xs, i).add(DoubleVector.fromArray(SPECIES, dxs, i))
+          .intoArray(xs, i);
+      DoubleVector.fromArray(SPECIES, ys, i).add(DoubleVector.fromArray(SPECIES, dys, i))
+          .intoArray(ys, i);
+    }
+    this.scalar.move(xs, ys, dxs, dys, end, to);
+  }
+
+  // sets the bits of the pieces in the range that are off the screen and clears the rest
+  public void markOffScreen(double[] xs, double[] ys, int from, int to, long[] mask) {
+    int end = from + SPECIES.loopBound(to - from);
+    for (int i = from; i < end; i += LANES) {
+      DoubleVector x = DoubleVector.fromArray(SPECIES, xs, i);
+      DoubleVector y = DoubleVector.fromArray(SPECIES, ys, i);
+      VectorMask<Double> off = x.compare(VectorOperators.GT, (double) NBullets.WIDTH)
+          .or(x.compare(VectorOperators.LT, 0.0))
+          .or(y.compare(VectorOperators.LT, 0.0))
+          .or(y.compare(VectorOperators.GT, (double) NBullets.HEIGHT));
+      if (off.anyTrue()) {
+        this.scalar.markOffScreen(xs, ys, i, i + LANES, mask);
+      }
+      else {
+        this.clearBits(mask, i);
+      }
+    }
+    this.scalar.markOffScreen(xs, ys, end, to, mask);
+  }
+
+  // clears the bits of the vector of pieces starting at slot i
+  void clearBits(long[] mask, int i) {
+    long lanes = ((1L << LANES) - 1) << (i & 63);
+    if ((i & 63) + LANES <= 64) {
+      mask[i >>> 6] &= ~lanes;
+    }
+    else {
+      for (int lane = i; lane < i + LANES; lane++) {
+        mask[lane >>> 6] &= ~(1L << lane);
+      }
+    }
+  }
+
+  // sets the bits of the pieces in the range that touch any of the circles, and
+  // returns the circles touched. The pieces go a block at a time, and each circle runs
+  // over the whole block before the next: that keeps the block in the L1 cache while
+  // every circle's test stays a short loop the JIT keeps in registers.
+  public long markCollisions(double[] xs, double[] ys, int[] sizes, int from, int to,
+      double[] circleXs, double[] circleYs, int[] circleSizes, int count, long[] mask) {
+    int end = from + SPECIES.loopBound(to - from);
+    long touched = 0;
+    for (int block = from; block < end; block += BLOCK) {
+      int blockEnd = Math.min(end, block + BLOCK);
+      for (int j = 0; j < count; j++) {
+        if (this.markCollisions(xs, ys, sizes, block, blockEnd,
+            circleXs[j], circleYs[j], circleSizes[j], mask)) {
+          touched |= 1L << j;
+        }
+      }
+    }
+    return touched | this.scalar.markCollisions(xs, ys, sizes, end, to,
+        circleXs, circleYs, circleSizes, count, mask);
+  }
+
+  // sets the bits of the pieces in the whole vectors from from to to that touch the given
+  // circle, and determines if any did
+  boolean markCollisions(double[] xs, double[] ys, int[] sizes, int from, int to,
+      double x, double y, int size, long[] mask) {
+    boolean any = false;
+    for (int i = from; i < to; i += LANES) {
+      DoubleVector distX = DoubleVector.fromArray(SPECIES, xs, i).sub(x);
+      DoubleVector distY = DoubleVector.fromArray(SPECIES, ys, i).sub(y);
+      DoubleVector reach = (DoubleVector) IntVector.fromArray(INT_SPECIES, sizes, i).add(size)
+          .convertShape(VectorOperators.I2D, SPECIES, 0);
+      if (distX.mul(distX).add(distY.mul(distY))
+          .compare(VectorOperators.LE, reach.mul(reach)).anyTrue()) {
+        any |= this.markLanes(xs, ys, sizes, i, x, y, size, mask);
+      }
+    }
+    return any;
+  }
+
+  // sets the bits of the pieces in the vector starting at slot i that touch the given
+  // circle, one at a time, and determines if any did
+  boolean markLanes(double[] xs, double[] ys, int[] sizes, int i,
+      double x, double y, int size, long[] mask) {
+    boolean any = false;
+    for (int lane = i; lane < i + LANES; lane++) {
+      if (AGamePiece.circlesCollided(xs[lane], ys[lane], sizes[lane], x, y, size)) {
+        mask[lane >>> 6] |= 1L << lane;
+        any = true;
+      }
+    }
+    return any;
+  }
+}
@@ -0,0 +1,273 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Runs many independent headless games in parallel, for every GameConfig in a
+// parameter grid and a number of seeds each, and collects the scores. Every game
+// gets its own GameRandom seeded from a SplittableRandom split made before any game
+// starts, so the results for a given seed are the same however many threads run them.
+// Games whose steps cover several ticks fire and stop on the same ticks of game time,
+// and report their length in ticks.
+class BatchRunner {
+
+  // games with fewer than this many left to run are played on the calling thread
+  static final int GAMES_PER_TASK = 4;
+
+  List<GameConfig> configs;
+  int gamesPerConfig;
+  long seed;
+  // a bullet is fired every this many ticks until the game runs out
+  int fireInterval;
+  // games still running after this many ticks are stopped where they are
+  long maxTicks;
+
+  // Constructor
+  BatchRunner(List<GameConfig> configs, int gamesPerConfig, long seed,
+      int fireInterval, long maxTicks) {
+    this.configs = configs;
+    this.gamesPerConfig = gamesPerConfig;
+    this.seed = seed;
+    this.fireInterval = fireInterval;
+    this.maxTicks = maxTicks;
+  }
+
+  // every combination of the given starting bullets, ship spawn rates,
+  // bullet speeds and maximum bullet sizes
+  static List<GameConfig> grid(int[] startingBullets, double[] shipSpawnRates,
+      int[] bulletSpeeds, int[] maxBulletSizes) {
+    List<GameConfig> configs = new ArrayList<GameConfig>();
+    for (int bullets : startingBullets) {
+      for (double spawnRate : shipSpawnRates) {
+        for (int speed : bulletSpeeds) {
+          for (int maxSize : maxBulletSizes) {
+            configs.add(new GameConfig(bullets, spawnRate, speed, maxSize));
+          }
+        }
+      }
+    }
+    return configs;
+  }
+
+  // the given settings with steps that each cover the given number of ticks
+  static List<GameConfig> withSteps(List<GameConfig> configs, int stepMultiplier) {
+    List<GameConfig> stepped = new ArrayList<GameConfig>();
+    for (GameConfig config : configs) {
+      stepped.add(config.withSteps(stepMultiplier));
+    }
+    return stepped;
+  }
+
+  // plays every game on a pool with the given number of threads
+  BatchReport run(int threads) {
+    int games = this.configs.size() * this.gamesPerConfig;
+    long[] gameSeeds = new long[games];
+    SplittableRandom root = new SplittableRandom(this.seed);
+    for (int i = 0; i < games; i++) {
+      gameSeeds[i] = root.split().nextLong();
+    }
+    int[] scores = new int[games];
+    long[] ticks = new long[games];
+
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    long start = System.nanoTime();
+    try {
+      pool.invoke(new GameTask(this, gameSeeds, scores, ticks, 0, games));
+    }
+    finally {
+      pool.shutdown();
+    }
+    long elapsed = System.nanoTime() - start;
+
+    List<BatchResult> results = new ArrayList<BatchResult>();
+    for (int c = 0; c < this.configs.size(); c++) {
+      int from = c * this.gamesPerConfig;
+      int to = from + this.gamesPerConfig;
+      results.add(new BatchResult(this.configs.get(c),
+          Arrays.copyOfRange(scores, from, to), Arrays.copyOfRange(ticks, from, to)));
+    }
+    return new BatchReport(results, elapsed);
+  }
+
+  // plays the game with the given index and seed, recording its score and length
+  void play(int game, long gameSeed, int[] scores, long[] ticks) {
+    GameConfig config = this.configs.get(game / this.gamesPerConfig);
+    Simulation sim = new Simulation(config, new GameRandom(gameSeed), new BulletStore(config));
+    int fireSteps = Math.max(1, this.fireInterval / config.stepMultiplier);
+    long maxSteps = this.maxTicks / config.stepMultiplier;
+    while (!sim.isOver() && sim.tick < maxSteps) {
+      if (sim.tick % fireSteps == 0) {
+        sim.fire();
+      }
+      sim.step();
+    }
+    scores[game] = sim.shipsDestroyed;
+    ticks[game] = sim.tick * config.stepMultiplier;
+  }
+
+  // runs a batch of 1000 games of up to 2000 ticks per setting over a small grid
+  // on every core and prints the results, given as: [ticks per step]
+  public static void main(String[] args) {
+    List<GameConfig> configs = grid(
+        new int[] {5, 10},
+        new double[] {1, 2},
+        new int[] {NBullets.BULLETSPEED},
+        new int[] {NBullets.MAX_BULLETSIZE / 2, NBullets.MAX_BULLETSIZE});
+    if (args.length > 0) {
+      configs = withSteps(configs, Integer.parseInt(args[0]));
+    }
+    BatchReport report = new BatchRunner(configs, 1000, 42, 15, 2000)
+        .run(Runtime.getRuntime().availableProcessors());
+    System.out.println(report);
+  }
+}
+
+// Plays a range of the games in a batch, splitting the range in half until it is
+// small enough to play directly
+class GameTask extends RecursiveAction {
+  private static final long serialVersionUID = 1L;
+  BatchRunner runner;
+  long[] gameSeeds;
+  int[] scores;
+  long[] ticks;
+  int from;
+  int to;
+
+  // Constructor
+  GameTask(BatchRunner runner, long[] gameSeeds, int[] scores, long[] ticks, int from, int to) {
+    this.runner = runner;
+    this.gameSeeds = gameSeeds;
+    this.scores = scores;
+    this.ticks = ticks;
+    this.from = from;
+    this.to = to;
+  }
+
+  // plays the games in this range, in parallel if there are enough of them
+  protected void compute() {
+    if (this.to - this.from <= BatchRunner.GAMES_PER_TASK) {
+      for (int game = this.from; game < this.to; game++) {
+        this.runner.play(game, this.gameSeeds[game], this.scores, this.ticks);
+      }
+    }
+    else {
+      int mid = (this.from + this.to) >>> 1;
+      invokeAll(
+          new GameTask(this.runner, this.gameSeeds, this.scores, this.ticks, this.from, mid),
+          new GameTask(this.runner, this.gameSeeds, this.scores, this.ticks, mid, this.to));
+    }
+  }
+}
+
+// Represents the scores of every game played with one GameConfig
+class BatchResult {
+  GameConfig config;
+  int[] scores;
+  long[] ticks;
+  // the scores in increasing order
+  int[] sortedScores;
+
+  // Constructor
+  BatchResult(GameConfig config, int[] scores, long[] ticks) {
+    this.config = config;
+    this.scores = scores;
+    this.ticks = ticks;
+    this.sortedScores = scores.clone();
+    Arrays.sort(this.sortedScores);
+  }
+
+  // the average score
+  double meanScore() {
+    long total = 0;
+    for (int score : this.scores) {
+      total += score;
+    }
+    return this.scores.length == 0 ? 0 : (double) total / this.scores.length;
+  }
+
+  // the score that the given fraction of games scored at or below
+  int percentile(double fraction) {
+    if (this.sortedScores.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(fraction * this.sortedScores.length) - 1;
+    return this.sortedScores[Math.max(0, Math.min(this.sortedScores.length - 1, index))];
+  }
+
+  // the number of games that scored each score from 0 to the highest score
+  int[] histogram() {
+    int max = this.sortedScores.length == 0 ? 0 : this.sortedScores[this.sortedScores.length - 1];
+    int[] counts = new int[max + 1];
+    for (int score : this.scores) {
+      counts[score]++;
+    }
+    return counts;
+  }
+
+  // the total number of ticks played over every game
+  long totalTicks() {
+    long total = 0;
+    for (long t : this.ticks) {
+      total += t;
+    }
+    return total;
+  }
+
+  // a one-line summary of these scores
+  public String toString() {
+    return String.format(
+        "bullets=%d spawnRate=%.2f speed=%d maxSize=%d step=%d games=%d mean=%.2f p50=%d "
+            + "p90=%d p99=%d max=%d",
+        this.config.startingBullets, this.config.shipSpawnRate, this.config.bulletSpeed,
+        this.config.maxBulletSize, this.config.stepMultiplier, this.scores.length, this.meanScore(),
+        this.percentile(0.5), this.percentile(0.9), this.percentile(0.99), this.percentile(1));
+  }
+}
+
+// Represents the results of a whole batch and how long it took
+class BatchReport {
+  List<BatchResult> results;
+  long elapsedNanos;
+
+  // Constructor
+  BatchReport(List<BatchResult> results, long elapsedNanos) {
+    this.results = results;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  // the number of games played
+  int games() {
+    int games = 0;
+    for (BatchResult result : this.results) {
+      games += result.scores.length;
+    }
+    return games;
+  }
+
+  // the number of games played per second of wall time
+  double gamesPerSecond() {
+    return this.games() / (this.elapsedNanos / 1e9);
+  }
+
+  // the number of ticks simulated per second of wall time
+  double ticksPerSecond() {
+    long ticks = 0;
+    for (BatchResult result : this.results) {
+      ticks += result.totalTicks();
+    }
+    return ticks / (this.elapsedNanos / 1e9);
+  }
+
+  // a summary of every setting followed by the throughput
+  public String toString() {
+    StringBuilder out = new StringBuilder();
+    for (BatchResult result : this.results) {
+      out.append(result).append('\n');
+    }
+    out.append(String.format("%d games in %.3f s: %.1f games/s, %.0f ticks/s",
+        this.games(), this.elapsedNanos / 1e9, this.gamesPerSecond(), this.ticksPerSecond()));
+    return out.toString();
+  }
+}
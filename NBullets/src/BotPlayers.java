@@ -0,0 +1,163 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Represents somewhere a player's key presses go: a Simulation's handleKey, as
+// NBullets.onKeyEvent does, or a FixedStepLoop's queue
+interface IKeyboard {
+
+  // presses the key with the given javalib name
+  void press(String keyName);
+}
+
+// Represents a player that plays a headless game: before each step it looks at the
+// game and presses whatever keys it wants, as a person at the keyboard would. Players
+// only read the game, so the same player with the same seed plays the same game.
+interface IBotPolicy {
+
+  // the name this player is reported under
+  String name();
+
+  // presses on the given keyboard the keys this player wants handled before the given
+  // game's next step
+  void play(Simulation sim, IKeyboard keyboard);
+}
+
+// Represents a player that fires bullets, and can see where the ships are
+abstract class ABotPolicy implements IBotPolicy {
+
+  static final String FIRE = " ";
+
+  // reused to read the ships out of a game, whatever its storage
+  SpatialGrid ships = new SpatialGrid();
+
+  // the ships in the given game, as the first count entries of a grid's xs, ys, dxs
+  // and sizes
+  SpatialGrid shipsOf(Simulation sim) {
+    this.ships.clear();
+    sim.activeShips.addShipsTo(this.ships);
+    return this.ships;
+  }
+}
+
+// Represents a player that fires every few steps
+class FireEvery extends ABotPolicy {
+  int steps;
+
+  // Constructor
+  FireEvery(int steps) {
+    if (steps < 1) {
+      throw new IllegalArgumentException("a player can fire at most every step");
+    }
+    this.steps = steps;
+  }
+
+  // the name this player is reported under
+  public String name() {
+    return "every " + this.steps;
+  }
+
+  // fires on every steps-th step, starting with the first
+  public void play(Simulation sim, IKeyboard keyboard) {
+    if (sim.tick % this.steps == 0) {
+      keyboard.press(FIRE);
+    }
+  }
+}
+
+// Represents a player that fires whenever a ship is about to cross the column bullets
+// are fired up
+class FireOnCenter extends ABotPolicy {
+
+  // the name this player is reported under
+  public String name() {
+    return "center";
+  }
+
+  // fires if a ship crosses the middle of the screen during the next step
+  public void play(Simulation sim, IKeyboard keyboard) {
+    SpatialGrid grid = this.shipsOf(sim);
+    double center = NBullets.WIDTH / 2;
+    for (int i = 0; i < grid.count; i++) {
+      if ((grid.xs[i] - center) * (grid.xs[i] + grid.dxs[i] - center) <= 0) {
+        keyboard.press(FIRE);
+        return;
+      }
+    }
+  }
+}
+
+// Represents the worst case for chains: a player that fires only when the bullet will
+// meet a ship on its way up, so that as many bullets as possible hit a ship and split,
+// and their pieces go on to hit more. Against dense waves this sets off the longest
+// chains of generateNewBullets the game can have.
+class ChainSeeker extends ABotPolicy {
+
+  // the name this player is reported under
+  public String name() {
+    return "chain";
+  }
+
+  // fires if a bullet fired now would reach some ship's height as that ship passes over
+  // the middle of the screen, leading each ship by the steps the bullet takes to climb
+  public void play(Simulation sim, IKeyboard keyboard) {
+    SpatialGrid grid = this.shipsOf(sim);
+    double center = NBullets.WIDTH / 2;
+    double climb = -sim.config.velocityY(270);
+    for (int i = 0; i < grid.count; i++) {
+      double steps = (NBullets.HEIGHT - grid.ys[i]) / climb;
+      double x = grid.xs[i] + grid.dxs[i] * steps;
+      if (Math.abs(x - center) <= grid.sizes[i] + NBullets.BULLETSIZE) {
+        keyboard.press(FIRE);
+        return;
+      }
+    }
+  }
+}
+
+// Represents a player that presses keys on the steps a script names: each key at given
+// steps, and each key every given number of steps
+class ScriptedKeys implements IBotPolicy {
+
+  // the keys pressed once, and the steps they are pressed before
+  List<String> keys = new ArrayList<String>();
+  List<Long> steps = new ArrayList<Long>();
+  // the keys pressed over and over, and how many steps apart
+  List<String> repeatedKeys = new ArrayList<String>();
+  List<Integer> periods = new ArrayList<Integer>();
+
+  // the name this player is reported under
+  public String name() {
+    return "script";
+  }
+
+  // presses the given key before the given step
+  ScriptedKeys at(long step, String keyName) {
+    this.keys.add(keyName);
+    this.steps.add(step);
+    return this;
+  }
+
+  // presses the given key before every given number of steps, starting with the first
+  ScriptedKeys every(int period, String keyName) {
+    if (period < 1) {
+      throw new IllegalArgumentException("a key can be pressed at most every step");
+    }
+    this.repeatedKeys.add(keyName);
+    this.periods.add(period);
+    return this;
+  }
+
+  // presses the keys due before the given game's next step, in the order they were added
+  public void play(Simulation sim, IKeyboard keyboard) {
+    for (int i = 0; i < this.keys.size(); i++) {
+      if (this.steps.get(i) == sim.tick) {
+        keyboard.press(this.keys.get(i));
+      }
+    }
+    for (int i = 0; i < this.repeatedKeys.size(); i++) {
+      if (sim.tick % this.periods.get(i) == 0) {
+        keyboard.press(this.repeatedKeys.get(i));
+      }
+    }
+  }
+}
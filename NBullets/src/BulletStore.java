@@ -0,0 +1,748 @@
+import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javalib.funworld.*;
+import javalib.worldimages.*;
+
+// Represents a list of bullets kept in parallel primitive arrays instead of a chain of
+// Bullet and ConsLoBullet objects. Updating it moves the bullets in place, removes
+// off-screen and collided bullets by swapping the last bullet into their slot, and
+// writes chain-reaction bullets straight into the arrays, so once the arrays have grown
+// to fit the wave a tick allocates nothing. Because it is updated in place, a game using
+// it must not hold on to the bullets of an earlier world, so it is stepped on its
+// Simulation, and the persistent NBullets refuses it.
+class BulletStore implements ILoBullet {
+
+  // what happens to a bullet during the current tick
+  static final byte KEEP = 0;
+  static final byte HIT = 1;
+  static final byte OFFSCREEN = 2;
+  // the most distinct colors a store's palette can index
+  static final int MAX_COLORS = Short.MAX_VALUE + 1;
+
+  // the number of bullets one task works through when the store updates in parallel,
+  // a multiple of 64 so each task's bullets fill whole words of a HitSet
+  static final int CHUNK = 4096;
+  // with at most this many ships, bullets are tested against every ship with the
+  // collision kernel instead of against the nearby ships in a grid
+  static final int KERNEL_SHIPS = 16;
+
+  double[] xs;
+  double[] ys;
+  double[] directions;
+  // per-tick movement of each bullet, worked out once from its direction
+  double[] dxs;
+  double[] dys;
+  int[] sizes;
+  int[] colSoFars;
+  // index of each bullet's color in the palette
+  short[] colorIds;
+  byte[] states;
+  // how far into the step the bullets each hit bullet splits into move, from
+  // GameConfig.splitLead
+  double[] splitLeads;
+  // in fixed point, xs, ys, dxs and dys as 16.16 values, which the bullets are moved,
+  // bounded and tested on, with the doubles worked out from them exactly; null otherwise
+  int[] fixedXs;
+  int[] fixedYs;
+  int[] fixedDxs;
+  int[] fixedDys;
+  int count;
+
+  // every distinct bullet color seen so far, and where each is in the palette
+  Color[] palette = new Color[4];
+  int paletteSize;
+  HashMap<Color, Integer> paletteIndex = new HashMap<Color, Integer>();
+
+  // the speed and size limit of the bullets in this store
+  GameConfig config;
+
+  // reused each tick to index the ships the bullets are tested against
+  SpatialGrid shipGrid = new SpatialGrid();
+
+  // with at least this many bullets, ticks test and move the bullets in parallel
+  int parallelThreshold = Integer.MAX_VALUE;
+  ForkJoinPool pool;
+  // the ships hit by each chunk's bullets, merged once every chunk is done
+  HitSet[] chunkHits = new HitSet[0];
+
+  // what moves, culls and tests the bullets, with a bit per slot in the masks of the
+  // bullets that hit a ship and the bullets off the screen; runs of too few bullets for
+  // vectors go through the scalar kernels whatever this is
+  IPieceKernels kernels = PieceKernels.BEST;
+  long[] hitMask = new long[1];
+  long[] offMask = new long[1];
+
+  // Constructor
+  BulletStore() {
+    this(GameConfig.DEFAULT, 64);
+  }
+
+  // Represents an empty store for a game with the given settings
+  BulletStore(GameConfig config) {
+    this(config, 64);
+  }
+
+  // Represents an empty store with room for the given number of bullets before it grows
+  BulletStore(GameConfig config, int capacity) {
+    this.config = config;
+    this.xs = new double[capacity];
+    this.ys = new double[capacity];
+    this.directions = new double[capacity];
+    this.dxs = new double[capacity];
+    this.dys = new double[capacity];
+    this.sizes = new int[capacity];
+    this.colSoFars = new int[capacity];
+    this.colorIds = new short[capacity];
+    this.states = new byte[capacity];
+    this.splitLeads = new double[capacity];
+    if (config.fixedPoint) {
+      this.fixedXs = new int[capacity];
+      this.fixedYs = new int[capacity];
+      this.fixedDxs = new int[capacity];
+      this.fixedDys = new int[capacity];
+    }
+    this.shipGrid.fixedPoint = config.fixedPoint;
+  }
+
+  // makes ticks with at least the given number of bullets test and move them on the
+  // given pool, and returns this store. The result is the same as updating them one
+  // at a time: each bullet is tested and moved on its own, and the bullets are
+  // removed and split in slot order afterwards on the calling thread.
+  BulletStore parallelAbove(int threshold, ForkJoinPool pool) {
+    this.parallelThreshold = threshold;
+    this.pool = pool;
+    return this;
+  }
+
+  // determines if the next tick should run in parallel; a game whose collisions are
+  // swept always runs on one thread, since its contacts are sorted out in time order
+  boolean runsInParallel() {
+    return this.count >= this.parallelThreshold && this.count > CHUNK
+        && !this.config.sweptCollisions;
+  }
+
+  // adds a bullet with the given fields to the end of this store
+  void add(double x, double y, int size, double direction, int colSoFar, Color color) {
+    this.add(x, y, size, direction, colSoFar, color,
+        this.config.velocityX(direction), this.config.velocityY(direction));
+  }
+
+  // adds a bullet with the given fields and per-tick movement to the end of this store
+  void add(double x, double y, int size, double direction, int colSoFar, Color color,
+      double dx, double dy) {
+    if (this.count == this.xs.length) {
+      this.grow(Math.max(1, this.count * 2));
+    }
+    int i = this.count;
+    this.xs[i] = x;
+    this.ys[i] = y;
+    this.sizes[i] = size;
+    this.directions[i] = direction;
+    this.dxs[i] = dx;
+    this.dys[i] = dy;
+    this.colSoFars[i] = colSoFar;
+    this.colorIds[i] = this.intern(color);
+    this.states[i] = KEEP;
+    if (this.fixedXs != null) {
+      this.fixedXs[i] = FixedPoint.toFixed(x);
+      this.fixedYs[i] = FixedPoint.toFixed(y);
+      this.fixedDxs[i] = FixedPoint.toFixed(dx);
+      this.fixedDys[i] = FixedPoint.toFixed(dy);
+    }
+    this.count = i + 1;
+  }
+
+  // adds the given bullet to this store and returns this store
+  public ILoBullet addBullet(Bullet bullet) {
+    this.add(bullet.x, bullet.y, bullet.size, bullet.direction, bullet.colSoFar, bullet.color,
+        bullet.dx, bullet.dy);
+    return this;
+  }
+
+  // the palette index of the given color, adding it to the palette if it is new
+  short intern(Color color) {
+    Integer known = this.paletteIndex.get(color);
+    if (known != null) {
+      return (short) known.intValue();
+    }
+    if (this.paletteSize == MAX_COLORS) {
+      throw new IllegalStateException("a BulletStore holds at most " + MAX_COLORS
+          + " bullet colors");
+    }
+    this.paletteIndex.put(color, this.paletteSize);
+    if (this.paletteSize == this.palette.length) {
+      this.palette = Arrays.copyOf(this.palette, this.paletteSize * 2);
+    }
+    this.palette[this.paletteSize] = color;
+    this.paletteSize = this.paletteSize + 1;
+    return (short) (this.paletteSize - 1);
+  }
+
+  // makes room for the given number of bullets
+  void grow(int capacity) {
+    this.xs = Arrays.copyOf(this.xs, capacity);
+    this.ys = Arrays.copyOf(this.ys, capacity);
+    this.directions = Arrays.copyOf(this.directions, capacity);
+    this.dxs = Arrays.copyOf(this.dxs, capacity);
+    this.dys = Arrays.copyOf(this.dys, capacity);
+    this.sizes = Arrays.copyOf(this.sizes, capacity);
+    this.colSoFars = Arrays.copyOf(this.colSoFars, capacity);
+    this.colorIds = Arrays.copyOf(this.colorIds, capacity);
+    this.states = Arrays.copyOf(this.states, capacity);
+    this.splitLeads = Arrays.copyOf(this.splitLeads, capacity);
+    if (this.fixedXs != null) {
+      this.fixedXs = Arrays.copyOf(this.fixedXs, capacity);
+      this.fixedYs = Arrays.copyOf(this.fixedYs, capacity);
+      this.fixedDxs = Arrays.copyOf(this.fixedDxs, capacity);
+      this.fixedDys = Arrays.copyOf(this.fixedDys, capacity);
+    }
+  }
+
+  // copies the bullet in slot from over the bullet in slot to
+  void move(int from, int to) {
+    this.xs[to] = this.xs[from];
+    this.ys[to] = this.ys[from];
+    this.directions[to] = this.directions[from];
+    this.dxs[to] = this.dxs[from];
+    this.dys[to] = this.dys[from];
+    this.sizes[to] = this.sizes[from];
+    this.colSoFars[to] = this.colSoFars[from];
+    this.colorIds[to] = this.colorIds[from];
+    this.states[to] = this.states[from];
+    this.splitLeads[to] = this.splitLeads[from];
+    if (this.fixedXs != null) {
+      this.fixedXs[to] = this.fixedXs[from];
+      this.fixedYs[to] = this.fixedYs[from];
+      this.fixedDxs[to] = this.fixedDxs[from];
+      this.fixedDys[to] = this.fixedDys[from];
+    }
+  }
+
+  // determines if the bullet in the given slot is off the screen,
+  // the same way as AGamePiece.isOffScreen, or on integers in fixed point
+  boolean isOffScreen(int i) {
+    if (this.fixedXs != null) {
+      return FixedPoint.isOffScreen(this.fixedXs[i], this.fixedYs[i]);
+    }
+    return this.xs[i] > NBullets.WIDTH
+        || this.xs[i] < 0
+        || this.ys[i] < 0
+        || this.ys[i] > NBullets.HEIGHT;
+  }
+
+  //draws all the bullets in this store onto a given WorldScene
+  public WorldScene drawBullets(WorldScene prevScene) {
+    WorldScene scene = prevScene;
+    for (int i = 0; i < this.count; i++) {
+      scene = scene.placeImageXY(
+          ImageCache.circle(this.sizes[i], OutlineMode.SOLID, this.palette[this.colorIds[i]]),
+          (int) this.xs[i],
+          (int) this.ys[i]);
+    }
+    return scene;
+  }
+
+  // draws all the bullets in this store into the frame of the given renderer
+  public void drawBulletsOn(RasterRenderer renderer) {
+    for (int i = 0; i < this.count; i++) {
+      renderer.fillPiece(this.xs[i], this.ys[i], this.dxs[i], this.dys[i], this.sizes[i],
+          this.palette[this.colorIds[i]].getRGB());
+    }
+  }
+
+  // writes every bullet in this store, in slot order, to the given buffer
+  public void writeBullets(ByteBuffer out) {
+    for (int i = 0; i < this.count; i++) {
+      out.putDouble(this.xs[i]);
+      out.putDouble(this.ys[i]);
+      out.putDouble(this.directions[i]);
+      out.putDouble(this.dxs[i]);
+      out.putDouble(this.dys[i]);
+      out.putInt(this.sizes[i]);
+      out.putInt(this.colSoFars[i]);
+      out.putInt(this.palette[this.colorIds[i]].getRGB());
+    }
+  }
+
+  // Determines if any bullets in this store collided with the given ship
+  public boolean listCollidedWithShip(Ship ship) {
+    if (this.fixedXs != null && !this.config.sweptCollisions) {
+      int shipX = FixedPoint.toFixed(ship.x);
+      int shipY = FixedPoint.toFixed(ship.y);
+      for (int i = 0; i < this.count; i++) {
+        if (FixedPoint.circlesCollided(this.fixedXs[i], this.fixedYs[i], this.sizes[i],
+            shipX, shipY, ship.size)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    for (int i = 0; i < this.count; i++) {
+      if (this.config.sweptCollisions
+          ? AGamePiece.contactTime(this.xs[i], this.ys[i], this.dxs[i], this.dys[i],
+              this.sizes[i], ship.x, ship.y, ship.dx, ship.dy, ship.size)
+              != AGamePiece.NO_CONTACT
+          : AGamePiece.circlesCollided(this.xs[i], this.ys[i], this.sizes[i],
+              ship.x, ship.y, ship.size)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // updates all the bullets in this store in place based on if
+  // they collided or left the screen
+  public ILoBullet updateBullets(ILoShip activeShips) {
+    this.shipGrid.clear();
+    activeShips.addShipsTo(this.shipGrid);
+    return this.updateBulletsWith(this.shipGrid);
+  }
+
+  // updates all the bullets in this store in place based on if they collided
+  // with a ship in the given grid or left the screen
+  public ILoBullet updateBulletsWith(SpatialGrid shipGrid) {
+    int end = this.count;
+    if (this.testsWithKernel(shipGrid)) {
+      this.markCollisionMask(shipGrid, end, null);
+      this.moveOrCullMasked(null, 0, 0, end);
+      this.compact(end);
+      return this;
+    }
+    for (int i = 0; i < end; i++) {
+      if (this.collidedWithAny(shipGrid, i)) {
+        this.markHit(i, 0);
+      }
+      else {
+        this.moveOrCull(i);
+      }
+    }
+    this.compact(end);
+    return this;
+  }
+
+  // updates all the bullets in this store in place given which bullets hit a ship,
+  // where the first bullet in this store is at the given index
+  public ILoBullet updateBulletsFrom(HitSet hits, int index) {
+    int end = this.count;
+    this.ensureMasks(end);
+    if (this.runsInParallel()) {
+      this.pool.invoke(new BulletChunkTask(this, null, hits, index, 0, end));
+    }
+    else {
+      this.moveOrCullRange(hits, index, 0, end);
+    }
+    this.compact(end, hits);
+    return this;
+  }
+
+  // marks the bullets in slots from to to that hit a ship, and moves or marks
+  // off screen the others. from must be a multiple of 64, and the masks must have
+  // room for slot to.
+  void moveOrCullRange(HitSet hits, int index, int from, int to) {
+    for (int w = from >>> 6; w << 6 < to; w++) {
+      this.hitMask[w] = hits.bulletBitsAt(index + (w << 6));
+    }
+    this.moveOrCullMasked(hits, index, from, to);
+  }
+
+  // marks the bullets in slots from to to whose bits are set in hitMask as hit, at the
+  // time the given HitSet says they reached their ship or at the start of the step if
+  // it is null, and moves or marks off screen the others the same way as moveOrCull,
+  // with this store's kernels. from must be a multiple of 64, so a range running on its
+  // own thread has whole words of the masks to itself.
+  void moveOrCullMasked(HitSet hits, int index, int from, int to) {
+    if (this.fixedXs != null) {
+      this.moveOrCullMaskedFixed(hits, index, from, to);
+      return;
+    }
+    Arrays.fill(this.states, from, to, KEEP);
+    IPieceKernels kernels = PieceKernels.forRun(this.kernels, to - from);
+    kernels.markOffScreen(this.xs, this.ys, from, to, this.offMask);
+    for (int w = from >>> 6; w << 6 < to; w++) {
+      int base = w << 6;
+      long hit = this.hitMask[w];
+      if (to - base < 64) {
+        hit &= (1L << (to - base)) - 1;
+      }
+      for (long bits = hit; bits != 0; bits &= bits - 1) {
+        int i = base + Long.numberOfTrailingZeros(bits);
+        this.markHit(i, hits == null ? 0 : hits.contactTime(index + i));
+        // so the move below leaves it where it splits: adding -0.0 changes no double,
+        // and generateNewBullets gives the slot a new movement anyway
+        this.dxs[i] = -0.0;
+        this.dys[i] = -0.0;
+      }
+      for (long bits = this.offMask[w] & ~hit; bits != 0; bits &= bits - 1) {
+        this.states[base + Long.numberOfTrailingZeros(bits)] = OFFSCREEN;
+      }
+    }
+    // the bullets off the screen move too, but they are removed before anything reads
+    // where they are
+    kernels.move(this.xs, this.ys, this.dxs, this.dys, from, to);
+  }
+
+  // moveOrCullMasked in fixed point: bounds and moves the bullets on their 16.16 values
+  // and works out their doubles from them, instead of with the kernels. Every bullet is
+  // moved in one loop with no branches on the masks, and the few that hit a ship are
+  // then put back, exactly, since the values are integers, before they are marked.
+  void moveOrCullMaskedFixed(HitSet hits, int index, int from, int to) {
+    int[] fixedXs = this.fixedXs;
+    int[] fixedYs = this.fixedYs;
+    int[] fixedDxs = this.fixedDxs;
+    int[] fixedDys = this.fixedDys;
+    for (int i = from; i < to; i++) {
+      int x = fixedXs[i];
+      int y = fixedYs[i];
+      this.states[i] = FixedPoint.isOffScreen(x, y) ? OFFSCREEN : KEEP;
+      x += fixedDxs[i];
+      y += fixedDys[i];
+      fixedXs[i] = x;
+      fixedYs[i] = y;
+      this.xs[i] = FixedPoint.toDouble(x);
+      this.ys[i] = FixedPoint.toDouble(y);
+    }
+    for (int w = from >>> 6; w << 6 < to; w++) {
+      int base = w << 6;
+      long hit = this.hitMask[w];
+      if (to - base < 64) {
+        hit &= (1L << (to - base)) - 1;
+      }
+      for (long bits = hit; bits != 0; bits &= bits - 1) {
+        int i = base + Long.numberOfTrailingZeros(bits);
+        fixedXs[i] -= fixedDxs[i];
+        fixedYs[i] -= fixedDys[i];
+        this.xs[i] = FixedPoint.toDouble(fixedXs[i]);
+        this.ys[i] = FixedPoint.toDouble(fixedYs[i]);
+        this.markHit(i, hits == null ? 0 : hits.contactTime(index + i));
+      }
+    }
+  }
+
+  // determines if the bullets are tested against the ships in the given grid with the
+  // collision kernel: when there are few ships, and collisions aren't swept
+  boolean testsWithKernel(SpatialGrid shipGrid) {
+    return shipGrid.count <= KERNEL_SHIPS && !shipGrid.swept
+        && !this.config.sweptCollisions;
+  }
+
+  // sets the bits in hitMask of the first end bullets that collided with a ship in the
+  // given grid and clears the rest, marking the ships hit in the given HitSet, if any,
+  // along with the tests made
+  void markCollisionMask(SpatialGrid shipGrid, int end, HitSet hits) {
+    this.ensureMasks(end);
+    Arrays.fill(this.hitMask, 0, (end + 63) >>> 6, 0);
+    long ships = PieceKernels.forRun(this.kernels, end).markCollisions(this.xs, this.ys,
+        this.sizes, 0, end, shipGrid.xs, shipGrid.ys, shipGrid.sizes, shipGrid.count,
+        this.hitMask);
+    if (hits != null) {
+      for (; ships != 0; ships &= ships - 1) {
+        hits.markShip(Long.numberOfTrailingZeros(ships));
+      }
+      hits.collisionTests += end * shipGrid.count;
+    }
+  }
+
+  // makes room in the masks for the given number of slots
+  void ensureMasks(int slots) {
+    int words = (slots + 63) >>> 6;
+    if (this.hitMask.length < words) {
+      this.hitMask = new long[Math.max(words, this.hitMask.length * 2)];
+      this.offMask = new long[this.hitMask.length];
+    }
+  }
+
+  // marks the bullet in the given slot as hitting a ship the given fraction of the way
+  // through the step, moving it to where it reached the ship, which is where it splits
+  void markHit(int i, double contact) {
+    this.xs[i] += contact * this.dxs[i];
+    this.ys[i] += contact * this.dys[i];
+    this.splitLeads[i] = this.config.splitLead(contact);
+    this.states[i] = HIT;
+  }
+
+  // moves the bullet in the given slot one step, or marks it to be removed
+  // if it is off the screen
+  void moveOrCull(int i) {
+    if (this.isOffScreen(i)) {
+      this.states[i] = OFFSCREEN;
+    }
+    else if (this.fixedXs != null) {
+      this.fixedXs[i] += this.fixedDxs[i];
+      this.fixedYs[i] += this.fixedDys[i];
+      this.xs[i] = FixedPoint.toDouble(this.fixedXs[i]);
+      this.ys[i] = FixedPoint.toDouble(this.fixedYs[i]);
+      this.states[i] = KEEP;
+    }
+    else {
+      this.xs[i] += this.dxs[i];
+      this.ys[i] += this.dys[i];
+      this.states[i] = KEEP;
+    }
+  }
+
+  // removes the bullets marked off screen and replaces the bullets marked as hit
+  // with their chain-reaction bullets, looking only at the first end slots
+  void compact(int end) {
+    this.compact(end, null);
+  }
+
+  // removes the bullets marked off screen and replaces the bullets marked as hit with
+  // as many of their chain-reaction bullets as the budget of the given HitSet allows,
+  // or all of them if it is null, looking only at the first end slots
+  void compact(int end, HitSet hits) {
+    int i = 0;
+    while (i < end) {
+      int children = 0;
+      if (this.states[i] == HIT) {
+        // a hit bullet was moved to where it reached its ship
+        children = this.colSoFars[i] + 1;
+        if (hits != null) {
+          children = hits.split(this.xs[i], this.ys[i], children);
+        }
+      }
+      else if (this.states[i] == OFFSCREEN && hits != null) {
+        // an off-screen bullet was moved along with the rest, so it left from a step back
+        hits.cull(this.xs[i] - this.dxs[i], this.ys[i] - this.dys[i], this.colSoFars[i],
+            this.sizes[i]);
+      }
+      if (this.states[i] == OFFSCREEN || this.states[i] == HIT && children == 0) {
+        int last = this.count - 1;
+        this.move(last, i);
+        this.count = last;
+        if (last < end) {
+          end = last;
+        }
+      }
+      else {
+        if (this.states[i] == HIT) {
+          this.generateNewBullets(i, children);
+        }
+        i++;
+      }
+    }
+  }
+
+  // replaces the bullet in the given slot with the first given number, at least one, of
+  // the bullets it splits into following Bullet.generateNewBullets: colSoFar + 1 bullets
+  // spread evenly around the circle, each a little bigger and one collision further
+  // along the chain, of which a ChainBudget may allow fewer, merging the rest into the
+  // first
+  void generateNewBullets(int i, int children) {
+    int curChain = this.colSoFars[i] + 1;
+    int angleToAdd = 360 / curChain;
+    int size = this.config.grownSize(this.sizes[i]);
+    int firstSize = this.config.splitSize(this.sizes[i], curChain - children + 1);
+    double lead = this.splitLeads[i];
+    if (this.count + children - 1 > this.xs.length) {
+      this.grow(Math.max(this.xs.length * 2, this.count + children - 1));
+    }
+    for (int chain = curChain - 1; chain > curChain - children; chain--) {
+      int child = this.count;
+      this.xs[child] = this.xs[i];
+      this.ys[child] = this.ys[i];
+      this.sizes[child] = size;
+      this.directions[child] = chain * angleToAdd;
+      this.dxs[child] = this.config.dxTable[chain * angleToAdd];
+      this.dys[child] = this.config.dyTable[chain * angleToAdd];
+      this.xs[child] = this.config.snap(this.xs[child] + lead * this.dxs[child]);
+      this.ys[child] = this.config.snap(this.ys[child] + lead * this.dys[child]);
+      this.colSoFars[child] = curChain;
+      this.colorIds[child] = this.colorIds[i];
+      this.states[child] = KEEP;
+      this.splitFixed(child, chain * angleToAdd);
+      this.count = child + 1;
+    }
+    this.sizes[i] = firstSize;
+    this.directions[i] = curChain * angleToAdd;
+    this.dxs[i] = this.config.dxTable[curChain * angleToAdd];
+    this.dys[i] = this.config.dyTable[curChain * angleToAdd];
+    this.xs[i] = this.config.snap(this.xs[i] + lead * this.dxs[i]);
+    this.ys[i] = this.config.snap(this.ys[i] + lead * this.dys[i]);
+    this.colSoFars[i] = curChain;
+    this.states[i] = KEEP;
+    this.splitFixed(i, curChain * angleToAdd);
+  }
+
+  // in fixed point, sets the 16.16 values of the bullet split into the given slot from
+  // its snapped position and the table's movement for the given direction
+  void splitFixed(int i, int direction) {
+    if (this.fixedXs != null) {
+      this.fixedXs[i] = FixedPoint.toFixed(this.xs[i]);
+      this.fixedYs[i] = FixedPoint.toFixed(this.ys[i]);
+      this.fixedDxs[i] = this.config.fixedDxTable[direction];
+      this.fixedDys[i] = this.config.fixedDyTable[direction];
+    }
+  }
+
+  // counts the number of bullets in this store that hit a ship
+  public int countHitShips(ILoShip activeShips) {
+    this.shipGrid.clear();
+    activeShips.addShipsTo(this.shipGrid);
+    return this.countHitShipsWith(this.shipGrid);
+  }
+
+  // counts the number of bullets in this store that hit a ship in the given grid
+  public int countHitShipsWith(SpatialGrid shipGrid) {
+    if (this.testsWithKernel(shipGrid)) {
+      this.markCollisionMask(shipGrid, this.count, null);
+      int hits = 0;
+      for (int w = 0; w << 6 < this.count; w++) {
+        hits += Long.bitCount(this.hitMask[w]);
+      }
+      return hits;
+    }
+    int hits = 0;
+    for (int i = 0; i < this.count; i++) {
+      if (this.collidedWithAny(shipGrid, i)) {
+        hits++;
+      }
+    }
+    return hits;
+  }
+
+  // counts the bullets in this store
+  public int countBullets() {
+    return this.count;
+  }
+
+  // determines if this store has no bullets
+  public boolean isEmpty() {
+    return this.count == 0;
+  }
+
+  // records in the given HitSet which bullets in this store hit a ship in the
+  // given grid, where the first bullet in this store is at the given index
+  public void markHits(SpatialGrid shipGrid, HitSet hits, int index) {
+    if (this.runsInParallel()) {
+      int chunks = (this.count + CHUNK - 1) / CHUNK;
+      if (this.chunkHits.length < chunks) {
+        this.chunkHits = Arrays.copyOf(this.chunkHits, chunks);
+        for (int c = 0; c < chunks; c++) {
+          if (this.chunkHits[c] == null) {
+            this.chunkHits[c] = new HitSet();
+          }
+        }
+      }
+      this.pool.invoke(new BulletChunkTask(this, shipGrid, hits, index, 0, this.count));
+      for (int c = 0; c < chunks; c++) {
+        hits.addShipsFrom(this.chunkHits[c]);
+      }
+      for (int i = 0; i < this.count; i++) {
+        if (this.states[i] == HIT) {
+          hits.markBullet(index + i, this.colSoFars[i] + 1);
+        }
+      }
+    }
+    else if (this.testsWithKernel(shipGrid)) {
+      this.markCollisionMask(shipGrid, this.count, hits);
+      for (int w = 0; w << 6 < this.count; w++) {
+        for (long bits = this.hitMask[w]; bits != 0; bits &= bits - 1) {
+          int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+          hits.markBullet(index + i, this.colSoFars[i] + 1);
+        }
+      }
+    }
+    else {
+      for (int i = 0; i < this.count; i++) {
+        if (this.config.sweptCollisions) {
+          shipGrid.addContacts(this.xs[i], this.ys[i], this.dxs[i], this.dys[i],
+              this.sizes[i], index + i, this.colSoFars[i] + 1, hits);
+        }
+        else if (this.markCollisions(shipGrid, i, hits)) {
+          hits.markBullet(index + i, this.colSoFars[i] + 1);
+        }
+      }
+    }
+  }
+
+  // marks the bullets in slots from to to that hit a ship in the given grid, recording
+  // the ships they hit in the HitSet for their chunk
+  void markHitsRange(SpatialGrid shipGrid, int from, int to) {
+    HitSet hits = this.chunkHits[from / CHUNK];
+    hits.clear();
+    for (int i = from; i < to; i++) {
+      this.states[i] = this.markCollisions(shipGrid, i, hits) ? HIT : KEEP;
+    }
+  }
+
+  // marks the ships in the given grid the bullet in the given slot hit in the given
+  // HitSet, on its 16.16 position in fixed point, and determines if it hit any
+  boolean markCollisions(SpatialGrid shipGrid, int i, HitSet hits) {
+    if (this.fixedXs != null) {
+      return shipGrid.markCollisions(this.xs[i], this.ys[i], this.fixedXs[i], this.fixedYs[i],
+          this.sizes[i], hits);
+    }
+    return shipGrid.markCollisions(this.xs[i], this.ys[i], this.sizes[i], hits);
+  }
+
+  // determines if the bullet in the given slot collided with a ship in the given grid,
+  // the same way as AGamePiece.collidedWithAny
+  boolean collidedWithAny(SpatialGrid shipGrid, int i) {
+    if (this.fixedXs != null && !this.config.sweptCollisions) {
+      return shipGrid.anyCollidedWith(this.xs[i], this.ys[i], this.fixedXs[i],
+          this.fixedYs[i], this.sizes[i]);
+    }
+    return shipGrid.anyCollidedWith(this.xs[i], this.ys[i], this.dxs[i], this.dys[i],
+        this.sizes[i], this.config.sweptCollisions);
+  }
+
+  // adds every bullet in this store to the given grid
+  public void addBulletsTo(SpatialGrid grid) {
+    if (this.config.fixedPoint && this.count > 0) {
+      grid.fixedPoint = true;
+    }
+    for (int i = 0; i < this.count; i++) {
+      grid.add(this.xs[i], this.ys[i], this.sizes[i], this.dxs[i], this.dys[i]);
+    }
+    if (this.config.sweptCollisions && this.count > 0) {
+      grid.swept = true;
+    }
+  }
+}
+
+// Tests or moves a range of the bullets in a BulletStore, splitting the range on
+// CHUNK boundaries until each task has a single chunk
+class BulletChunkTask extends RecursiveAction {
+  private static final long serialVersionUID = 1L;
+  BulletStore store;
+  // the ships to test against, or null to move the bullets instead
+  SpatialGrid shipGrid;
+  HitSet hits;
+  int index;
+  int from;
+  int to;
+
+  // Constructor
+  BulletChunkTask(BulletStore store, SpatialGrid shipGrid, HitSet hits, int index,
+      int from, int to) {
+    this.store = store;
+    this.shipGrid = shipGrid;
+    this.hits = hits;
+    this.index = index;
+    this.from = from;
+    this.to = to;
+  }
+
+  // tests or moves the bullets in this range, in parallel if it spans several chunks
+  protected void compute() {
+    if (this.to - this.from <= BulletStore.CHUNK) {
+      if (this.shipGrid == null) {
+        this.store.moveOrCullRange(this.hits, this.index, this.from, this.to);
+      }
+      else {
+        this.store.markHitsRange(this.shipGrid, this.from, this.to);
+      }
+    }
+    else {
+      int chunks = (this.to - this.from + BulletStore.CHUNK - 1) / BulletStore.CHUNK;
+      int mid = this.from + chunks / 2 * BulletStore.CHUNK;
+      invokeAll(
+          new BulletChunkTask(this.store, this.shipGrid, this.hits, this.index, this.from, mid),
+          new BulletChunkTask(this.store, this.shipGrid, this.hits, this.index, mid, this.to));
+    }
+  }
+}
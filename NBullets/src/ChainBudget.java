@@ -0,0 +1,126 @@
+// Holds a game's steps to their deadline when chain reactions grow faster than the CPU
+// keeps up with, by degrading how hit bullets split, and undoes it once the load drops.
+// A game only has one if it is given one, since it changes how the game plays: a game
+// with a budget splits bullets according to how fast its steps ran, so it no longer plays
+// the same from a seed and its key presses. Every hit still scores, at every level.
+//
+// The levels, from least to most degraded:
+//   NORMAL  every hit bullet splits into colSoFar + 1 bullets, as the rules say
+//   MERGE   the bullets a hit bullet splits into start at the same point, so they are
+//           merged into one heavier bullet: the first of them, as big around as all of
+//           them together, which reaches the ships they would have between them. This
+//           stops chains from multiplying bullets while they keep scoring.
+//   CAP     as MERGE, and a hit bullet only splits while the game has fewer live
+//           bullets than the budget estimates a step can move in time; past that, hit
+//           bullets are removed, so the population shrinks
+// A step that takes over PRESSURE of the deadline is under pressure, and PRESSURE_STEPS
+// of those in a row raise the level by one; a step under SLACK of the deadline has
+// slack, and SLACK_STEPS of those in a row lower it by one. Anything in between keeps
+// the level, so the budget doesn't flap between two levels.
+class ChainBudget {
+
+  static final int NORMAL = 0;
+  static final int MERGE = 1;
+  static final int CAP = 2;
+  static final String[] LEVELS = {"normal", "merge", "cap"};
+
+  static final double PRESSURE = 0.75;
+  static final double SLACK = 0.25;
+  static final int PRESSURE_STEPS = 3;
+  // a second of steps at TICKRATE
+  static final int SLACK_STEPS = 28;
+  // how much of each new step's cost goes into the running estimate per bullet
+  static final double SMOOTHING = 1.0 / 8;
+
+  // the system property that gives games made by NBullets a budget when set to adaptive
+  static final String PROPERTY = "nbullets.budget";
+  static final String ADAPTIVE = "adaptive";
+
+  // how long a step may take, in nanoseconds
+  long deadlineNanos;
+  int level;
+  // the steps in a row under pressure, and with slack
+  int pressured;
+  int slack;
+  // a running estimate of how long a step takes for each live bullet, in nanoseconds
+  double nanosPerBullet;
+  // the steps run at a level above NORMAL, and the times the level changed
+  long degradedSteps;
+  long levelChanges;
+
+  // Constructor
+  ChainBudget(GameConfig config) {
+    this(Math.round(NBullets.TICKRATE * config.stepMultiplier * 1e9));
+  }
+
+  // Represents a budget for steps that must each take at most the given nanoseconds
+  ChainBudget(long deadlineNanos) {
+    if (deadlineNanos <= 0) {
+      throw new IllegalArgumentException("a step needs a positive deadline");
+    }
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  // a budget for a game with the given settings if the nbullets.budget system property
+  // asks for one, otherwise null
+  static ChainBudget fromSystemProperties(GameConfig config) {
+    return ADAPTIVE.equals(System.getProperty(PROPERTY)) ? new ChainBudget(config) : null;
+  }
+
+  // sets how the bullets the given HitSet found hit split in this step, at this budget's
+  // level, for a game with the given number of live bullets
+  void applyTo(HitSet hits, int liveBullets) {
+    hits.budgeted = this.level > NORMAL;
+    hits.splitLimit = this.level >= MERGE ? 1 : Integer.MAX_VALUE;
+    hits.bulletRoom = this.level >= CAP
+        ? Math.min(Integer.MAX_VALUE, this.bulletCap() - liveBullets)
+        : Integer.MAX_VALUE;
+  }
+
+  // records that a step with the given number of live bullets took the given nanoseconds,
+  // and moves the level if enough steps in a row were under pressure or had slack
+  void record(long stepNanos, int liveBullets) {
+    double sample = (double) stepNanos / Math.max(1, liveBullets);
+    this.nanosPerBullet = this.nanosPerBullet == 0
+        ? sample
+        : this.nanosPerBullet + (sample - this.nanosPerBullet) * SMOOTHING;
+    if (this.level > NORMAL) {
+      this.degradedSteps++;
+    }
+    if (stepNanos > this.deadlineNanos * PRESSURE) {
+      this.slack = 0;
+      this.pressured++;
+      if (this.pressured >= PRESSURE_STEPS && this.level < CAP) {
+        this.changeLevel(this.level + 1);
+      }
+    }
+    else if (stepNanos < this.deadlineNanos * SLACK) {
+      this.pressured = 0;
+      this.slack++;
+      if (this.slack >= SLACK_STEPS && this.level > NORMAL) {
+        this.changeLevel(this.level - 1);
+      }
+    }
+    else {
+      this.pressured = 0;
+      this.slack = 0;
+    }
+  }
+
+  // moves to the given level, counting the steps towards the next move from zero
+  void changeLevel(int level) {
+    this.level = level;
+    this.pressured = 0;
+    this.slack = 0;
+    this.levelChanges++;
+  }
+
+  // the most live bullets a step can move in half its deadline, between pressure and
+  // slack, at the current estimate of a bullet's cost
+  long bulletCap() {
+    if (this.nanosPerBullet <= 0) {
+      return Integer.MAX_VALUE;
+    }
+    return (long) (this.deadlineNanos * (PRESSURE + SLACK) / 2 / this.nanosPerBullet);
+  }
+}
@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Reads a file written by EventFileWriter a chunk at a time, without ever building an
+// event: each column of the current chunk is only inflated and decoded when it is
+// asked for, and the columns nobody asks for are skipped by their lengths. Counting the
+// events of each type, say, only ever decodes the type column. The file is
+// memory-mapped and read in place, and a column is decoded into an array that is
+// reused for the next chunk, so copy out whatever is needed before moving on.
+class EventFileReader {
+
+  MappedByteBuffer file;
+  // the game and the number of events in the current chunk
+  int game;
+  int count;
+  // where each column of the current chunk starts in the file, its length as encoded
+  // and compressed, and whether it has been decoded yet
+  int[] offsets = new int[EventFileWriter.COLUMNS.length];
+  int[] encodedLengths = new int[EventFileWriter.COLUMNS.length];
+  int[] packedLengths = new int[EventFileWriter.COLUMNS.length];
+  boolean[] decoded = new boolean[EventFileWriter.COLUMNS.length];
+
+  // reused for every chunk: its decoded columns, and the column being decoded
+  EventChunk chunk = new EventChunk(EventFileWriter.CHUNK_EVENTS);
+  byte[] packed = new byte[EventFileWriter.CHUNK_EVENTS * 4];
+  ByteBuffer encoded = ByteBuffer.allocate(EventFileWriter.CHUNK_EVENTS * 10);
+  Inflater inflater = new Inflater();
+
+  // Represents a reader of the event file at the given path, before its first chunk
+  EventFileReader(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      this.file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    finally {
+      channel.close();
+    }
+    if (this.file.remaining() < 6 || this.file.getInt() != EventFileWriter.MAGIC) {
+      throw new IOException(path + " is not an event file");
+    }
+    short version = this.file.getShort();
+    if (version != EventFileWriter.VERSION) {
+      throw new IOException(path + " has unsupported event file version " + version);
+    }
+  }
+
+  // moves on to the next chunk, and determines if there was one
+  boolean nextChunk() {
+    if (this.file.remaining() < 8) {
+      return false;
+    }
+    this.game = this.file.getInt();
+    this.count = this.file.getInt();
+    for (int column = 0; column < this.offsets.length; column++) {
+      this.encodedLengths[column] = this.file.getInt();
+      this.packedLengths[column] = this.file.getInt();
+      this.offsets[column] = this.file.position();
+      this.file.position(this.offsets[column] + this.packedLengths[column]);
+      this.decoded[column] = false;
+    }
+    this.chunk.ensureRoom(this.count);
+    this.chunk.game = this.game;
+    this.chunk.count = this.count;
+    return true;
+  }
+
+  // the ticks of the current chunk's events
+  long[] ticks() {
+    this.decode(EventFileWriter.TICK);
+    return this.chunk.ticks;
+  }
+
+  // the types of the current chunk's events, as EventStream numbers them
+  byte[] types() {
+    this.decode(EventFileWriter.TYPE);
+    return this.chunk.types;
+  }
+
+  // the x positions of the current chunk's events
+  float[] xs() {
+    this.decode(EventFileWriter.X);
+    return this.chunk.xs;
+  }
+
+  // the y positions of the current chunk's events
+  float[] ys() {
+    this.decode(EventFileWriter.Y);
+    return this.chunk.ys;
+  }
+
+  // the first numbers of the current chunk's events
+  int[] as() {
+    this.decode(EventFileWriter.A);
+    return this.chunk.as;
+  }
+
+  // the second numbers of the current chunk's events
+  int[] bs() {
+    this.decode(EventFileWriter.B);
+    return this.chunk.bs;
+  }
+
+  // inflates and decodes the given column of the current chunk, unless it already was
+  void decode(int column) {
+    if (this.decoded[column]) {
+      return;
+    }
+    int length = this.encodedLengths[column];
+    int packedLength = this.packedLengths[column];
+    if (this.packed.length < packedLength) {
+      this.packed = new byte[packedLength];
+    }
+    if (this.encoded.capacity() < length) {
+      this.encoded = ByteBuffer.allocate(length);
+    }
+    ByteBuffer source = this.file.duplicate();
+    source.position(this.offsets[column]);
+    source.get(this.packed, 0, packedLength);
+    this.inflater.reset();
+    this.inflater.setInput(this.packed, 0, packedLength);
+    try {
+      if (this.inflater.inflate(this.encoded.array(), 0, length) != length) {
+        throw new IllegalStateException("column " + EventFileWriter.COLUMNS[column]
+            + " of game " + this.game + " is cut short");
+      }
+    }
+    catch (DataFormatException e) {
+      throw new IllegalStateException("column " + EventFileWriter.COLUMNS[column]
+          + " of game " + this.game + " is corrupt", e);
+    }
+    ByteBuffer in = this.encoded;
+    in.clear();
+    in.limit(length);
+    EventChunk chunk = this.chunk;
+    if (column == EventFileWriter.TICK) {
+      long tick = 0;
+      for (int k = 0; k < this.count; k++) {
+        tick += EventFileWriter.unzigzag(GameRecorder.getVarint(in));
+        chunk.ticks[k] = tick;
+      }
+    }
+    else if (column == EventFileWriter.TYPE) {
+      in.get(chunk.types, 0, this.count);
+    }
+    else if (column == EventFileWriter.X || column == EventFileWriter.Y) {
+      float[] values = column == EventFileWriter.X ? chunk.xs : chunk.ys;
+      for (int k = 0; k < this.count; k++) {
+        values[k] = in.getFloat();
+      }
+    }
+    else {
+      int[] values = column == EventFileWriter.A ? chunk.as : chunk.bs;
+      for (int k = 0; k < this.count; k++) {
+        values[k] = (int) EventFileWriter.unzigzag(GameRecorder.getVarint(in));
+      }
+    }
+    this.decoded[column] = true;
+  }
+
+  // the number of events of each type in the rest of the file, by EventStream type,
+  // reading only the type column
+  long[] countTypes() {
+    long[] counts = new long[EventStream.TYPES.length];
+    while (this.nextChunk()) {
+      byte[] types = this.types();
+      for (int k = 0; k < this.count; k++) {
+        counts[types[k]]++;
+      }
+    }
+    return counts;
+  }
+
+  // prints how many events of each type the given event file holds
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("usage: EventFileReader <events file>");
+      System.exit(2);
+    }
+    long[] counts = new EventFileReader(Paths.get(args[0])).countTypes();
+    for (int type = 0; type < counts.length; type++) {
+      System.out.printf("%-6s %d%n", EventStream.TYPES[type], counts[type]);
+    }
+  }
+}
@@ -0,0 +1,288 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+
+// Writes the events of any number of games' EventStreams to a compact columnar file on
+// a background thread, so a game only ever writes its events into memory. The writer
+// drains each stream in chunks of up to CHUNK_EVENTS events: once a stream has a whole
+// chunk waiting, or FLUSH_NANOS after its last chunk, or when the writer closes or its
+// game finishes it, after which the writer drops the stream. A
+// chunk keeps each field of its events together in a column of its own, compressed on
+// its own, so a reader can decode just the columns it wants.
+//
+// The file starts with a header:
+//   int MAGIC, short VERSION
+// followed by chunks, each of one game's events:
+//   int game, int count, and for each of the COLUMNS in order: an int length of the
+//   column as encoded, an int length of it compressed, and the compressed bytes
+// The columns are encoded as:
+//   tick   a zigzag varint of each tick minus the one before, the first minus 0
+//   type   a byte each
+//   x, y   a float each
+//   a, b   a zigzag varint each
+// and compressed with Deflater, so long runs of a type or of ticks a step apart take
+// next to nothing.
+class EventFileWriter {
+
+  static final int MAGIC = 0x4E424556; // "NBEV"
+  static final short VERSION = 1;
+  static final int TICK = 0;
+  static final int TYPE = 1;
+  static final int X = 2;
+  static final int Y = 3;
+  static final int A = 4;
+  static final int B = 5;
+  static final String[] COLUMNS = {"tick", "type", "x", "y", "a", "b"};
+  static final int CHUNK_EVENTS = 4096;
+  static final long FLUSH_NANOS = 1_000_000_000L;
+  // how long the writer sleeps when no stream has a chunk to write
+  static final long IDLE_NANOS = 10_000_000L;
+
+  // the system property naming an event file to record games made by NBullets into
+  static final String PROPERTY = "nbullets.events";
+  // the writer shared by every game when the property is set
+  static EventFileWriter configured;
+
+  FileChannel channel;
+  CopyOnWriteArrayList<EventStream> streams = new CopyOnWriteArrayList<EventStream>();
+  AtomicInteger nextGame = new AtomicInteger();
+  Thread writer;
+  volatile boolean closing;
+  volatile IOException failure;
+  boolean closed;
+  // the chunks and events written so far; only the writer thread writes these
+  volatile long chunksWritten;
+  volatile long eventsWritten;
+
+  // reused by the writer thread for each chunk: the events, a column as encoded and
+  // as compressed, and the lengths before each column
+  EventChunk chunk = new EventChunk(CHUNK_EVENTS);
+  ByteBuffer encoded = ByteBuffer.allocate(CHUNK_EVENTS * 10);
+  byte[] compressed = new byte[CHUNK_EVENTS * 4];
+  ByteBuffer lengths = ByteBuffer.allocate(8);
+  Deflater deflater = new Deflater();
+
+  // Represents a writer of a new event file at the given path, with no streams yet
+  EventFileWriter(Path path) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    ByteBuffer header = ByteBuffer.allocate(6);
+    header.putInt(MAGIC);
+    header.putShort(VERSION);
+    header.flip();
+    this.writeFully(header);
+    this.writer = new Thread(new Runnable() {
+      public void run() {
+        EventFileWriter.this.writeLoop();
+      }
+    }, "event-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  // the writer named by the nbullets.events system property, closed when the JVM
+  // exits, or null if the property isn't set
+  static synchronized EventFileWriter fromSystemProperties() {
+    String path = System.getProperty(PROPERTY);
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+    if (configured == null) {
+      try {
+        final EventFileWriter writer = new EventFileWriter(Paths.get(path));
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+          public void run() {
+            try {
+              writer.close();
+            }
+            catch (IOException e) {
+              System.err.println("could not finish " + PROPERTY + ": " + e.getMessage());
+            }
+          }
+        }, "event-writer-close"));
+        configured = writer;
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return configured;
+  }
+
+  // a new stream of the default capacity for a game's events to be written here
+  EventStream open() {
+    return this.open(EventStream.DEFAULT_CAPACITY);
+  }
+
+  // a new stream with room for the given number of events, a power of two at least
+  // CHUNK_EVENTS, for a game's events to be written here
+  EventStream open(int capacity) {
+    if (capacity < CHUNK_EVENTS) {
+      throw new IllegalArgumentException("a stream needs room for a whole chunk");
+    }
+    EventStream stream = new EventStream(this.nextGame.getAndIncrement(), capacity);
+    stream.lastChunkNanos = System.nanoTime();
+    this.streams.add(stream);
+    return stream;
+  }
+
+  // stops writing the given stream's events, dropping any still waiting
+  void remove(EventStream stream) {
+    this.streams.remove(stream);
+  }
+
+  // writes out every event emitted so far and closes the file, waiting for the
+  // background writer to finish; events emitted after this are dropped once their
+  // stream fills
+  void close() throws IOException {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    this.closing = true;
+    LockSupport.unpark(this.writer);
+    try {
+      this.writer.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    this.channel.close();
+    this.deflater.end();
+    if (this.failure != null) {
+      throw this.failure;
+    }
+  }
+
+  // writes chunks as streams fill up or come due until the writer is closed, and then
+  // whatever was emitted before it closed
+  void writeLoop() {
+    while (true) {
+      // read before draining, so one more pass writes everything emitted before close
+      boolean closing = this.closing;
+      boolean wrote = false;
+      long now = System.nanoTime();
+      for (EventStream stream : this.streams) {
+        // read before draining too, so a finished stream is drained of its last events
+        boolean finished = stream.finished;
+        int waiting = stream.waiting();
+        while (waiting >= CHUNK_EVENTS || waiting > 0
+            && (closing || finished || now - stream.lastChunkNanos >= FLUSH_NANOS)) {
+          waiting -= this.writeChunk(stream);
+          stream.lastChunkNanos = now;
+          wrote = true;
+        }
+        if (finished) {
+          this.streams.remove(stream);
+        }
+      }
+      if (closing) {
+        return;
+      }
+      if (!wrote) {
+        LockSupport.parkNanos(this, IDLE_NANOS);
+      }
+    }
+  }
+
+  // drains a chunk of events from the given stream and writes it out, column by column,
+  // and returns how many events it held
+  int writeChunk(EventStream stream) {
+    int count = stream.drainTo(this.chunk, CHUNK_EVENTS);
+    try {
+      this.lengths.clear();
+      this.lengths.putInt(this.chunk.game);
+      this.lengths.putInt(count);
+      this.lengths.flip();
+      this.writeFully(this.lengths);
+      for (int column = 0; column < COLUMNS.length; column++) {
+        this.encode(column);
+        this.writeColumn();
+      }
+    }
+    catch (IOException e) {
+      this.failure = e;
+    }
+    this.chunksWritten++;
+    this.eventsWritten += count;
+    return count;
+  }
+
+  // encodes the given column of the current chunk into the encoded buffer
+  void encode(int column) {
+    EventChunk chunk = this.chunk;
+    ByteBuffer out = this.encoded;
+    out.clear();
+    if (column == TICK) {
+      long last = 0;
+      for (int k = 0; k < chunk.count; k++) {
+        GameRecorder.putVarint(out, zigzag(chunk.ticks[k] - last));
+        last = chunk.ticks[k];
+      }
+    }
+    else if (column == TYPE) {
+      out.put(chunk.types, 0, chunk.count);
+    }
+    else if (column == X || column == Y) {
+      float[] values = column == X ? chunk.xs : chunk.ys;
+      for (int k = 0; k < chunk.count; k++) {
+        out.putFloat(values[k]);
+      }
+    }
+    else {
+      int[] values = column == A ? chunk.as : chunk.bs;
+      for (int k = 0; k < chunk.count; k++) {
+        GameRecorder.putVarint(out, zigzag(values[k]));
+      }
+    }
+    out.flip();
+  }
+
+  // compresses the encoded buffer and writes it out after its lengths
+  void writeColumn() throws IOException {
+    int length = this.encoded.remaining();
+    this.deflater.reset();
+    this.deflater.setInput(this.encoded.array(), 0, length);
+    this.deflater.finish();
+    int packed = 0;
+    while (!this.deflater.finished()) {
+      if (packed == this.compressed.length) {
+        this.compressed = Arrays.copyOf(this.compressed, this.compressed.length * 2);
+      }
+      packed += this.deflater.deflate(this.compressed, packed, this.compressed.length - packed);
+    }
+    this.lengths.clear();
+    this.lengths.putInt(length);
+    this.lengths.putInt(packed);
+    this.lengths.flip();
+    this.writeFully(this.lengths);
+    this.writeFully(ByteBuffer.wrap(this.compressed, 0, packed));
+  }
+
+  // writes everything left in the given buffer
+  void writeFully(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      this.channel.write(buffer);
+    }
+  }
+
+  // the given number with its sign moved to the lowest bit, so small negative
+  // numbers stay small as varints
+  static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  // the number zigzag was given for the given result
+  static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
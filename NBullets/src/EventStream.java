@@ -0,0 +1,169 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// Represents a game's gameplay events on their way to an EventFileWriter: every shot
+// fired, ship hit, bullet split, ship spawned and bullet culled off the screen, as it
+// happens. An event is a handful of primitive fields written into a ring of columns,
+// so emitting one allocates nothing and never waits on the writer: if the writer falls
+// so far behind that the ring is full, the event is dropped and counted instead.
+// One thread at a time emits, the game's, and one drains, the writer's. Each only
+// moves its own end of the ring, and publishes it with an ordered write once the slots
+// it covers are written or read, so neither ever takes a lock.
+//
+// Every event has the tick it happened on, its type, a position, and two numbers whose
+// meaning depends on the type:
+//   SHOT   where the bullet was fired from; the bullets left, and 0
+//   HIT    where the ship was at the start of the step; its size, and 0
+//   CHAIN  where the hit bullet reached its ship, which is where it splits: where it
+//          was at the start of the step, or part way along it if collisions are swept;
+//          the bullets it split into, and the bullets the rules split it into, which a
+//          ChainBudget can cut
+//   SPAWN  where the ship spawned; its direction, and its size
+//   CULL   where the bullet was as it left the screen; its collisions so far, and its
+//          size
+class EventStream {
+
+  static final byte SHOT = 0;
+  static final byte HIT = 1;
+  static final byte CHAIN = 2;
+  static final byte SPAWN = 3;
+  static final byte CULL = 4;
+  static final String[] TYPES = {"shot", "hit", "chain", "spawn", "cull"};
+
+  // room for four chunks of events, so the game has a second or so of slack at the
+  // rate a dense wave of chains emits
+  static final int DEFAULT_CAPACITY = 4 * EventFileWriter.CHUNK_EVENTS;
+
+  // which of its games the writer numbered this one
+  int game;
+  // the tick events are stamped with, which the game keeps up to date
+  long tick;
+
+  // the ring: one column per field, a slot per event
+  long[] ticks;
+  byte[] types;
+  float[] xs;
+  float[] ys;
+  int[] as;
+  int[] bs;
+  int mask;
+
+  // the events emitted and drained so far, each written by one thread only
+  AtomicLong emitted = new AtomicLong();
+  AtomicLong drained = new AtomicLong();
+  // the game thread's own count of the events it emitted, and the drained count it
+  // last read, so an emit only reads the writer's end when the ring looks full
+  long head;
+  long drainedSeen;
+  // the events dropped because the ring was full; only the game's thread writes this
+  volatile long dropped;
+  // when the writer last wrote a chunk of these events; only the writer touches this
+  long lastChunkNanos;
+  // whether the game is over, so the writer writes out what is left and drops this
+  // stream; set after the game's last emit, so the writer sees every event
+  volatile boolean finished;
+
+  // Represents an empty stream of the given game's events with room for the given
+  // number of them, a power of two, waiting to be drained
+  EventStream(int game, int capacity) {
+    if (capacity < 1 || (capacity & (capacity - 1)) != 0) {
+      throw new IllegalArgumentException("a stream's capacity must be a power of two");
+    }
+    this.game = game;
+    this.ticks = new long[capacity];
+    this.types = new byte[capacity];
+    this.xs = new float[capacity];
+    this.ys = new float[capacity];
+    this.as = new int[capacity];
+    this.bs = new int[capacity];
+    this.mask = capacity - 1;
+  }
+
+  // adds an event of the given type at the given position with the given numbers,
+  // stamped with the current tick, or drops it if the ring is full
+  void emit(byte type, double x, double y, int a, int b) {
+    if (this.head - this.drainedSeen > this.mask) {
+      this.drainedSeen = this.drained.get();
+      if (this.head - this.drainedSeen > this.mask) {
+        this.dropped++;
+        return;
+      }
+    }
+    int i = (int) this.head & this.mask;
+    this.ticks[i] = this.tick;
+    this.types[i] = type;
+    this.xs[i] = (float) x;
+    this.ys[i] = (float) y;
+    this.as[i] = a;
+    this.bs[i] = b;
+    this.head++;
+    this.emitted.lazySet(this.head);
+  }
+
+  // marks the game as over, so the writer writes out the events still waiting and then
+  // stops polling this stream; the game emits nothing after this
+  void finish() {
+    this.finished = true;
+  }
+
+  // the number of events emitted and not yet drained
+  int waiting() {
+    return (int) (this.emitted.get() - this.drained.get());
+  }
+
+  // moves up to the given number of the oldest waiting events into the given chunk,
+  // replacing what it held, and returns how many were moved
+  int drainTo(EventChunk chunk, int max) {
+    long from = this.drained.get();
+    int count = (int) Math.min(this.emitted.get() - from, max);
+    chunk.ensureRoom(count);
+    for (int k = 0; k < count; k++) {
+      int i = (int) (from + k) & this.mask;
+      chunk.ticks[k] = this.ticks[i];
+      chunk.types[k] = this.types[i];
+      chunk.xs[k] = this.xs[i];
+      chunk.ys[k] = this.ys[i];
+      chunk.as[k] = this.as[i];
+      chunk.bs[k] = this.bs[i];
+    }
+    chunk.game = this.game;
+    chunk.count = count;
+    this.drained.lazySet(from + count);
+    return count;
+  }
+}
+
+// Represents a batch of one game's events, laid out in columns as they are in an event
+// file's chunks
+class EventChunk {
+  int game;
+  int count;
+  long[] ticks;
+  byte[] types;
+  float[] xs;
+  float[] ys;
+  int[] as;
+  int[] bs;
+
+  // Represents an empty chunk with room for the given number of events
+  EventChunk(int capacity) {
+    this.ticks = new long[capacity];
+    this.types = new byte[capacity];
+    this.xs = new float[capacity];
+    this.ys = new float[capacity];
+    this.as = new int[capacity];
+    this.bs = new int[capacity];
+  }
+
+  // grows every column, forgetting what it held, if needed to hold the given number of
+  // events
+  void ensureRoom(int count) {
+    if (count > this.ticks.length) {
+      this.ticks = new long[count];
+      this.types = new byte[count];
+      this.xs = new float[count];
+      this.ys = new float[count];
+      this.as = new int[count];
+      this.bs = new int[count];
+    }
+  }
+}
@@ -0,0 +1,388 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import javalib.worldimages.*;
+
+import tester.*;
+
+// Represents a scripted run of the game loop to measure allocations over
+interface IAllocationScenario {
+
+  // the name this scenario is reported under
+  String name();
+
+  // builds a fresh game for this scenario
+  void setup();
+
+  // runs one tick of the script and returns the number of live pieces it touched
+  int tick();
+}
+
+// Represents the most a scenario may allocate: bytes per tick, bytes per live piece
+// per tick, and garbage collections over the whole measured run. A negative limit
+// isn't checked.
+class AllocationBudget {
+  double bytesPerTick;
+  double bytesPerPiece;
+  long collections;
+
+  // Constructor
+  AllocationBudget(double bytesPerTick, double bytesPerPiece, long collections) {
+    this.bytesPerTick = bytesPerTick;
+    this.bytesPerPiece = bytesPerPiece;
+    this.collections = collections;
+  }
+
+  // a description of every limit the given result is over, or "" if it is within
+  // all of them
+  String violations(AllocationResult result) {
+    String over = "";
+    if (this.bytesPerTick >= 0 && result.bytesPerTick() > this.bytesPerTick) {
+      over += result.name + ": " + Math.round(result.bytesPerTick())
+          + " B/tick is over the budget of " + Math.round(this.bytesPerTick) + " B/tick. ";
+    }
+    if (this.bytesPerPiece >= 0 && result.bytesPerPiece() > this.bytesPerPiece) {
+      over += result.name + ": " + Math.round(result.bytesPerPiece())
+          + " B/piece/tick is over the budget of " + Math.round(this.bytesPerPiece)
+          + " B/piece/tick. ";
+    }
+    if (this.collections >= 0 && result.collections > this.collections) {
+      over += result.name + ": " + result.collections
+          + " collections is over the budget of " + this.collections + ". ";
+    }
+    return over;
+  }
+}
+
+// Represents what a scenario allocated over its measured ticks
+class AllocationResult {
+  String name;
+  long ticks;
+  long pieces;
+  long bytes;
+  long collections;
+
+  // Constructor
+  AllocationResult(String name, long ticks, long pieces, long bytes, long collections) {
+    this.name = name;
+    this.ticks = ticks;
+    this.pieces = pieces;
+    this.bytes = bytes;
+    this.collections = collections;
+  }
+
+  // the bytes allocated per tick
+  double bytesPerTick() {
+    return (double) this.bytes / Math.max(1, this.ticks);
+  }
+
+  // the bytes allocated per live piece per tick
+  double bytesPerPiece() {
+    return (double) this.bytes / Math.max(1, this.pieces);
+  }
+
+  // a one-line summary of this result
+  public String toString() {
+    return String.format("%-34s %10.1f B/tick %8.2f B/piece %4d GCs",
+        this.name, this.bytesPerTick(), this.bytesPerPiece(), this.collections);
+  }
+}
+
+// Measures the bytes a scenario allocates on the calling thread, and the collections
+// that run meanwhile, after a warmup long enough for the JIT to compile the tick loop
+// and scalar-replace whatever it can. The heap is collected before measuring, so a
+// collection counted is one the measured ticks caused, not the warmup's garbage.
+class AllocationProbe {
+
+  static final int WARMUP_TICKS = 3000;
+  static final int MEASURE_TICKS = 2000;
+
+  com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  // determines if this JVM can count the bytes a thread allocates
+  boolean supported() {
+    return this.threads.isThreadAllocatedMemorySupported()
+        && this.threads.isThreadAllocatedMemoryEnabled();
+  }
+
+  // measures the given scenario
+  AllocationResult measure(IAllocationScenario scenario) {
+    scenario.setup();
+    for (int i = 0; i < WARMUP_TICKS; i++) {
+      scenario.tick();
+    }
+    System.gc();
+    long thread = Thread.currentThread().getId();
+    long pieces = 0;
+    long collections = this.collections();
+    long before = this.threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < MEASURE_TICKS; i++) {
+      pieces += scenario.tick();
+    }
+    long bytes = this.threads.getThreadAllocatedBytes(thread) - before;
+    return new AllocationResult(scenario.name(), MEASURE_TICKS, pieces, bytes,
+        this.collections() - collections);
+  }
+
+  // the collections run so far by every collector
+  long collections() {
+    long total = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, collector.getCollectionCount());
+    }
+    return total;
+  }
+}
+
+// Plays a game pressing space every few ticks, with enough bullets that it never ends:
+// through NBullets.onTick and onKeyEvent with cons lists, and with a BulletStore, which
+// NBullets doesn't play since it updates in place, through Simulation.step and
+// handleKey
+class FiringScenario implements IAllocationScenario {
+  boolean useStore;
+  int fireEvery;
+  Simulation sim;
+  // the world playing the game, or null if it is played on the Simulation
+  NBullets world;
+  int ticks;
+
+  // Constructor
+  FiringScenario(boolean useStore, int fireEvery) {
+    this.useStore = useStore;
+    this.fireEvery = fireEvery;
+  }
+
+  // the name this scenario is reported under
+  public String name() {
+    return "firing every " + this.fireEvery + " ticks, "
+        + (this.useStore ? "BulletStore" : "cons lists");
+  }
+
+  // builds a game with more bullets than the measured ticks can fire
+  public void setup() {
+    GameConfig config = new GameConfig(Integer.MAX_VALUE, NBullets.SHIP_SPAWN_RATE,
+        NBullets.BULLETSPEED, NBullets.MAX_BULLETSIZE);
+    ILoBullet bullets = this.useStore ? new BulletStore(config) : new MtLoBullet();
+    this.sim = new Simulation(config, new GameRandom(21), bullets);
+    this.world = this.useStore ? null : new NBullets(this.sim);
+    this.ticks = 0;
+  }
+
+  // presses space if it is time to, then runs one tick
+  public int tick() {
+    boolean fire = this.ticks % this.fireEvery == 0;
+    this.ticks++;
+    if (this.world == null) {
+      if (fire) {
+        this.sim.handleKey(" ");
+      }
+      this.sim.step();
+    }
+    else {
+      if (fire) {
+        this.world = (NBullets) this.world.onKeyEvent(" ");
+      }
+      this.world = (NBullets) this.world.onTick();
+      this.sim = this.world.sim;
+    }
+    return this.sim.activeBullets.countBullets() + this.sim.activeShips.countShips();
+  }
+}
+
+// Runs a BulletStore holding a steady wave of bullets through Simulation.step, topping
+// the wave back up in place after bullets leave the screen
+class WaveScenario implements IAllocationScenario {
+  int size;
+  GameConfig config;
+  Random rand = new Random(5);
+  BulletStore store;
+  Simulation sim;
+
+  // Constructor
+  WaveScenario(int size) {
+    this(size, GameConfig.DEFAULT);
+  }
+
+  // Represents a wave of the given size in a game with the given settings
+  WaveScenario(int size, GameConfig config) {
+    this.size = size;
+    this.config = config;
+  }
+
+  // the name this scenario is reported under
+  public String name() {
+    return "wave of " + this.size + " bullets, BulletStore"
+        + (this.config.fixedPoint ? ", fixed point" : "");
+  }
+
+  // builds a game holding a full wave
+  public void setup() {
+    this.store = new BulletStore(this.config, this.size);
+    this.sim = new Simulation(this.config, this.rand, this.store);
+    this.topUp();
+  }
+
+  // runs one tick and tops the wave back up
+  public int tick() {
+    this.sim.step();
+    this.topUp();
+    return this.store.count + this.sim.activeShips.countShips();
+  }
+
+  // adds bullets at random points on the screen until the wave is full again
+  void topUp() {
+    while (this.store.count < this.size) {
+      this.store.add(this.config.snap(this.rand.nextDouble() * NBullets.WIDTH),
+          this.config.snap(this.rand.nextDouble() * NBullets.HEIGHT), NBullets.BULLETSIZE,
+          this.rand.nextInt(360), 1, NBullets.BULLETCOLOR);
+    }
+  }
+}
+
+// Plays a MutableNBullets through onTick and onKeyEvent, firing every other tick, which
+// sets off chain reactions of a few thousand bullets, so pieces keep leaving and
+// joining the game
+class MutableScenario implements IAllocationScenario {
+  MutableNBullets world;
+  int ticks;
+
+  // the name this scenario is reported under
+  public String name() {
+    return "busy game, MutableNBullets";
+  }
+
+  // builds a game with more bullets than the measured ticks can fire
+  public void setup() {
+    this.world = new MutableNBullets(new GameConfig(Integer.MAX_VALUE,
+        NBullets.SHIP_SPAWN_RATE, NBullets.BULLETSPEED, NBullets.MAX_BULLETSIZE),
+        new GameRandom(3));
+    this.ticks = 0;
+  }
+
+  // presses space every other tick, then runs one tick
+  public int tick() {
+    if (this.ticks % 2 == 0) {
+      this.world.onKeyEvent(" ");
+    }
+    this.ticks++;
+    this.world.onTick();
+    return this.world.bulletCount + this.world.shipCount;
+  }
+}
+
+// Draws the image of every bullet and ship in a list once per tick
+class DrawPieceScenario implements IAllocationScenario {
+  int size;
+  IGamePiece[] pieces;
+  // images are written here so the JIT can't drop the calls that made them
+  WorldImage drawn;
+
+  // Constructor
+  DrawPieceScenario(int size) {
+    this.size = size;
+  }
+
+  // the name this scenario is reported under
+  public String name() {
+    return "drawPiece on " + this.size + " pieces";
+  }
+
+  // builds bullets of every size, and ships
+  public void setup() {
+    this.pieces = new IGamePiece[this.size];
+    for (int i = 0; i < this.size; i++) {
+      if (i % 10 == 0) {
+        this.pieces[i] = new Ship(i, 100, NBullets.SHIPSIZE, 0, NBullets.SHIPCOLOR);
+      }
+      else {
+        this.pieces[i] = new Bullet(i, 100, 2 + i % (NBullets.MAX_BULLETSIZE - 1), 90, 1,
+            NBullets.BULLETCOLOR);
+      }
+    }
+  }
+
+  // draws every piece once
+  public int tick() {
+    for (IGamePiece piece : this.pieces) {
+      this.drawn = piece.drawPiece();
+    }
+    return this.pieces.length;
+  }
+}
+
+// Guards the allocation work on the game loop: each scenario declares what it may
+// allocate, and a test fails with the measured figures when a change makes it allocate
+// more. Cons lists copy every piece each tick, so they get a per-piece budget; the
+// BulletStore paths and drawing are meant to allocate next to nothing. The budgets hold
+// whichever kernels run, so run these both as they are and with VectorKernels compiled
+// in and --add-modules jdk.incubator.vector given.
+class ExamplesAllocation {
+
+  AllocationProbe probe = new AllocationProbe();
+
+  // the budget violations of the given scenario, or "" if it is within budget or
+  // this JVM can't count allocations
+  String check(IAllocationScenario scenario, AllocationBudget budget) {
+    if (!this.probe.supported()) {
+      return "";
+    }
+    return budget.violations(this.probe.measure(scenario));
+  }
+
+  void testConsListTicks(Tester t) {
+    t.checkExpect(this.check(new FiringScenario(false, 4),
+        new AllocationBudget(-1, 200, -1)), "");
+  }
+
+  void testBulletStoreTicks(Tester t) {
+    t.checkExpect(this.check(new FiringScenario(true, 4),
+        new AllocationBudget(-1, 40, -1)), "");
+  }
+
+  void testBulletStoreWave(Tester t) {
+    t.checkExpect(this.check(new WaveScenario(20000),
+        new AllocationBudget(1024, 0.1, 0)), "");
+  }
+
+  void testFixedPointWave(Tester t) {
+    t.checkExpect(this.check(new WaveScenario(20000, GameConfig.DEFAULT.withFixedPoint()),
+        new AllocationBudget(1024, 0.1, 0)), "");
+  }
+
+  void testMutableTicks(Tester t) {
+    t.checkExpect(this.check(new MutableScenario(),
+        new AllocationBudget(-1, 1, 0)), "");
+  }
+
+  void testDrawPiece(Tester t) {
+    t.checkExpect(this.check(new DrawPieceScenario(1000),
+        new AllocationBudget(64, 0.1, 0)), "");
+  }
+
+  void testAllocationBudget(Tester t) {
+    AllocationResult result = new AllocationResult("a", 10, 100, 5000, 2);
+    t.checkExpect(result.bytesPerTick(), 500.0);
+    t.checkExpect(result.bytesPerPiece(), 50.0);
+    t.checkExpect(new AllocationBudget(500, 50, 2).violations(result), "");
+    t.checkExpect(new AllocationBudget(-1, -1, 1).violations(result),
+        "a: 2 collections is over the budget of 1. ");
+    t.checkExpect(new AllocationBudget(499, -1, -1).violations(result),
+        "a: 500 B/tick is over the budget of 499 B/tick. ");
+  }
+
+  // measures every scenario and prints what each allocated
+  public static void main(String[] args) {
+    AllocationProbe probe = new AllocationProbe();
+    IAllocationScenario[] scenarios = new IAllocationScenario[] {
+        new FiringScenario(false, 4),
+        new FiringScenario(true, 4),
+        new WaveScenario(20000),
+        new WaveScenario(20000, GameConfig.DEFAULT.withFixedPoint()),
+        new MutableScenario(),
+        new DrawPieceScenario(1000)};
+    for (IAllocationScenario scenario : scenarios) {
+      System.out.println(probe.measure(scenario));
+    }
+  }
+}
@@ -0,0 +1,241 @@
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Toolkit;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+
+// Runs a Simulation at a fixed number of steps per second of wall time, however often it
+// is drawn. Each frame adds the time since the last one to an accumulator and runs a step
+// for every whole step of time in it, up to maxSteps, so a slow frame is caught up by
+// skipping the frames in between rather than by slowing the game down. Time left over
+// beyond maxSteps is dropped, so a long stall doesn't turn into a burst of steps. Key
+// presses are queued and applied just before the next step, so a game plays out the same
+// way however its frames line up with its steps.
+class FixedStepLoop {
+
+  // the most steps run for one frame, so at most this many frames minus one are skipped
+  static final int MAX_STEPS = 5;
+
+  Simulation sim;
+  long stepNanos;
+  int maxSteps;
+  // where applied key presses are recorded for replay, or null if they aren't
+  GameRecorder recorder;
+  // key presses waiting for the next step, from whichever thread handles input
+  ConcurrentLinkedQueue<String> keys = new ConcurrentLinkedQueue<String>();
+
+  // the time not yet simulated, less than one step after every frame
+  long accumulator;
+  // the clock reading of the last frame, or -1 before the first one
+  long lastFrame = -1;
+  long frames;
+  long steps;
+  // steps that were due but dropped because a frame was over maxSteps behind
+  long droppedSteps;
+
+  // Constructor
+  FixedStepLoop(Simulation sim) {
+    this(sim, Math.round(NBullets.TICKRATE * 1e9), MAX_STEPS);
+  }
+
+  // Represents a loop running the given game one step every stepNanos nanoseconds, and
+  // at most maxSteps steps per frame
+  FixedStepLoop(Simulation sim, long stepNanos, int maxSteps) {
+    if (stepNanos <= 0 || maxSteps <= 0) {
+      throw new IllegalArgumentException("steps need a positive length and frame limit");
+    }
+    this.sim = sim;
+    this.stepNanos = stepNanos;
+    this.maxSteps = maxSteps;
+  }
+
+  // Represents a copy of the given loop, running the given copy of its game, that carries
+  // on from its last frame with the same key presses waiting
+  FixedStepLoop(FixedStepLoop loop, Simulation sim) {
+    this(sim, loop.stepNanos, loop.maxSteps);
+    this.recorder = loop.recorder;
+    this.keys.addAll(loop.keys);
+    this.accumulator = loop.accumulator;
+    this.lastFrame = loop.lastFrame;
+    this.frames = loop.frames;
+    this.steps = loop.steps;
+    this.droppedSteps = loop.droppedSteps;
+  }
+
+  // queues the given key press to be handled just before the next step
+  void queueKey(String keyName) {
+    this.keys.add(keyName);
+  }
+
+  // catches the game up to the given clock reading in nanoseconds, and returns the
+  // number of steps that took; the first frame only starts the clock
+  int advance(long now) {
+    this.frames++;
+    if (this.lastFrame < 0) {
+      this.lastFrame = now;
+      return 0;
+    }
+    this.accumulator += Math.max(0, now - this.lastFrame);
+    this.lastFrame = now;
+
+    int ran = 0;
+    while (this.accumulator >= this.stepNanos && ran < this.maxSteps && !this.sim.isOver()) {
+      this.applyKeys();
+      this.sim.step();
+      this.accumulator -= this.stepNanos;
+      ran++;
+    }
+    if (this.accumulator >= this.stepNanos) {
+      this.droppedSteps += this.accumulator / this.stepNanos;
+      this.accumulator %= this.stepNanos;
+    }
+    this.steps += ran;
+    return ran;
+  }
+
+  // hands every queued key press to the game, recording each at the tick it applies to
+  void applyKeys() {
+    String keyName = this.keys.poll();
+    while (keyName != null) {
+      if (this.recorder != null) {
+        this.recorder.recordKey(this.sim.tick, keyName);
+      }
+      this.sim.handleKey(keyName);
+      keyName = this.keys.poll();
+    }
+  }
+
+  // how far the time since the last step is towards the next one, from 0 to 1, which is
+  // how far to draw each piece from its previous position to its current one
+  double alpha() {
+    return Math.min(1.0, (double) this.accumulator / this.stepNanos);
+  }
+
+  // plays a new game in javalib's window that keeps to its tick rate when drawing falls
+  // behind, given as: [seed]
+  public static void main(String[] args) {
+    long seed = args.length > 0 ? Long.parseLong(args[0]) : System.nanoTime();
+    new NBullets(new Simulation(new GameRandom(seed))).fixedStep()
+        .bigBang(NBullets.WIDTH, NBullets.HEIGHT, NBullets.TICKRATE);
+  }
+}
+
+// Shows a game in a window of its own, drawing it with a RasterRenderer as often as the
+// display keeps up with while a FixedStepLoop runs it at the game's tick rate. Each frame
+// draws every piece part of the way from where it was one step ago to where it is now.
+class FixedStepWindow {
+
+  // the most frames drawn per second, so a display that never blocks doesn't spin
+  static final int MAX_FPS = 240;
+
+  FixedStepLoop loop;
+  RasterRenderer renderer = new RasterRenderer();
+  Canvas canvas = new Canvas();
+  JFrame frame = new JFrame("NBullets");
+  volatile boolean running = true;
+
+  // Constructor
+  FixedStepWindow(FixedStepLoop loop) {
+    this.loop = loop;
+  }
+
+  // opens the window and draws the game until it is over and the window is closed
+  void play() throws InterruptedException {
+    SwingUtilities.invokeLater(new Runnable() {
+      public void run() {
+        FixedStepWindow.this.open();
+      }
+    });
+    while (!this.canvas.isDisplayable()) {
+      Thread.sleep(10);
+    }
+    this.canvas.createBufferStrategy(2);
+    BufferStrategy strategy = this.canvas.getBufferStrategy();
+    long minFrameNanos = 1_000_000_000L / MAX_FPS;
+    while (this.running) {
+      long start = System.nanoTime();
+      this.loop.advance(start);
+      this.renderer.render(this.loop.sim, this.loop.alpha());
+      Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+      g.drawImage(this.renderer.frame, 0, 0, null);
+      if (this.loop.sim.isOver()) {
+        this.drawGameOver(g);
+      }
+      g.dispose();
+      strategy.show();
+      Toolkit.getDefaultToolkit().sync();
+      long left = minFrameNanos - (System.nanoTime() - start);
+      if (left > 0) {
+        LockSupport.parkNanos(left);
+      }
+    }
+  }
+
+  // builds the window, sending its key presses to the loop's queue
+  void open() {
+    this.canvas.setPreferredSize(new Dimension(this.renderer.width, this.renderer.height));
+    this.canvas.setIgnoreRepaint(true);
+    this.canvas.addKeyListener(new KeyAdapter() {
+      public void keyPressed(KeyEvent e) {
+        FixedStepWindow.this.loop.queueKey(FixedStepWindow.keyName(e));
+      }
+    });
+    this.frame.addWindowListener(new WindowAdapter() {
+      public void windowClosing(WindowEvent e) {
+        FixedStepWindow.this.running = false;
+      }
+    });
+    this.frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+    this.frame.setResizable(false);
+    this.frame.add(this.canvas);
+    this.frame.pack();
+    this.frame.setVisible(true);
+    this.canvas.requestFocusInWindow();
+  }
+
+  // the name javalib would give the given key press: the character typed, or the
+  // lower-case name of a key that doesn't type one
+  static String keyName(KeyEvent e) {
+    if (e.getKeyChar() != KeyEvent.CHAR_UNDEFINED && !Character.isISOControl(e.getKeyChar())) {
+      return String.valueOf(e.getKeyChar());
+    }
+    return KeyEvent.getKeyText(e.getKeyCode()).toLowerCase();
+  }
+
+  // draws the final score over the last frame, as NBullets.worldEnds does
+  void drawGameOver(Graphics2D g) {
+    g.setColor(Color.DARK_GRAY);
+    g.fillRect(0, 0, this.renderer.width, this.renderer.height);
+    g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 36));
+    this.drawCentered(g, "GAME OVER", Color.CYAN, this.renderer.height / 2);
+    g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 18));
+    this.drawCentered(g, "Final Score: " + this.loop.sim.shipsDestroyed, Color.ORANGE,
+        this.renderer.height / 2 + 28);
+  }
+
+  // draws the given text centered across the window on the given baseline
+  void drawCentered(Graphics2D g, String text, Color color, int baseline) {
+    FontMetrics metrics = g.getFontMetrics();
+    g.setColor(color);
+    g.drawString(text, (this.renderer.width - metrics.stringWidth(text)) / 2, baseline);
+  }
+
+  // plays a new game in a window, given as: [seed]
+  public static void main(String[] args) throws InterruptedException {
+    long seed = args.length > 0 ? Long.parseLong(args[0]) : System.nanoTime();
+    new FixedStepWindow(new FixedStepLoop(new Simulation(new GameRandom(seed))))
+        .play();
+    System.exit(0);
+  }
+}
@@ -0,0 +1,226 @@
+// Represents the tunable constants of a game, so games with different settings can
+// run side by side. GameConfig.DEFAULT holds the constants in NBullets.
+//
+// A game can take steps several ticks long: every piece moves stepMultiplier ticks'
+// worth each step and ships spawn stepMultiplier times as often in steps, so a batch
+// run needs that many times fewer steps per game. Pieces that far apart at the ends of
+// a step can pass through each other, so such games test collisions along each step.
+//
+// A game can also keep its pieces in 16.16 fixed point, as FixedPoint describes, so it
+// plays out to the same bits on every JVM whatever its flags and intrinsics.
+//
+// Each time ships spawn, another ship keeps spawning while a shipSpawnChance comes up,
+// so the chance sets how dense the waves are: 0.6 by default, and below 1 so a wave
+// always ends.
+class GameConfig {
+
+  // the bits of flags(), as snapshots and recordings store them
+  static final byte SWEPT = 1;
+  static final byte FIXED_POINT = 2;
+
+  static final GameConfig DEFAULT = new GameConfig(
+      NBullets.DEFAULTBULLETS,
+      NBullets.SHIP_SPAWN_RATE,
+      NBullets.BULLETSPEED,
+      NBullets.MAX_BULLETSIZE);
+
+  int startingBullets;
+  double shipSpawnRate; //measured in seconds
+  int bulletSpeed;
+  int maxBulletSize;
+  // the number of ticks each step covers
+  int stepMultiplier;
+  // whether collisions are tested along each piece's whole step instead of only where
+  // the pieces are when the step starts
+  boolean sweptCollisions;
+  // whether positions and movement are kept to 16.16 fixed-point values
+  boolean fixedPoint;
+  // the chance that another ship spawns, each time ships spawn
+  double shipSpawnChance;
+
+  // the number of ticks between chances to spawn ships
+  int spawnTicks;
+  // the per-step movement of a bullet heading in each whole-degree direction from 0 to
+  // 360, which covers every direction the game fires or fans bullets out in
+  double[] dxTable = new double[361];
+  double[] dyTable = new double[361];
+  // the same movement in 16.16 fixed point, worked out with StrictMath so it is the same
+  // on every JVM; in fixed point, the tables above hold exactly these values
+  int[] fixedDxTable = new int[361];
+  int[] fixedDyTable = new int[361];
+
+  // Constructor
+  GameConfig(int startingBullets, double shipSpawnRate, int bulletSpeed, int maxBulletSize) {
+    this(startingBullets, shipSpawnRate, bulletSpeed, maxBulletSize, 1, false);
+  }
+
+  // Represents settings whose steps each cover the given number of ticks, with
+  // collisions tested along each step or not
+  GameConfig(int startingBullets, double shipSpawnRate, int bulletSpeed, int maxBulletSize,
+      int stepMultiplier, boolean sweptCollisions) {
+    this(startingBullets, shipSpawnRate, bulletSpeed, maxBulletSize, stepMultiplier,
+        sweptCollisions, false);
+  }
+
+  // Represents settings whose steps each cover the given number of ticks, with
+  // collisions tested along each step or not, in fixed point or not
+  GameConfig(int startingBullets, double shipSpawnRate, int bulletSpeed, int maxBulletSize,
+      int stepMultiplier, boolean sweptCollisions, boolean fixedPoint) {
+    this(startingBullets, shipSpawnRate, bulletSpeed, maxBulletSize, stepMultiplier,
+        sweptCollisions, fixedPoint, Simulation.SHIP_SPAWN_CHANCE);
+  }
+
+  // Represents settings whose steps each cover the given number of ticks, with
+  // collisions tested along each step or not, in fixed point or not, and whose ships
+  // spawn with the given chance
+  GameConfig(int startingBullets, double shipSpawnRate, int bulletSpeed, int maxBulletSize,
+      int stepMultiplier, boolean sweptCollisions, boolean fixedPoint,
+      double shipSpawnChance) {
+    if (stepMultiplier < 1) {
+      throw new IllegalArgumentException("a step must cover at least one tick");
+    }
+    if (!(shipSpawnChance >= 0 && shipSpawnChance < 1)) {
+      throw new IllegalArgumentException("a spawn chance must be at least 0 and below 1");
+    }
+    this.startingBullets = startingBullets;
+    this.shipSpawnRate = shipSpawnRate;
+    this.bulletSpeed = bulletSpeed;
+    this.maxBulletSize = maxBulletSize;
+    this.stepMultiplier = stepMultiplier;
+    this.sweptCollisions = sweptCollisions;
+    this.fixedPoint = fixedPoint;
+    this.shipSpawnChance = shipSpawnChance;
+    int ticks = (int) (shipSpawnRate * Math.pow(NBullets.TICKRATE, -1));
+    this.spawnTicks = Math.max(1, (int) Math.round((double) ticks / stepMultiplier));
+    for (int degrees = 0; degrees <= 360; degrees++) {
+      this.fixedDxTable[degrees] = FixedPoint.toFixed(
+          StrictMath.cos(StrictMath.toRadians(degrees)) * bulletSpeed * stepMultiplier);
+      this.fixedDyTable[degrees] = FixedPoint.toFixed(
+          StrictMath.sin(StrictMath.toRadians(degrees)) * bulletSpeed * stepMultiplier);
+      if (fixedPoint) {
+        this.dxTable[degrees] = FixedPoint.toDouble(this.fixedDxTable[degrees]);
+        this.dyTable[degrees] = FixedPoint.toDouble(this.fixedDyTable[degrees]);
+      }
+      else {
+        this.dxTable[degrees] = Math.cos(Math.toRadians(degrees)) * bulletSpeed * stepMultiplier;
+        this.dyTable[degrees] = Math.sin(Math.toRadians(degrees)) * bulletSpeed * stepMultiplier;
+      }
+    }
+  }
+
+  // the settings with the given values, which are GameConfig.DEFAULT if they match it
+  static GameConfig of(int startingBullets, double shipSpawnRate, int bulletSpeed,
+      int maxBulletSize, int stepMultiplier, boolean sweptCollisions, boolean fixedPoint,
+      double shipSpawnChance) {
+    if (startingBullets == DEFAULT.startingBullets
+        && shipSpawnRate == DEFAULT.shipSpawnRate
+        && bulletSpeed == DEFAULT.bulletSpeed
+        && maxBulletSize == DEFAULT.maxBulletSize
+        && stepMultiplier == DEFAULT.stepMultiplier
+        && sweptCollisions == DEFAULT.sweptCollisions
+        && fixedPoint == DEFAULT.fixedPoint
+        && shipSpawnChance == DEFAULT.shipSpawnChance) {
+      return DEFAULT;
+    }
+    return new GameConfig(startingBullets, shipSpawnRate, bulletSpeed, maxBulletSize,
+        stepMultiplier, sweptCollisions, fixedPoint, shipSpawnChance);
+  }
+
+  // the settings with the given values and flags, as flags() gives them
+  static GameConfig of(int startingBullets, double shipSpawnRate, int bulletSpeed,
+      int maxBulletSize, int stepMultiplier, byte flags, double shipSpawnChance) {
+    return of(startingBullets, shipSpawnRate, bulletSpeed, maxBulletSize, stepMultiplier,
+        (flags & SWEPT) != 0, (flags & FIXED_POINT) != 0, shipSpawnChance);
+  }
+
+  // the yes-or-no settings packed into one byte, SWEPT and FIXED_POINT
+  byte flags() {
+    return (byte) ((this.sweptCollisions ? SWEPT : 0) | (this.fixedPoint ? FIXED_POINT : 0));
+  }
+
+  // these settings with steps that each cover the given number of ticks, and with
+  // collisions tested along each step so no bullet can pass through a ship
+  GameConfig withSteps(int stepMultiplier) {
+    return new GameConfig(this.startingBullets, this.shipSpawnRate, this.bulletSpeed,
+        this.maxBulletSize, stepMultiplier, true, this.fixedPoint, this.shipSpawnChance);
+  }
+
+  // these settings with positions and movement kept in 16.16 fixed point
+  GameConfig withFixedPoint() {
+    return new GameConfig(this.startingBullets, this.shipSpawnRate, this.bulletSpeed,
+        this.maxBulletSize, this.stepMultiplier, this.sweptCollisions, true,
+        this.shipSpawnChance);
+  }
+
+  // these settings with ships spawning with the given chance, each time ships spawn
+  GameConfig withSpawnChance(double shipSpawnChance) {
+    return new GameConfig(this.startingBullets, this.shipSpawnRate, this.bulletSpeed,
+        this.maxBulletSize, this.stepMultiplier, this.sweptCollisions, this.fixedPoint,
+        shipSpawnChance);
+  }
+
+  // the per-step change in x of a bullet heading in the given direction in degrees
+  double velocityX(double direction) {
+    int degrees = (int) direction;
+    if (degrees == direction && degrees >= 0 && degrees <= 360) {
+      return this.dxTable[degrees];
+    }
+    if (this.fixedPoint) {
+      return FixedPoint.snap(StrictMath.cos(StrictMath.toRadians(direction))
+          * this.bulletSpeed * this.stepMultiplier);
+    }
+    return Math.cos(Math.toRadians(direction)) * this.bulletSpeed * this.stepMultiplier;
+  }
+
+  // the per-step change in y of a bullet heading in the given direction in degrees
+  double velocityY(double direction) {
+    int degrees = (int) direction;
+    if (degrees == direction && degrees >= 0 && degrees <= 360) {
+      return this.dyTable[degrees];
+    }
+    if (this.fixedPoint) {
+      return FixedPoint.snap(StrictMath.sin(StrictMath.toRadians(direction))
+          * this.bulletSpeed * this.stepMultiplier);
+    }
+    return Math.sin(Math.toRadians(direction)) * this.bulletSpeed * this.stepMultiplier;
+  }
+
+  // the per-step change in x of a ship heading in the given direction, which ships
+  // read as radians
+  double shipVelocity(double direction) {
+    if (this.fixedPoint) {
+      return FixedPoint.snap(NBullets.SHIPSPEED * StrictMath.cos(direction) * this.stepMultiplier);
+    }
+    return NBullets.SHIPSPEED * Math.cos(direction) * this.stepMultiplier;
+  }
+
+  // how much of a step a bullet split from one that hit a ship the given fraction of the
+  // way through the step moves before the step ends. A split takes one tick, as it does
+  // when a step is one tick, so the split bullets only move in steps several ticks long.
+  double splitLead(double contact) {
+    return Math.max(0, 1 - contact - 1.0 / this.stepMultiplier);
+  }
+
+  // the given coordinate as a piece in a game with these settings can hold it: rounded
+  // to fixed point in fixed point, and as it is otherwise
+  double snap(double coordinate) {
+    return this.fixedPoint ? FixedPoint.snap(coordinate) : coordinate;
+  }
+
+  // the size of a bullet split from a bullet of the given size
+  int grownSize(int size) {
+    return (size < this.maxBulletSize) ? size + 2 : size;
+  }
+
+  // the size of a bullet split from a bullet of the given size that stands for the given
+  // number of the bullets it split into, more than one when a ChainBudget merged the
+  // rest into it: as big around as they are together, grown from at most the size limit
+  // so a merged bullet doesn't grow again each time it merges
+  int splitSize(int size, int bullets) {
+    if (bullets == 1) {
+      return this.grownSize(size);
+    }
+    return (int) Math.round(Math.min(this.grownSize(size), this.maxBulletSize)
+        * Math.sqrt(bullets));
+  }
+}
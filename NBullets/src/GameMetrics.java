@@ -0,0 +1,420 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Represents the timings and counts measured while a game runs: how long each phase
+// of a tick and of drawing takes, how many bullets, ships, collision tests, chain
+// bullets and off-screen bullets each tick had, and the level its ChainBudget held it
+// at, which is always NORMAL for a game without one. A Simulation only measures itself when
+// it is given a GameMetrics, so an unmeasured game pays for nothing more than a null
+// check per phase. Each value goes into a lock-free Histogram, so a game thread can
+// record while the sinks read from other threads.
+class GameMetrics implements GameMetricsMBean {
+
+  // the phases of a tick and of drawing a frame, timed in nanoseconds
+  static final int SCORE = 0;
+  static final int SHIP_UPDATE = 1;
+  static final int BULLET_UPDATE = 2;
+  static final int SPAWN = 3;
+  static final int STEP = 4;
+  static final int MAKE_SCENE = 5;
+  static final String[] PHASES =
+      {"score", "shipUpdate", "bulletUpdate", "spawn", "step", "makeScene"};
+
+  // the counts taken once per tick
+  static final int LIVE_BULLETS = 0;
+  static final int LIVE_SHIPS = 1;
+  static final int COLLISION_TESTS = 2;
+  static final int CHAIN_BULLETS = 3;
+  static final int CULLED_BULLETS = 4;
+  static final int BUDGET_LEVEL = 5;
+  static final String[] COUNTERS = {"liveBullets", "liveShips", "collisionTests",
+      "chainBullets", "culledBullets", "budgetLevel"};
+
+  // the system property naming a CSV file to turn measuring on for games made by NBullets
+  static final String PROPERTY = "nbullets.metrics";
+  // the metrics shared by every game when the property is set
+  static GameMetrics configured;
+
+  Histogram[] phases = new Histogram[PHASES.length];
+  Histogram[] counters = new Histogram[COUNTERS.length];
+  AtomicLong ticks = new AtomicLong();
+  CopyOnWriteArrayList<IMetricsSink> sinks = new CopyOnWriteArrayList<IMetricsSink>();
+  ScheduledExecutorService publisher;
+
+  // Constructor
+  GameMetrics() {
+    for (int i = 0; i < this.phases.length; i++) {
+      this.phases[i] = new Histogram();
+    }
+    for (int i = 0; i < this.counters.length; i++) {
+      this.counters[i] = new Histogram();
+    }
+  }
+
+  // the metrics named by the nbullets.metrics system property, publishing to its CSV
+  // file and over JMX once a second, or null if the property isn't set
+  static synchronized GameMetrics fromSystemProperties() {
+    String path = System.getProperty(PROPERTY);
+    if (path == null || path.isEmpty()) {
+      return null;
+    }
+    if (configured == null) {
+      try {
+        configured = new GameMetrics()
+            .addSink(new CsvMetricsSink(Paths.get(path)))
+            .addSink(new JmxMetricsSink())
+            .publishEvery(1, TimeUnit.SECONDS);
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return configured;
+  }
+
+  // records that the given phase took the given number of nanoseconds
+  void recordPhase(int phase, long nanos) {
+    this.phases[phase].record(nanos);
+  }
+
+  // records the counts for one tick
+  void recordTick(int liveBullets, int liveShips, int collisionTests, int chainBullets,
+      int culledBullets, int budgetLevel) {
+    this.counters[LIVE_BULLETS].record(liveBullets);
+    this.counters[LIVE_SHIPS].record(liveShips);
+    this.counters[COLLISION_TESTS].record(collisionTests);
+    this.counters[CHAIN_BULLETS].record(chainBullets);
+    this.counters[CULLED_BULLETS].record(culledBullets);
+    this.counters[BUDGET_LEVEL].record(budgetLevel);
+    this.ticks.incrementAndGet();
+  }
+
+  // adds a sink to publish these metrics to, and returns these metrics
+  GameMetrics addSink(IMetricsSink sink) {
+    this.sinks.add(sink);
+    return this;
+  }
+
+  // publishes these metrics to every sink
+  void publish() {
+    for (IMetricsSink sink : this.sinks) {
+      sink.publish(this);
+    }
+  }
+
+  // publishes these metrics to every sink on a background thread every given period,
+  // until close is called, and returns these metrics
+  GameMetrics publishEvery(long period, TimeUnit unit) {
+    this.publisher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "nbullets-metrics");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    final GameMetrics metrics = this;
+    this.publisher.scheduleAtFixedRate(new Runnable() {
+      public void run() {
+        metrics.publish();
+      }
+    }, period, period, unit);
+    return this;
+  }
+
+  // stops publishing, publishes one last time, and closes every sink
+  void close() {
+    if (this.publisher != null) {
+      this.publisher.shutdown();
+      try {
+        this.publisher.awaitTermination(1, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    this.publish();
+    for (IMetricsSink sink : this.sinks) {
+      sink.close();
+    }
+  }
+
+  // the ticks measured so far
+  public long getTicks() {
+    return this.ticks.get();
+  }
+
+  // the name of each column: the phases, then the counters
+  public String[] getColumns() {
+    String[] columns = new String[PHASES.length + COUNTERS.length];
+    System.arraycopy(PHASES, 0, columns, 0, PHASES.length);
+    System.arraycopy(COUNTERS, 0, columns, PHASES.length, COUNTERS.length);
+    return columns;
+  }
+
+  // the median of each column
+  public long[] getP50() {
+    return this.percentiles(0.5);
+  }
+
+  // the 99th percentile of each column
+  public long[] getP99() {
+    return this.percentiles(0.99);
+  }
+
+  // the largest value seen in each column
+  public long[] getMax() {
+    long[] max = new long[PHASES.length + COUNTERS.length];
+    for (int i = 0; i < max.length; i++) {
+      max[i] = this.column(i).max();
+    }
+    return max;
+  }
+
+  // forgets everything measured so far
+  public void reset() {
+    for (int i = 0; i < PHASES.length + COUNTERS.length; i++) {
+      this.column(i).reset();
+    }
+    this.ticks.set(0);
+  }
+
+  // the given percentile of each column
+  long[] percentiles(double fraction) {
+    long[] values = new long[PHASES.length + COUNTERS.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = this.column(i).percentile(fraction);
+    }
+    return values;
+  }
+
+  // the histogram behind the given column
+  Histogram column(int index) {
+    if (index < PHASES.length) {
+      return this.phases[index];
+    }
+    return this.counters[index - PHASES.length];
+  }
+}
+
+// Represents a histogram of non-negative longs that any number of threads can record
+// into and read from without locking. Values are counted in log-linear buckets, eight
+// to each power of two, so a percentile is within an eighth of the true value, and
+// values below 16 are counted exactly.
+class Histogram {
+
+  static final int SUB_BUCKETS = 8;
+  static final int EXACT = 2 * SUB_BUCKETS;
+  static final int BUCKETS = EXACT + (64 - 4) * SUB_BUCKETS;
+
+  AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  AtomicLong total = new AtomicLong();
+  AtomicLong sum = new AtomicLong();
+  AtomicLong max = new AtomicLong();
+
+  // counts the given value, with negative values counted as 0
+  void record(long value) {
+    value = Math.max(0, value);
+    this.counts.incrementAndGet(bucketOf(value));
+    this.total.incrementAndGet();
+    this.sum.addAndGet(value);
+    long seen = this.max.get();
+    while (value > seen && !this.max.compareAndSet(seen, value)) {
+      seen = this.max.get();
+    }
+  }
+
+  // the number of values counted
+  long count() {
+    return this.total.get();
+  }
+
+  // the largest value counted, or 0 if there are none
+  long max() {
+    return this.max.get();
+  }
+
+  // the mean of the values counted, or 0 if there are none
+  double mean() {
+    long count = this.total.get();
+    return count == 0 ? 0 : (double) this.sum.get() / count;
+  }
+
+  // the smallest value at least the given fraction of the counted values are at or below,
+  // rounded up to the top of its bucket but never above the largest value counted
+  long percentile(double fraction) {
+    long count = this.total.get();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(fraction * count));
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += this.counts.get(bucket);
+      if (seen >= rank) {
+        return Math.min(highestIn(bucket), this.max.get());
+      }
+    }
+    return this.max.get();
+  }
+
+  // forgets every value counted
+  void reset() {
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      this.counts.set(bucket, 0);
+    }
+    this.total.set(0);
+    this.sum.set(0);
+    this.max.set(0);
+  }
+
+  // the bucket the given value is counted in
+  static int bucketOf(long value) {
+    if (value < EXACT) {
+      return (int) value;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (magnitude - 3)) & (SUB_BUCKETS - 1);
+    return EXACT + (magnitude - 4) * SUB_BUCKETS + sub;
+  }
+
+  // the largest value counted in the given bucket
+  static long highestIn(int bucket) {
+    if (bucket < EXACT) {
+      return bucket;
+    }
+    int magnitude = (bucket - EXACT) / SUB_BUCKETS + 4;
+    long sub = (bucket - EXACT) % SUB_BUCKETS;
+    long width = 1L << (magnitude - 3);
+    return ((SUB_BUCKETS + sub) << (magnitude - 3)) + width - 1;
+  }
+}
+
+// Represents somewhere GameMetrics are published to
+interface IMetricsSink {
+
+  // publishes the given metrics as they are now
+  void publish(GameMetrics metrics);
+
+  // releases anything this sink holds open
+  void close();
+}
+
+// Represents a sink that appends a CSV row of every column's p50, p99 and max to a file
+// each time the metrics are published
+class CsvMetricsSink implements IMetricsSink {
+
+  Writer out;
+  long started = System.nanoTime();
+  boolean wroteHeader;
+
+  // Constructor
+  CsvMetricsSink(Path file) throws IOException {
+    this(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+  }
+
+  // Represents a sink that writes its rows to the given writer
+  CsvMetricsSink(Writer out) {
+    this.out = out;
+  }
+
+  // appends a row for the given metrics, after the header if this is the first row
+  public synchronized void publish(GameMetrics metrics) {
+    try {
+      String[] columns = metrics.getColumns();
+      if (!this.wroteHeader) {
+        StringBuilder header = new StringBuilder("elapsedMillis,ticks");
+        for (String column : columns) {
+          header.append(',').append(column).append("P50")
+              .append(',').append(column).append("P99")
+              .append(',').append(column).append("Max");
+        }
+        this.out.write(header.append('\n').toString());
+        this.wroteHeader = true;
+      }
+      long[] p50 = metrics.getP50();
+      long[] p99 = metrics.getP99();
+      long[] max = metrics.getMax();
+      StringBuilder row = new StringBuilder()
+          .append((System.nanoTime() - this.started) / 1000000)
+          .append(',').append(metrics.getTicks());
+      for (int i = 0; i < columns.length; i++) {
+        row.append(',').append(p50[i]).append(',').append(p99[i]).append(',').append(max[i]);
+      }
+      this.out.write(row.append('\n').toString());
+      this.out.flush();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // closes the file
+  public synchronized void close() {
+    try {
+      this.out.close();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
+
+// Represents a sink that registers the metrics it is given as an MBean on the platform
+// MBean server, where a JMX console reads them live
+class JmxMetricsSink implements IMetricsSink {
+
+  static final String NAME = "NBullets:type=GameMetrics";
+
+  MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+  ObjectName name;
+
+  // Constructor
+  JmxMetricsSink() {
+    try {
+      this.name = new ObjectName(NAME);
+    }
+    catch (JMException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // registers the given metrics the first time they are published
+  public synchronized void publish(GameMetrics metrics) {
+    try {
+      if (!this.server.isRegistered(this.name)) {
+        this.server.registerMBean(metrics, this.name);
+      }
+    }
+    catch (JMException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // unregisters the metrics
+  public synchronized void close() {
+    try {
+      if (this.server.isRegistered(this.name)) {
+        this.server.unregisterMBean(this.name);
+      }
+    }
+    catch (JMException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,22 @@
+// The view of a GameMetrics published over JMX by JmxMetricsSink. Every array
+// lines up with getColumns: the game phases, in nanoseconds, then the per-tick counters.
+public interface GameMetricsMBean {
+
+  // the ticks measured so far
+  long getTicks();
+
+  // the name of each column
+  String[] getColumns();
+
+  // the median of each column
+  long[] getP50();
+
+  // the 99th percentile of each column
+  long[] getP99();
+
+  // the largest value seen in each column
+  long[] getMax();
+
+  // forgets everything measured so far
+  void reset();
+}
@@ -1,4 +1,5 @@
 import java.awt.Color;
+import java.nio.ByteBuffer;
 import javalib.worldimages.*;
 
 // Represents a game piece in the game
@@ -15,19 +16,28 @@ interface IGamePiece {
 //Represents the abstraction of a game piece in the game
 abstract class AGamePiece implements IGamePiece {
 
+  // what contactTime gives for pieces that don't touch during the step
+  static final double NO_CONTACT = -1;
+
   double x;
   double y;
   int size;
   Color color;
   double direction; 
+  // how far this game piece moves each tick, worked out once from its direction
+  double dx;
+  double dy;
 
   // Constructor
-  AGamePiece(double x, double y, int size, double direction, Color color) {
+  AGamePiece(double x, double y, int size, double direction, Color color,
+      double dx, double dy) {
     this.x = x;
     this.y = y;
     this.size = size;
     this.direction = direction;
     this.color = color;
+    this.dx = dx;
+    this.dy = dy;
   }
 
   // Determines if this game piece is off the screen or not
@@ -38,14 +48,100 @@ abstract class AGamePiece implements IGamePiece {
         || this.y > NBullets.HEIGHT;
   }
 
-  //Determines if this game piece collided with another game piece
+  // Determines if this game piece's collisions are tested along its whole next step,
+  // so a fast piece can't pass through another between ticks
+  public boolean sweeps() {
+    return false;
+  }
+
+  // Determines if this game piece is kept in fixed point, so its collisions and bounds
+  // are tested on integers
+  public boolean fixedPoint() {
+    return false;
+  }
+
+  //Determines if this game piece collided with another game piece: where they are now,
+  //or anywhere along their next step if either of them sweeps
   public boolean collidedWith(AGamePiece other) {
-    return Math.hypot(this.x - other.x, this.y - other.y) <= this.size + other.size;
+    if (this.sweeps() || other.sweeps()) {
+      return contactTime(this.x, this.y, this.dx, this.dy, this.size,
+          other.x, other.y, other.dx, other.dy, other.size) != NO_CONTACT;
+    }
+    if (this.fixedPoint() || other.fixedPoint()) {
+      return FixedPoint.circlesCollided(this.x, this.y, this.size, other.x, other.y, other.size);
+    }
+    return circlesCollided(this.x, this.y, this.size, other.x, other.y, other.size);
+  }
+
+  // Determines if this game piece collided with any of the pieces in the given grid
+  public boolean collidedWithAny(SpatialGrid grid) {
+    return grid.anyCollidedWith(this.x, this.y, this.dx, this.dy, this.size, this.sweeps());
+  }
+
+  // Determines if this game piece collided with any of the ships in the given grid,
+  // marking those ships as hit in the given HitSet
+  public boolean markCollisions(SpatialGrid shipGrid, HitSet hits) {
+    return shipGrid.markCollisions(this.x, this.y, this.size, hits);
+  }
+
+  // Draws this game piece into the frame of the given renderer
+  public void drawOn(RasterRenderer renderer) {
+    renderer.fillPiece(this.x, this.y, this.dx, this.dy, this.size, this.color.getRGB());
+  }
+
+  // Adds this game piece to the given grid
+  public void addTo(SpatialGrid grid) {
+    if (this.fixedPoint()) {
+      grid.fixedPoint = true;
+    }
+    grid.add(this.x, this.y, this.size, this.dx, this.dy);
+    if (this.sweeps()) {
+      grid.swept = true;
+    }
+  }
+
+  // Determines if two circles with the given centers and radii touch or overlap,
+  // comparing squared distances so no square root is needed
+  static boolean circlesCollided(double x1, double y1, int size1,
+      double x2, double y2, int size2) {
+    double distX = x1 - x2;
+    double distY = y1 - y2;
+    double reach = size1 + size2;
+    return distX * distX + distY * distY <= reach * reach;
   }
 
-  // Draws this game piece
+  // How far through a step, from 0 to 1, two circles with the given centers, per-step
+  // movement and radii first touch or overlap while both move in a straight line, or
+  // NO_CONTACT if they don't during the step. Solves |d + t * v| = size1 + size2 for
+  // the earliest t, where d and v are the differences in position and movement.
+  static double contactTime(double x1, double y1, double dx1, double dy1, int size1,
+      double x2, double y2, double dx2, double dy2, int size2) {
+    double distX = x1 - x2;
+    double distY = y1 - y2;
+    double reach = size1 + size2;
+    double apart = distX * distX + distY * distY - reach * reach;
+    if (apart <= 0) {
+      return 0;
+    }
+    double moveX = dx1 - dx2;
+    double moveY = dy1 - dy2;
+    double speed = moveX * moveX + moveY * moveY;
+    double closing = distX * moveX + distY * moveY;
+    if (closing >= 0 || speed == 0) {
+      return NO_CONTACT;
+    }
+    double discriminant = closing * closing - speed * apart;
+    if (discriminant < 0) {
+      return NO_CONTACT;
+    }
+    double t = (-closing - Math.sqrt(discriminant)) / speed;
+    return t <= 1 ? t : NO_CONTACT;
+  }
+
+  // Draws this game piece, sharing the image with every other piece of the same
+  // size and color
   public WorldImage drawPiece() {
-    return new CircleImage(this.size, OutlineMode.SOLID, this.color);
+    return ImageCache.circle(this.size, OutlineMode.SOLID, this.color);
   }
 }
 
@@ -53,42 +149,149 @@ abstract class AGamePiece implements IGamePiece {
 class Bullet extends AGamePiece {
 
   int colSoFar;
+  // the speed and size limit this bullet and the bullets it splits into follow
+  GameConfig config;
 
   // Constructor
   Bullet(double x, double y, int size, double direction, int colSoFar, Color color) {
-    super(x, y, size, direction, color);
+    this(x, y, size, direction, colSoFar, color, GameConfig.DEFAULT);
+  }
+
+  // Represents a bullet in a game with the given settings
+  Bullet(double x, double y, int size, double direction, int colSoFar, Color color,
+      GameConfig config) {
+    this(x, y, size, direction, colSoFar, color, config,
+        config.velocityX(direction), config.velocityY(direction));
+  }
+
+  // Represents a bullet whose per-tick movement is already known
+  Bullet(double x, double y, int size, double direction, int colSoFar, Color color,
+      GameConfig config, double dx, double dy) {
+    super(x, y, size, direction, color, dx, dy);
     this.colSoFar = colSoFar;
+    this.config = config;
+  }
+
+  // Determines if this bullet's collisions are tested along its whole next step, as its
+  // game's settings say
+  public boolean sweeps() {
+    return this.config.sweptCollisions;
+  }
+
+  // Determines if this bullet is kept in fixed point, as its game's settings say
+  public boolean fixedPoint() {
+    return this.config.fixedPoint;
+  }
+
+  // Determines if this bullet is off the screen, on integers in fixed point
+  public boolean isOffScreen() {
+    if (this.config.fixedPoint) {
+      return FixedPoint.isOffScreen(this.x, this.y);
+    }
+    return super.isOffScreen();
+  }
+
+  // Records in the given HitSet whether this bullet, at the given index in its list, hit
+  // a ship in the given grid. A bullet that sweeps only records its contacts along the
+  // step, which the HitSet sorts out once every bullet's contacts are in.
+  public void markHits(SpatialGrid shipGrid, HitSet hits, int index) {
+    if (this.sweeps()) {
+      shipGrid.addContacts(this.x, this.y, this.dx, this.dy, this.size, index,
+          this.colSoFar + 1, hits);
+    }
+    else if (this.markCollisions(shipGrid, hits)) {
+      hits.markBullet(index, this.colSoFar + 1);
+    }
   }
 
   // Based on the number of collisions so far (represented by CurChain), creates a list of 
   // bullets with modified size and continues decreasing to zero
   public ILoBullet generateNewBullets(int curChain, int angleToAdd, ILoBullet restOfBullets) {
-    if (curChain == 0) {
-      return restOfBullets;
-    }
-    else {
-      Bullet newBullet = 
-          new Bullet(
-              this.x,
-              this.y,
-              (this.size < NBullets.MAX_BULLETSIZE) ? this.size + 2 : this.size,
-                  curChain * angleToAdd,
-                  this.colSoFar + 1,
-                  this.color);
-      return new ConsLoBullet(
-          newBullet, this.generateNewBullets(curChain - 1, angleToAdd, restOfBullets));
+    BulletListBuilder newBullets = new BulletListBuilder();
+    this.addNewBulletsTo(newBullets, curChain, angleToAdd);
+    return newBullets.build(restOfBullets);
+  }
+
+  // Adds the bullets generateNewBullets would create to the end of the given builder,
+  // from the one heading curChain * angleToAdd down to the one heading angleToAdd
+  void addNewBulletsTo(BulletListBuilder builder, int curChain, int angleToAdd) {
+    this.addNewBulletsTo(builder, curChain, angleToAdd, 0);
+  }
+
+  // Adds the bullets this one splits into when it hits a ship the given fraction of the
+  // way through its step to the end of the given builder, in the same order
+  void addNewBulletsTo(BulletListBuilder builder, int curChain, int angleToAdd,
+      double contact) {
+    this.addNewBulletsTo(builder, curChain, angleToAdd, contact, curChain);
+  }
+
+  // Adds only the first given number of the bullets this one splits into, as a
+  // ChainBudget allows, to the end of the given builder, the first of them carrying the
+  // weight of the rest
+  void addNewBulletsTo(BulletListBuilder builder, int curChain, int angleToAdd,
+      double contact, int children) {
+    for (int chain = curChain; chain > curChain - children; chain--) {
+      builder.add(this.chainBullet(chain, angleToAdd, contact,
+          this.config.splitSize(this.size, chain == curChain ? curChain - children + 1 : 1)));
     }
   }
+
+  // The bullet this one splits into that heads chain * angleToAdd degrees
+  Bullet chainBullet(int chain, int angleToAdd) {
+    return this.chainBullet(chain, angleToAdd, 0);
+  }
+
+  // The bullet this one splits into that heads chain * angleToAdd degrees when it hits
+  // a ship the given fraction of the way through its step: it starts where this bullet
+  // reached the ship, and moves for whatever is left of the step after the tick it
+  // spends splitting. In fixed point, it starts at the nearest fixed-point position.
+  Bullet chainBullet(int chain, int angleToAdd, double contact) {
+    return this.chainBullet(chain, angleToAdd, contact, this.config.grownSize(this.size));
+  }
+
+  // The bullet this one splits into as above, of the given size
+  Bullet chainBullet(int chain, int angleToAdd, double contact, int size) {
+    // the fan-out directions are whole degrees, so the velocity comes from the table
+    int direction = chain * angleToAdd;
+    double lead = this.config.splitLead(contact);
+    double dx = this.config.velocityX(direction);
+    double dy = this.config.velocityY(direction);
+    return new Bullet(
+        this.config.snap(this.x + contact * this.dx + lead * dx),
+        this.config.snap(this.y + contact * this.dy + lead * dy),
+        size,
+        direction,
+        this.colSoFar + 1,
+        this.color,
+        this.config,
+        dx,
+        dy);
+  }
   
+  // Writes this bullet to the given buffer in the layout WorldSnapshot reads
+  public void writeTo(ByteBuffer out) {
+    out.putDouble(this.x);
+    out.putDouble(this.y);
+    out.putDouble(this.direction);
+    out.putDouble(this.dx);
+    out.putDouble(this.dy);
+    out.putInt(this.size);
+    out.putInt(this.colSoFar);
+    out.putInt(this.color.getRGB());
+  }
+
   // Creates a new Bullet with updated x and y coordinates to move in specified direction
   public Bullet updateBullet() {
     return new Bullet(
-        this.x + (Math.cos(Math.toRadians(this.direction)) * NBullets.BULLETSPEED),
-        this.y + (Math.sin(Math.toRadians(this.direction)) * NBullets.BULLETSPEED),
+        this.x + this.dx,
+        this.y + this.dy,
         this.size,
         this.direction,
         this.colSoFar,
-        this.color);
+        this.color,
+        this.config,
+        this.dx,
+        this.dy);
   }
 }
 
@@ -97,14 +300,29 @@ class Ship extends AGamePiece {
 
   //Constructor
   Ship(double x, double y, int size, double direction, Color color) {
-    super(x, y, size, direction, color);
+    super(x, y, size, direction, color, NBullets.SHIPSPEED * Math.cos(direction), 0);
+  }
+
+  // Represents a ship whose per-tick movement is already known
+  Ship(double x, double y, int size, double direction, Color color, double dx) {
+    super(x, y, size, direction, color, dx, 0);
   }
 
   // Creates a new ship with updated x coordinate to move either left or right in the game
   public Ship updateShip() {
     return new Ship(
-        this.x + NBullets.SHIPSPEED * Math.cos(this.direction),
-        this.y, this.size, this.direction, this.color);
+        this.x + this.dx,
+        this.y, this.size, this.direction, this.color, this.dx);
+  }
+
+  // Writes this ship to the given buffer in the layout WorldSnapshot reads
+  public void writeTo(ByteBuffer out) {
+    out.putDouble(this.x);
+    out.putDouble(this.y);
+    out.putDouble(this.direction);
+    out.putDouble(this.dx);
+    out.putInt(this.size);
+    out.putInt(this.color.getRGB());
   }
 
   // Determines if this ship collided with any of the bullets in the activebullets
@@ -0,0 +1,93 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+// Represents a Random whose internal state can be read and restored, so a game's
+// random stream can be saved in a snapshot and carried on exactly. It uses the same
+// generator as java.util.Random, so a GameRandom and a Random made from the same seed
+// give the same numbers.
+class GameRandom extends Random {
+  private static final long serialVersionUID = 1L;
+
+  static final long MULTIPLIER = 0x5DEECE66DL;
+  static final long ADDEND = 0xBL;
+  static final long MASK = (1L << 48) - 1;
+
+  // set by setSeed, which Random's constructor calls before this class's fields
+  // would be initialized, so it must not have an initializer
+  long state;
+
+  // Constructor
+  GameRandom(long seed) {
+    super(seed);
+  }
+
+  // Represents a GameRandom with an arbitrary seed
+  GameRandom() {
+    this(new Random().nextLong());
+  }
+
+  // starts the stream over from the given seed, as java.util.Random does
+  public synchronized void setSeed(long seed) {
+    this.state = (seed ^ MULTIPLIER) & MASK;
+    super.setSeed(seed);
+  }
+
+  // the next random bits, generated the same way as java.util.Random
+  protected int next(int bits) {
+    this.state = (this.state * MULTIPLIER + ADDEND) & MASK;
+    return (int) (this.state >>> (48 - bits));
+  }
+
+  // the internal state, to be saved and later given to restoreState
+  long saveState() {
+    return this.state;
+  }
+
+  // carries on the stream from a state returned by saveState
+  void restoreState(long state) {
+    this.state = state & MASK;
+  }
+
+  // a seed that starts a stream where this one is now, so a GameRandom made from it
+  // carries on exactly as this one does from here: setSeed only scrambles the seed's
+  // low 48 bits, and scrambling them again undoes it
+  long seed() {
+    return this.state ^ MULTIPLIER;
+  }
+
+  // a GameRandom that carries on this stream from here, apart from this one
+  GameRandom copy() {
+    GameRandom copy = new GameRandom(0);
+    copy.restoreState(this.state);
+    return copy;
+  }
+
+  // a Random that carries on the given one's stream from here, apart from it: a
+  // GameRandom is copied from its state, and any other Random, which hides its state,
+  // by writing it out and reading it back, since a Random is Serializable
+  static Random copyOf(Random random) {
+    if (random instanceof GameRandom) {
+      return ((GameRandom) random).copy();
+    }
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(random);
+      out.close();
+      ObjectInputStream in = new ObjectInputStream(
+          new ByteArrayInputStream(bytes.toByteArray()));
+      return (Random) in.readObject();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    catch (ClassNotFoundException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,256 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+// Records everything needed to replay a game exactly: the seed, the settings and
+// every key press with the tick it arrived on, in a compact append-only binary log.
+// Key presses are encoded into an in-memory buffer on the game thread; full buffers
+// are handed to a background thread that writes them out, so the game never waits
+// on the disk.
+//
+// A recorded game draws its random numbers from a GameRandom, and the seed in the log is
+// taken from it, so the replay can't start from a different stream than the game did.
+// Setting the nbullets.record system property to a path records the first NBullets game
+// started in the JVM there, such as one launched by testBigBang or a main, and the log
+// is finished when the game ends or the JVM exits; GameReplayer's main replays it.
+//
+// The log starts with a header:
+//   int MAGIC, short VERSION, byte storage (0 = cons lists, 1 = BulletStore, 2 = vectors),
+//   long seed, int startingBullets, double shipSpawnRate, int bulletSpeed,
+//   int maxBulletSize, int stepMultiplier, byte flags (GameConfig.flags),
+//   double shipSpawnChance
+// followed by records, each a varint count of ticks since the previous record and a
+// type byte. A KEY record then has a varint length and that many UTF-8 bytes of the
+// key; the END record marks the tick the recording stopped on. Version 1 logs, from
+// before steps could cover several ticks, have no stepMultiplier or flags and replay
+// with one tick per step, collisions tested where the pieces are, and no fixed point;
+// logs before version 3 have no shipSpawnChance and replay with the default chance.
+class GameRecorder {
+
+  static final String PROPERTY = "nbullets.record";
+  static final int MAGIC = 0x4E42524C; // "NBRL"
+  static final short VERSION = 3;
+  static final byte STORAGE_LISTS = 0;
+  static final byte STORAGE_STORE = 1;
+  static final byte STORAGE_VECTOR = 2;
+  static final byte KEY = 1;
+  static final byte END = 2;
+  static final int BUFFER_SIZE = 64 * 1024;
+
+  FileChannel channel;
+  // the buffer key presses are being encoded into
+  ByteBuffer current = ByteBuffer.allocate(BUFFER_SIZE);
+  // full buffers waiting to be written, and written buffers ready to reuse
+  ConcurrentLinkedQueue<ByteBuffer> pending = new ConcurrentLinkedQueue<ByteBuffer>();
+  ConcurrentLinkedQueue<ByteBuffer> spare = new ConcurrentLinkedQueue<ByteBuffer>();
+  Thread writer;
+  volatile boolean closing;
+  volatile IOException failure;
+  // the tick of the last record
+  long lastTick;
+  // the furthest tick the game has reached, where the log ends if the JVM exits first
+  volatile long reachedTick;
+  boolean closed;
+
+  // the recorder started for the nbullets.record system property, if there is one
+  static GameRecorder configured;
+
+  // the storage byte for the way the given game keeps its pieces
+  static byte storageOf(Simulation sim) {
+    if (sim.activeBullets instanceof BulletStore) {
+      return STORAGE_STORE;
+    }
+    if (sim.activeBullets instanceof BulletVector) {
+      return STORAGE_VECTOR;
+    }
+    return STORAGE_LISTS;
+  }
+
+  // a new game with the given settings and random numbers that keeps its pieces the
+  // way the given storage byte says
+  static Simulation newGame(byte storage, GameConfig config, Random randGen) {
+    if (storage == STORAGE_STORE) {
+      return new Simulation(config, randGen, new BulletStore(config));
+    }
+    if (storage == STORAGE_VECTOR) {
+      return new Simulation(config, randGen, new BulletVector(), new ShipVector());
+    }
+    return new Simulation(config, randGen, new MtLoBullet());
+  }
+
+  // a recorder of the given game into the log the nbullets.record system property
+  // names, finished when the JVM exits if the game hasn't ended by then, or null if the
+  // property isn't set, a game has already been recorded, or the given one has started
+  static synchronized GameRecorder fromSystemProperties(Simulation sim) {
+    String path = System.getProperty(PROPERTY);
+    if (path == null || path.isEmpty() || configured != null || sim.tick != 0) {
+      return null;
+    }
+    try {
+      final GameRecorder recorder = new GameRecorder(Paths.get(path), sim);
+      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        public void run() {
+          try {
+            recorder.close(recorder.reachedTick);
+          }
+          catch (IOException e) {
+            System.err.println("could not finish " + PROPERTY + ": " + e.getMessage());
+          }
+        }
+      }, "game-recorder-close"));
+      configured = recorder;
+      return recorder;
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Represents a recording of the given game, which must not have started yet, into a
+  // new log at the given path, starting from the seed of its GameRandom
+  GameRecorder(Path path, Simulation sim) throws IOException {
+    if (!(sim.randGen instanceof GameRandom)) {
+      throw new IllegalArgumentException("a recorded game needs a GameRandom");
+    }
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    this.current.putInt(MAGIC);
+    this.current.putShort(VERSION);
+    this.current.put(storageOf(sim));
+    this.current.putLong(((GameRandom) sim.randGen).seed());
+    this.current.putInt(sim.config.startingBullets);
+    this.current.putDouble(sim.config.shipSpawnRate);
+    this.current.putInt(sim.config.bulletSpeed);
+    this.current.putInt(sim.config.maxBulletSize);
+    this.current.putInt(sim.config.stepMultiplier);
+    this.current.put(sim.config.flags());
+    this.current.putDouble(sim.config.shipSpawnChance);
+    this.lastTick = sim.tick;
+    this.reachedTick = sim.tick;
+    this.writer = new Thread(new Runnable() {
+      public void run() {
+        GameRecorder.this.writeLoop();
+      }
+    }, "game-recorder");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  // records that the given key was pressed before the given tick was stepped
+  synchronized void recordKey(long tick, String key) {
+    if (this.closed) {
+      return;
+    }
+    byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+    this.ensureRoom(2 * 10 + 1 + bytes.length);
+    putVarint(this.current, tick - this.lastTick);
+    this.current.put(KEY);
+    putVarint(this.current, bytes.length);
+    this.current.put(bytes);
+    this.lastTick = tick;
+  }
+
+  // notes that the game has reached the given tick
+  void reached(long tick) {
+    this.reachedTick = tick;
+  }
+
+  // records the tick the game stopped on, writes out everything recorded, and closes
+  // the log, waiting for the background writer to finish
+  synchronized void close(long tick) throws IOException {
+    if (this.closed) {
+      return;
+    }
+    this.ensureRoom(10 + 1);
+    putVarint(this.current, tick - this.lastTick);
+    this.current.put(END);
+    this.lastTick = tick;
+    this.handOff();
+    this.closed = true;
+    this.closing = true;
+    LockSupport.unpark(this.writer);
+    try {
+      this.writer.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    this.channel.close();
+    if (this.failure != null) {
+      throw this.failure;
+    }
+  }
+
+  // hands the current buffer to the writer if it can't fit the given number of bytes
+  void ensureRoom(int bytes) {
+    if (this.current.remaining() < bytes) {
+      this.handOff();
+      if (this.current.remaining() < bytes) {
+        this.current = ByteBuffer.allocate(Math.max(BUFFER_SIZE, bytes));
+      }
+    }
+  }
+
+  // hands the current buffer to the writer and starts encoding into a spare one
+  void handOff() {
+    this.current.flip();
+    this.pending.add(this.current);
+    LockSupport.unpark(this.writer);
+    ByteBuffer next = this.spare.poll();
+    this.current = next != null ? next : ByteBuffer.allocate(BUFFER_SIZE);
+  }
+
+  // writes out buffers as they are handed off until the recorder is closed
+  void writeLoop() {
+    while (true) {
+      ByteBuffer buffer = this.pending.poll();
+      if (buffer == null) {
+        if (this.closing) {
+          return;
+        }
+        LockSupport.parkNanos(this, 10_000_000L);
+        continue;
+      }
+      try {
+        while (buffer.hasRemaining()) {
+          this.channel.write(buffer);
+        }
+      }
+      catch (IOException e) {
+        this.failure = e;
+      }
+      buffer.clear();
+      this.spare.add(buffer);
+    }
+  }
+
+  // writes the given non-negative number in 7-bit groups, low group first
+  static void putVarint(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  // reads a number written by putVarint
+  static long getVarint(ByteBuffer buffer) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+}
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Replays a log written by GameRecorder on a headless Simulation as fast as the CPU
+// allows. The log is memory-mapped and read in place. A replay can be stopped at any
+// tick to look at or dump the game, and then carried on.
+class GameReplayer {
+
+  MappedByteBuffer log;
+  Simulation sim;
+  long seed;
+  // the tick the next record applies to, and whether that record is the end
+  long nextRecordTick;
+  byte nextRecordType;
+
+  // Represents a replay of the log at the given path, ready to start at tick 0
+  GameReplayer(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      this.log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    finally {
+      channel.close();
+    }
+    if (this.log.getInt() != GameRecorder.MAGIC) {
+      throw new IOException(path + " is not a game recording");
+    }
+    short version = this.log.getShort();
+    if (version < 1 || version > GameRecorder.VERSION) {
+      throw new IOException(path + " has unsupported recording version " + version);
+    }
+    byte storage = this.log.get();
+    this.seed = this.log.getLong();
+    int startingBullets = this.log.getInt();
+    double shipSpawnRate = this.log.getDouble();
+    int bulletSpeed = this.log.getInt();
+    int maxBulletSize = this.log.getInt();
+    int stepMultiplier = version == 1 ? 1 : this.log.getInt();
+    byte flags = version == 1 ? 0 : this.log.get();
+    double shipSpawnChance = version < 3 ? Simulation.SHIP_SPAWN_CHANCE : this.log.getDouble();
+    GameConfig config = GameConfig.of(startingBullets, shipSpawnRate, bulletSpeed,
+        maxBulletSize, stepMultiplier, flags, shipSpawnChance);
+    this.sim = GameRecorder.newGame(storage, config, new GameRandom(this.seed));
+    this.readRecordHeader();
+  }
+
+  // reads the tick and type of the next record
+  void readRecordHeader() {
+    this.nextRecordTick += GameRecorder.getVarint(this.log);
+    this.nextRecordType = this.log.get();
+  }
+
+  // determines if the replay has reached the tick the recording stopped on
+  boolean isFinished() {
+    return this.nextRecordType == GameRecorder.END && this.sim.tick >= this.nextRecordTick;
+  }
+
+  // replays the game up to the given tick, or to the end of the recording if that
+  // comes first, and returns the game as it stands
+  Simulation replayUntil(long tick) {
+    while (this.sim.tick < tick && !this.isFinished()) {
+      while (this.nextRecordType == GameRecorder.KEY && this.nextRecordTick == this.sim.tick) {
+        int length = (int) GameRecorder.getVarint(this.log);
+        byte[] key = new byte[length];
+        this.log.get(key);
+        this.sim.handleKey(new String(key, StandardCharsets.UTF_8));
+        this.readRecordHeader();
+      }
+      this.sim.step();
+    }
+    return this.sim;
+  }
+
+  // replays the whole recording and returns the game as it ended
+  Simulation replay() {
+    return this.replayUntil(Long.MAX_VALUE);
+  }
+
+  // prints a summary of the game as it stands
+  void dump(PrintStream out) {
+    SimulationSnapshot snapshot = this.sim.snapshot();
+    out.println("tick=" + snapshot.tick
+        + " bulletsLeft=" + snapshot.bulletsLeft
+        + " shipsDestroyed=" + snapshot.shipsDestroyed
+        + " liveBullets=" + snapshot.liveBullets
+        + " liveShips=" + snapshot.liveShips
+        + " over=" + snapshot.over);
+  }
+
+  // replays a recording given as: log [tick...], printing the game at each given
+  // tick and at the end, and how long the replay took
+  public static void main(String[] args) throws IOException {
+    GameReplayer replayer = new GameReplayer(Paths.get(args[0]));
+    long start = System.nanoTime();
+    for (int i = 1; i < args.length; i++) {
+      replayer.replayUntil(Long.parseLong(args[i]));
+      replayer.dump(System.out);
+    }
+    replayer.replay();
+    long elapsed = System.nanoTime() - start;
+    replayer.dump(System.out);
+    System.out.printf("replayed %d ticks in %.3f s%n", replayer.sim.tick, elapsed / 1e9);
+  }
+}
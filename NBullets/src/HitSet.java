@@ -0,0 +1,287 @@
+import java.util.Arrays;
+
+// Represents the result of testing every bullet against every ship once: which
+// bullets hit a ship and which ships were hit, by their position in their list.
+// The score, the bullet update and the ship update all read from the same HitSet
+// instead of each repeating the collision tests.
+//
+// Bullets that sweep record every ship they touch along the step as a contact, and
+// finishContacts plays the contacts out in time order: a bullet splits at the first
+// ship it reaches and a ship is gone once it is hit, so neither takes part in a later
+// contact, while contacts at the same moment all happen, as they do when collisions
+// are only tested where the pieces are.
+class HitSet {
+
+  // one bit per bullet and per ship, set if it was part of a collision
+  long[] bulletBits = new long[4];
+  long[] shipBits = new long[4];
+  // the number of bullets that hit at least one ship
+  int bulletHits;
+  // the number of ships that were hit by at least one bullet
+  int shipHits;
+  // the number of bullet-ship pairs close enough to be tested for a collision
+  int collisionTests;
+  // the number of bullets the hit bullets will split into
+  int chainBullets;
+  // how far through the step each hit bullet reached its ship, or null until a bullet
+  // first hits a ship after the start of a step; only read for bullets that hit
+  double[] contacts;
+
+  // how the hit bullets split when a ChainBudget holds the step to its deadline: into
+  // at most splitLimit bullets each, and into no more than bulletRoom more bullets than
+  // hit in all; set by ChainBudget.applyTo and kept from step to step
+  boolean budgeted;
+  int splitLimit = Integer.MAX_VALUE;
+  long bulletRoom = Integer.MAX_VALUE;
+  // where the hits, splits and culls of the step are emitted, or null if the game's
+  // events aren't being recorded; set by the game each step
+  EventStream events;
+
+  // the contacts recorded by sweeping bullets since the last clear: which bullet
+  // touched which ship, how far through the step, and how many bullets it splits into
+  int contactCount;
+  int[] contactBullets = new int[16];
+  int[] contactShips = new int[16];
+  double[] contactTimes = new double[16];
+  int[] contactChildren = new int[16];
+  // how far through the step each hit ship was hit, for the ships hit by contacts
+  double[] shipContacts = new double[16];
+
+  // reused to index the ships the bullets are tested against
+  SpatialGrid shipGrid = new SpatialGrid();
+
+  // tests every bullet in the given list against every ship in the given list,
+  // forgetting any earlier result, and returns this HitSet
+  HitSet resolve(ILoBullet activeBullets, ILoShip activeShips) {
+    this.clear();
+    activeShips.addShipsTo(this.shipGrid);
+    activeBullets.markHits(this.shipGrid, this, 0);
+    this.finishContacts();
+    return this;
+  }
+
+  // forgets every recorded hit
+  void clear() {
+    Arrays.fill(this.bulletBits, 0);
+    Arrays.fill(this.shipBits, 0);
+    this.bulletHits = 0;
+    this.shipHits = 0;
+    this.collisionTests = 0;
+    this.chainBullets = 0;
+    this.contactCount = 0;
+    this.shipGrid.clear();
+  }
+
+  // records that the bullet at the given index hit a ship
+  void markBullet(int index) {
+    this.bulletBits = this.ensureRoom(this.bulletBits, index);
+    long bit = 1L << index;
+    if ((this.bulletBits[index >>> 6] & bit) == 0) {
+      this.bulletBits[index >>> 6] |= bit;
+      this.bulletHits++;
+    }
+  }
+
+  // records that the bullet at the given index hit a ship and will split into
+  // the given number of bullets
+  void markBullet(int index, int children) {
+    this.markBullet(index);
+    this.chainBullets += children;
+  }
+
+  // records that the bullet at the given index hit a ship the given fraction of the
+  // way through the step, and will split into the given number of bullets
+  void markBullet(int index, int children, double contact) {
+    this.markBullet(index, children);
+    if (contact > 0 || this.contacts != null) {
+      if (this.contacts == null || index >= this.contacts.length) {
+        this.contacts = Arrays.copyOf(this.contacts == null ? new double[0] : this.contacts,
+            Math.max(index + 1, this.bulletBits.length * 64));
+      }
+      this.contacts[index] = contact;
+    }
+  }
+
+  // the number of bullets a hit bullet that splits into the given number by the rules
+  // splits into within the budget, which may be none, taking them out of the budget's
+  // room; the bullets it doesn't split into no longer count as chain bullets
+  int splitInto(int children) {
+    if (!this.budgeted) {
+      return children;
+    }
+    int allowed = (int) Math.max(0,
+        Math.min(Math.min(children, this.splitLimit), this.bulletRoom + 1));
+    this.bulletRoom -= allowed - 1;
+    this.chainBullets -= children - allowed;
+    return allowed;
+  }
+
+  // the number of bullets a hit bullet that reached its ship at the given position,
+  // which splits into the given number by the rules, splits into within the budget,
+  // emitting the split
+  int split(double x, double y, int children) {
+    int allowed = this.splitInto(children);
+    if (this.events != null) {
+      this.events.emit(EventStream.CHAIN, x, y, allowed, children);
+    }
+    return allowed;
+  }
+
+  // emits that a bullet of the given size with the given collisions so far left the
+  // screen at the given position
+  void cull(double x, double y, int colSoFar, int size) {
+    if (this.events != null) {
+      this.events.emit(EventStream.CULL, x, y, colSoFar, size);
+    }
+  }
+
+  // emits every ship that was hit, where it was in the grid the bullets were tested
+  // against
+  void emitShipHits() {
+    for (int w = 0; w < this.shipBits.length; w++) {
+      for (long bits = this.shipBits[w]; bits != 0; bits &= bits - 1) {
+        int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+        this.events.emit(EventStream.HIT, this.shipGrid.xs[i], this.shipGrid.ys[i],
+            this.shipGrid.sizes[i], 0);
+      }
+    }
+  }
+
+  // the hit bits of the 64 bullets from the given index on, lowest bit first
+  long bulletBitsAt(int from) {
+    int word = from >>> 6;
+    int shift = from & 63;
+    long low = word < this.bulletBits.length ? this.bulletBits[word] >>> shift : 0;
+    if (shift == 0 || word + 1 >= this.bulletBits.length) {
+      return low;
+    }
+    return low | this.bulletBits[word + 1] << (64 - shift);
+  }
+
+  // records that the ship at the given index was hit by a bullet
+  void markShip(int index) {
+    this.shipBits = this.ensureRoom(this.shipBits, index);
+    long bit = 1L << index;
+    if ((this.shipBits[index >>> 6] & bit) == 0) {
+      this.shipBits[index >>> 6] |= bit;
+      this.shipHits++;
+    }
+  }
+
+  // records every ship recorded as hit in the given HitSet as hit in this one,
+  // along with the collision tests it made
+  void addShipsFrom(HitSet other) {
+    this.collisionTests += other.collisionTests;
+    int words = other.shipBits.length;
+    while (words > 0 && other.shipBits[words - 1] == 0) {
+      words--;
+    }
+    if (words == 0) {
+      return;
+    }
+    this.shipBits = this.ensureRoom(this.shipBits, words * 64 - 1);
+    int shipHits = 0;
+    for (int w = 0; w < this.shipBits.length; w++) {
+      if (w < words) {
+        this.shipBits[w] |= other.shipBits[w];
+      }
+      shipHits += Long.bitCount(this.shipBits[w]);
+    }
+    this.shipHits = shipHits;
+  }
+
+  // records that the bullet at the given index, which splits into the given number of
+  // bullets, touches the ship at the given index the given fraction of the way through
+  // the step
+  void addContact(int bullet, int ship, double contact, int children) {
+    if (this.contactCount == this.contactBullets.length) {
+      int capacity = this.contactCount * 2;
+      this.contactBullets = Arrays.copyOf(this.contactBullets, capacity);
+      this.contactShips = Arrays.copyOf(this.contactShips, capacity);
+      this.contactTimes = Arrays.copyOf(this.contactTimes, capacity);
+      this.contactChildren = Arrays.copyOf(this.contactChildren, capacity);
+    }
+    int i = this.contactCount++;
+    this.contactBullets[i] = bullet;
+    this.contactShips[i] = ship;
+    this.contactTimes[i] = contact;
+    this.contactChildren[i] = children;
+  }
+
+  // marks the bullets and ships of the recorded contacts that happen, taking them from
+  // the earliest: a contact happens unless its bullet already split, or its ship was
+  // already hit, earlier in the step
+  void finishContacts() {
+    // contacts are few, since they only come from pieces that are about to touch, so
+    // an insertion sort by time is enough
+    for (int i = 1; i < this.contactCount; i++) {
+      int bullet = this.contactBullets[i];
+      int ship = this.contactShips[i];
+      double contact = this.contactTimes[i];
+      int children = this.contactChildren[i];
+      int j = i - 1;
+      while (j >= 0 && this.contactTimes[j] > contact) {
+        this.contactBullets[j + 1] = this.contactBullets[j];
+        this.contactShips[j + 1] = this.contactShips[j];
+        this.contactTimes[j + 1] = this.contactTimes[j];
+        this.contactChildren[j + 1] = this.contactChildren[j];
+        j--;
+      }
+      this.contactBullets[j + 1] = bullet;
+      this.contactShips[j + 1] = ship;
+      this.contactTimes[j + 1] = contact;
+      this.contactChildren[j + 1] = children;
+    }
+    for (int i = 0; i < this.contactCount; i++) {
+      int bullet = this.contactBullets[i];
+      int ship = this.contactShips[i];
+      double contact = this.contactTimes[i];
+      boolean bulletFree = !this.bulletHit(bullet) || this.contactTime(bullet) == contact;
+      boolean shipFree = !this.shipHit(ship) || this.shipContacts[ship] == contact;
+      if (bulletFree && shipFree) {
+        if (!this.bulletHit(bullet)) {
+          this.markBullet(bullet, this.contactChildren[i], contact);
+        }
+        if (ship >= this.shipContacts.length) {
+          this.shipContacts = Arrays.copyOf(this.shipContacts,
+              Math.max(ship + 1, this.shipContacts.length * 2));
+        }
+        this.shipContacts[ship] = contact;
+        this.markShip(ship);
+      }
+    }
+  }
+
+  // determines if the bullet at the given index hit a ship
+  boolean bulletHit(int index) {
+    return isSet(this.bulletBits, index);
+  }
+
+  // how far through the step the bullet at the given index, which hit a ship, reached it
+  double contactTime(int index) {
+    if (this.contacts == null || index >= this.contacts.length) {
+      return 0;
+    }
+    return this.contacts[index];
+  }
+
+  // determines if the ship at the given index was hit by a bullet
+  boolean shipHit(int index) {
+    return isSet(this.shipBits, index);
+  }
+
+  // determines if the given bit is set
+  static boolean isSet(long[] bits, int index) {
+    int word = index >>> 6;
+    return word < bits.length && (bits[word] & (1L << index)) != 0;
+  }
+
+  // the given bits, grown if needed to hold the given index
+  long[] ensureRoom(long[] bits, int index) {
+    int word = index >>> 6;
+    if (word < bits.length) {
+      return bits;
+    }
+    return Arrays.copyOf(bits, Math.max(bits.length * 2, word + 1));
+  }
+}
@@ -0,0 +1,36 @@
+import java.awt.Color;
+import java.util.concurrent.ConcurrentHashMap;
+import javalib.worldimages.*;
+
+// Hands out one shared CircleImage for each size, color and outline mode, so drawing
+// a frame reuses the handful of distinct images instead of building one per piece
+class ImageCache {
+
+  // circles larger than this are rare enough to build each time instead of caching
+  static final int MAX_CACHED_SIZE = 255;
+
+  // for each color, the cached circles indexed by outline mode and then size
+  static final ConcurrentHashMap<Color, WorldImage[][]> CIRCLES =
+      new ConcurrentHashMap<Color, WorldImage[][]>();
+
+  // a circle image with the given radius, outline mode and color
+  static WorldImage circle(int size, OutlineMode mode, Color color) {
+    if (size < 0 || size > MAX_CACHED_SIZE) {
+      return new CircleImage(size, mode, color);
+    }
+    WorldImage[][] byMode = CIRCLES.get(color);
+    if (byMode == null) {
+      byMode = new WorldImage[OutlineMode.values().length][MAX_CACHED_SIZE + 1];
+      WorldImage[][] existing = CIRCLES.putIfAbsent(color, byMode);
+      if (existing != null) {
+        byMode = existing;
+      }
+    }
+    WorldImage image = byMode[mode.ordinal()][size];
+    if (image == null) {
+      image = new CircleImage(size, mode, color);
+      byMode[mode.ordinal()][size] = image;
+    }
+    return image;
+  }
+}
@@ -1,3 +1,4 @@
+import java.nio.ByteBuffer;
 import javalib.funworld.*;
 
 // Represents a list of ships
@@ -12,6 +13,29 @@ interface ILoShip {
   // determine if any ship in list collided with given bullet
   boolean listCollidedWithBullet(Bullet first);
 
+  // update the state of every ship given a grid of the active bullets
+  ILoShip updateShipsWith(SpatialGrid bulletGrid);
+
+  // adds every ship in this list to the given grid
+  void addShipsTo(SpatialGrid grid);
+
+  // update the state of every ship given which ships were hit, where the first
+  // ship in this list is at the given index
+  ILoShip updateShipsFrom(HitSet hits, int index);
+
+  // counts the ships in this list
+  int countShips();
+
+  // draws ships into the frame of the given renderer
+  void drawShipsOn(RasterRenderer renderer);
+
+  // writes every ship in this list, in order, to the given buffer
+  void writeShips(ByteBuffer out);
+
+  // adds the ships collected in the given builder to this list: a cons list puts them
+  // in front of its ships, in the order they were added
+  ILoShip addShips(ShipListBuilder newShips);
+
 }
 
 // Represents an empty list of ships
@@ -33,6 +57,43 @@ class MtLoShip implements ILoShip {
   public boolean listCollidedWithBullet(Bullet first) {
     return false;
   }
+
+  // update the state of all the ships in an empty list of ships
+  // given a grid of bullets
+  public ILoShip updateShipsWith(SpatialGrid bulletGrid) {
+    return this;
+  }
+
+  // adds every ship in an empty list of ships to the given grid
+  public void addShipsTo(SpatialGrid grid) {
+    // there are no ships to add
+  }
+
+  // update the state of all the ships in an empty list of ships
+  // given which ships were hit
+  public ILoShip updateShipsFrom(HitSet hits, int index) {
+    return this;
+  }
+
+  // counts the ships in an empty list of ships
+  public int countShips() {
+    return 0;
+  }
+
+  // draws an empty list of ships into the frame of the given renderer
+  public void drawShipsOn(RasterRenderer renderer) {
+    // there are no ships to draw
+  }
+
+  // writes an empty list of ships to the given buffer
+  public void writeShips(ByteBuffer out) {
+    // there are no ships to write
+  }
+
+  // the ships collected in the given builder, in front of this empty list of ships
+  public ILoShip addShips(ShipListBuilder newShips) {
+    return newShips.build(this);
+  }
 }
 
 // Represents a list of ships with elements within it
@@ -48,33 +109,113 @@ class ConsLoShip implements ILoShip {
 
   // draws every ship from a list of ships onto a given WorldScene
   public WorldScene drawShips(WorldScene prevScene) {
-    return this.rest.drawShips(
-        prevScene.placeImageXY(
-            this.first.drawPiece(),
-            (int) this.first.x,
-            (int) this.first.y));
+    ILoShip ships = this;
+    while (ships instanceof ConsLoShip) {
+      Ship ship = ((ConsLoShip) ships).first;
+      prevScene = prevScene.placeImageXY(ship.drawPiece(), (int) ship.x, (int) ship.y);
+      ships = ((ConsLoShip) ships).rest;
+    }
+    return ships.drawShips(prevScene);
   }
 
   // updates the state of all the ships in a list of ships
   // given a list of bullets if they haven't collided with
   // the bullets or left the screen
   public ILoShip updateShips(ILoBullet activeBullets) {
-    if (this.first.collidedWithBullets(activeBullets)
-        || this.first.isOffScreen()) {
-      return this.rest.updateShips(activeBullets);
-    }
-    else {
-      return new ConsLoShip(
-          this.first.updateShip(),
-          this.rest.updateShips(activeBullets));
+    SpatialGrid bulletGrid = new SpatialGrid();
+    activeBullets.addBulletsTo(bulletGrid);
+    return this.updateShipsWith(bulletGrid);
+  }
+
+  // updates the state of all the ships in a list of ships
+  // given a grid of bullets if they haven't collided with
+  // the bullets or left the screen
+  public ILoShip updateShipsWith(SpatialGrid bulletGrid) {
+    ShipListBuilder updated = new ShipListBuilder();
+    ILoShip ships = this;
+    while (ships instanceof ConsLoShip) {
+      Ship ship = ((ConsLoShip) ships).first;
+      if (!ship.collidedWithAny(bulletGrid) && !ship.isOffScreen()) {
+        updated.add(ship.updateShip());
+      }
+      ships = ((ConsLoShip) ships).rest;
     }
+    return updated.build(ships.updateShipsWith(bulletGrid));
   }
 
   // determine if any ship in a list of ships
   // collided with a given bullet
   public boolean listCollidedWithBullet(Bullet first) {
-    return this.first.collidedWith(first)
-        || this.rest.listCollidedWithBullet(first);
+    ILoShip ships = this;
+    while (ships instanceof ConsLoShip) {
+      if (((ConsLoShip) ships).first.collidedWith(first)) {
+        return true;
+      }
+      ships = ((ConsLoShip) ships).rest;
+    }
+    return ships.listCollidedWithBullet(first);
+  }
+
+  // adds every ship in a list of ships to the given grid
+  public void addShipsTo(SpatialGrid grid) {
+    ILoShip ships = this;
+    while (ships instanceof ConsLoShip) {
+      ((ConsLoShip) ships).first.addTo(grid);
+      ships = ((ConsLoShip) ships).rest;
+    }
+    ships.addShipsTo(grid);
+  }
+
+  // updates the state of all the ships in a list of ships given which ships
+  // were hit, keeping those that weren't hit and haven't left the screen
+  public ILoShip updateShipsFrom(HitSet hits, int index) {
+    ShipListBuilder updated = new ShipListBuilder();
+    ILoShip ships = this;
+    while (ships instanceof ConsLoShip) {
+      Ship ship = ((ConsLoShip) ships).first;
+      if (!hits.shipHit(index) && !ship.isOffScreen()) {
+        updated.add(ship.updateShip());
+      }
+      ships = ((ConsLoShip) ships).rest;
+      index++;
+    }
+    return updated.build(ships.updateShipsFrom(hits, index));
+  }
+
+  // counts the ships in a list of ships
+  public int countShips() {
+    int count = 0;
+    ILoShip ships = this;
+    while (ships instanceof ConsLoShip) {
+      count++;
+      ships = ((ConsLoShip) ships).rest;
+    }
+    return count + ships.countShips();
+  }
+
+  // draws every ship from a list of ships into the frame of the given renderer
+  public void drawShipsOn(RasterRenderer renderer) {
+    ILoShip ships = this;
+    while (ships instanceof ConsLoShip) {
+      ((ConsLoShip) ships).first.drawOn(renderer);
+      ships = ((ConsLoShip) ships).rest;
+    }
+    ships.drawShipsOn(renderer);
+  }
+
+  // writes every ship from a list of ships, in order, to the given buffer
+  public void writeShips(ByteBuffer out) {
+    ILoShip ships = this;
+    while (ships instanceof ConsLoShip) {
+      ((ConsLoShip) ships).first.writeTo(out);
+      ships = ((ConsLoShip) ships).rest;
+    }
+    ships.writeShips(out);
+  }
+
+  // the ships collected in the given builder, in front of this list of ships
+  public ILoShip addShips(ShipListBuilder newShips) {
+    return newShips.build(this);
   }
 
 }
@@ -99,6 +240,36 @@ interface ILoBullet {
   // determines if this list of bullets is empty
   boolean isEmpty();
 
+  // updates all bullets in this list of bullets given a grid of the active ships
+  ILoBullet updateBulletsWith(SpatialGrid shipGrid);
+
+  // counts the number of bullets in this list of bullets that hit
+  // a ship in the given grid
+  int countHitShipsWith(SpatialGrid shipGrid);
+
+  // adds every bullet in this list to the given grid
+  void addBulletsTo(SpatialGrid grid);
+
+  // adds the given bullet to the front of this list of bullets
+  ILoBullet addBullet(Bullet bullet);
+
+  // records in the given HitSet which bullets in this list hit a ship in the
+  // given grid, where the first bullet in this list is at the given index
+  void markHits(SpatialGrid shipGrid, HitSet hits, int index);
+
+  // updates all bullets in this list of bullets given which bullets hit a ship,
+  // where the first bullet in this list is at the given index
+  ILoBullet updateBulletsFrom(HitSet hits, int index);
+
+  // counts the bullets in this list
+  int countBullets();
+
+  // draws this list of bullets into the frame of the given renderer
+  void drawBulletsOn(RasterRenderer renderer);
+
+  // writes every bullet in this list, in order, to the given buffer
+  void writeBullets(ByteBuffer out);
+
 }
 
 //Represents an empty list of bullets
@@ -131,6 +302,52 @@ class MtLoBullet implements ILoBullet {
   public boolean isEmpty() {
     return true;
   }
+
+  // updates all the bullets in this empty list of bullets given a grid of ships
+  public ILoBullet updateBulletsWith(SpatialGrid shipGrid) {
+    return this;
+  }
+
+  // counts the number of bullets in this empty list of bullets that hit
+  // a ship in the given grid
+  public int countHitShipsWith(SpatialGrid shipGrid) {
+    return 0;
+  }
+
+  // adds every bullet in this empty list of bullets to the given grid
+  public void addBulletsTo(SpatialGrid grid) {
+    // there are no bullets to add
+  }
+
+  // adds the given bullet to the front of this empty list of bullets
+  public ILoBullet addBullet(Bullet bullet) {
+    return new ConsLoBullet(bullet, this);
+  }
+
+  // records which bullets in this empty list of bullets hit a ship
+  public void markHits(SpatialGrid shipGrid, HitSet hits, int index) {
+    // there are no bullets to test
+  }
+
+  // updates all the bullets in this empty list of bullets given which bullets hit a ship
+  public ILoBullet updateBulletsFrom(HitSet hits, int index) {
+    return this;
+  }
+
+  // counts the bullets in this empty list of bullets
+  public int countBullets() {
+    return 0;
+  }
+
+  // draws this empty list of bullets into the frame of the given renderer
+  public void drawBulletsOn(RasterRenderer renderer) {
+    // there are no bullets to draw
+  }
+
+  // writes this empty list of bullets to the given buffer
+  public void writeBullets(ByteBuffer out) {
+    // there are no bullets to write
+  }
 }
 
 // Represents a list of bullets with elements within it
@@ -147,54 +364,76 @@ class ConsLoBullet implements ILoBullet {
 
   //draws all the bullets from this list of bullets onto a given WorldScene
   public WorldScene drawBullets(WorldScene prevScene) {
-    return this.rest.drawBullets(
-        prevScene.placeImageXY(
-            this.first.drawPiece(),
-            (int)this.first.x, 
-            (int)this.first.y));
+    ILoBullet bullets = this;
+    while (bullets instanceof ConsLoBullet) {
+      Bullet bullet = ((ConsLoBullet) bullets).first;
+      prevScene = prevScene.placeImageXY(bullet.drawPiece(), (int) bullet.x, (int) bullet.y);
+      bullets = ((ConsLoBullet) bullets).rest;
+    }
+    return bullets.drawBullets(prevScene);
   }
   
   // Determines if any bullets in this list of bullets 
   // collided with the given ship
   public boolean listCollidedWithShip(Ship ship) {
-    return this.first.collidedWith(ship)
-        || this.rest.listCollidedWithShip(ship);
+    ILoBullet bullets = this;
+    while (bullets instanceof ConsLoBullet) {
+      if (((ConsLoBullet) bullets).first.collidedWith(ship)) {
+        return true;
+      }
+      bullets = ((ConsLoBullet) bullets).rest;
+    }
+    return bullets.listCollidedWithShip(ship);
   }
 
   // updates all the bullets in this list of ships based on if
   // they collided or left the screen
   public ILoBullet updateBullets(ILoShip activeShips) {
+    SpatialGrid shipGrid = new SpatialGrid();
+    activeShips.addShipsTo(shipGrid);
+    return this.updateBulletsWith(shipGrid);
+  }
 
-    int curChain = this.first.colSoFar;
-
-    if (activeShips.listCollidedWithBullet(this.first)) {
-      //generate new list of bullets of length curChain + 1, CHECK
-      //append that list to the rest of the bullets, CHECK
-      // update the rest of the bullets with curChain + 1, CHECK
-      return this.first.generateNewBullets(
-          curChain + 1,
-          360 / (curChain + 1),
-          this.rest.updateBullets(activeShips));
-    }
-    else if (this.first.isOffScreen()) {
-      return this.rest.updateBullets(activeShips);
-    }
-    else {
-      return new ConsLoBullet(
-          this.first.updateBullet(),
-          this.rest.updateBullets(activeShips));
+  // updates all the bullets in this list of bullets based on if
+  // they collided with a ship in the given grid or left the screen
+  public ILoBullet updateBulletsWith(SpatialGrid shipGrid) {
+    BulletListBuilder updated = new BulletListBuilder();
+    ILoBullet bullets = this;
+    while (bullets instanceof ConsLoBullet) {
+      Bullet bullet = ((ConsLoBullet) bullets).first;
+      int curChain = bullet.colSoFar;
+      if (bullet.collidedWithAny(shipGrid)) {
+        // a bullet that hit a ship splits into curChain + 1 bullets in its place
+        bullet.addNewBulletsTo(updated, curChain + 1, 360 / (curChain + 1));
+      }
+      else if (!bullet.isOffScreen()) {
+        updated.add(bullet.updateBullet());
+      }
+      bullets = ((ConsLoBullet) bullets).rest;
     }
+    return updated.build(bullets.updateBulletsWith(shipGrid));
   }
 
   // counts the number of ships in this list of ships that were 
   // hit by bullets
   public int countHitShips(ILoShip activeShips) {
-    if (activeShips.listCollidedWithBullet(this.first)) {
-      return 1 + this.rest.countHitShips(activeShips);
-    }
-    else {
-      return this.rest.countHitShips(activeShips);
+    SpatialGrid shipGrid = new SpatialGrid();
+    activeShips.addShipsTo(shipGrid);
+    return this.countHitShipsWith(shipGrid);
+  }
+
+  // counts the number of bullets in this list of bullets that hit
+  // a ship in the given grid
+  public int countHitShipsWith(SpatialGrid shipGrid) {
+    int count = 0;
+    ILoBullet bullets = this;
+    while (bullets instanceof ConsLoBullet) {
+      if (((ConsLoBullet) bullets).first.collidedWithAny(shipGrid)) {
+        count++;
+      }
+      bullets = ((ConsLoBullet) bullets).rest;
     }
+    return count + bullets.countHitShipsWith(shipGrid);
   }
 
   // determines if this list of bullets is empty
@@ -202,4 +441,149 @@ class ConsLoBullet implements ILoBullet {
     return false;
   }
 
-}
\ No newline at end of file
+  // adds every bullet in this list of bullets to the given grid
+  public void addBulletsTo(SpatialGrid grid) {
+    ILoBullet bullets = this;
+    while (bullets instanceof ConsLoBullet) {
+      ((ConsLoBullet) bullets).first.addTo(grid);
+      bullets = ((ConsLoBullet) bullets).rest;
+    }
+    bullets.addBulletsTo(grid);
+  }
+
+  // adds the given bullet to the front of this list of bullets
+  public ILoBullet addBullet(Bullet bullet) {
+    return new ConsLoBullet(bullet, this);
+  }
+
+  // records which bullets in this list of bullets hit a ship in the given grid
+  public void markHits(SpatialGrid shipGrid, HitSet hits, int index) {
+    ILoBullet bullets = this;
+    while (bullets instanceof ConsLoBullet) {
+      ((ConsLoBullet) bullets).first.markHits(shipGrid, hits, index);
+      bullets = ((ConsLoBullet) bullets).rest;
+      index++;
+    }
+    bullets.markHits(shipGrid, hits, index);
+  }
+
+  // updates all the bullets in this list of bullets based on if
+  // they hit a ship or left the screen
+  public ILoBullet updateBulletsFrom(HitSet hits, int index) {
+    BulletListBuilder updated = new BulletListBuilder();
+    ILoBullet bullets = this;
+    while (bullets instanceof ConsLoBullet) {
+      Bullet bullet = ((ConsLoBullet) bullets).first;
+      int curChain = bullet.colSoFar;
+      if (hits.bulletHit(index)) {
+        double contact = hits.contactTime(index);
+        bullet.addNewBulletsTo(updated, curChain + 1, 360 / (curChain + 1), contact,
+            hits.split(bullet.x + contact * bullet.dx, bullet.y + contact * bullet.dy,
+                curChain + 1));
+      }
+      else if (bullet.isOffScreen()) {
+        hits.cull(bullet.x, bullet.y, curChain, bullet.size);
+      }
+      else {
+        updated.add(bullet.updateBullet());
+      }
+      bullets = ((ConsLoBullet) bullets).rest;
+      index++;
+    }
+    return updated.build(bullets.updateBulletsFrom(hits, index));
+  }
+
+  // counts the bullets in this list of bullets
+  public int countBullets() {
+    int count = 0;
+    ILoBullet bullets = this;
+    while (bullets instanceof ConsLoBullet) {
+      count++;
+      bullets = ((ConsLoBullet) bullets).rest;
+    }
+    return count + bullets.countBullets();
+  }
+
+  // draws all the bullets from this list of bullets into the frame of the given renderer
+  public void drawBulletsOn(RasterRenderer renderer) {
+    ILoBullet bullets = this;
+    while (bullets instanceof ConsLoBullet) {
+      ((ConsLoBullet) bullets).first.drawOn(renderer);
+      bullets = ((ConsLoBullet) bullets).rest;
+    }
+    bullets.drawBulletsOn(renderer);
+  }
+
+  // writes all the bullets from this list of bullets, in order, to the given buffer
+  public void writeBullets(ByteBuffer out) {
+    ILoBullet bullets = this;
+    while (bullets instanceof ConsLoBullet) {
+      ((ConsLoBullet) bullets).first.writeTo(out);
+      bullets = ((ConsLoBullet) bullets).rest;
+    }
+    bullets.writeBullets(out);
+  }
+
+}
+
+// Builds a list of ships front to back in one pass: each ship is added at the end by
+// filling in the rest of the last cell, which no one else can see until build is called,
+// so the finished list is as immutable as one built by consing
+class ShipListBuilder {
+  ConsLoShip first;
+  ConsLoShip last;
+
+  // adds the given ship to the end of the list being built
+  void add(Ship ship) {
+    ConsLoShip cell = new ConsLoShip(ship, null);
+    if (this.last == null) {
+      this.first = cell;
+    }
+    else {
+      this.last.rest = cell;
+    }
+    this.last = cell;
+  }
+
+  // finishes the list being built with the given list after it, and starts a new one
+  ILoShip build(ILoShip tail) {
+    if (this.last == null) {
+      return tail;
+    }
+    this.last.rest = tail;
+    ILoShip built = this.first;
+    this.first = null;
+    this.last = null;
+    return built;
+  }
+}
+
+// Builds a list of bullets front to back in one pass, the same way as ShipListBuilder
+class BulletListBuilder {
+  ConsLoBullet first;
+  ConsLoBullet last;
+
+  // adds the given bullet to the end of the list being built
+  void add(Bullet bullet) {
+    ConsLoBullet cell = new ConsLoBullet(bullet, null);
+    if (this.last == null) {
+      this.first = cell;
+    }
+    else {
+      this.last.rest = cell;
+    }
+    this.last = cell;
+  }
+
+  // finishes the list being built with the given list after it, and starts a new one
+  ILoBullet build(ILoBullet tail) {
+    if (this.last == null) {
+      return tail;
+    }
+    this.last.rest = tail;
+    ILoBullet built = this.first;
+    this.first = null;
+    this.last = null;
+    return built;
+  }
+}
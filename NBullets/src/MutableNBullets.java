@@ -0,0 +1,383 @@
+import javalib.impworld.*;
+import javalib.worldimages.*;
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Random;
+
+// Keeps the bullets and ships a MutableNBullets has finished with, so new pieces reuse
+// them instead of being allocated. Once a game has had as many pieces alive at once as
+// it ever will, it stops allocating pieces altogether.
+class PiecePool {
+
+  Bullet[] freeBullets = new Bullet[64];
+  int freeBulletCount;
+  Ship[] freeShips = new Ship[16];
+  int freeShipCount;
+  // how many pieces this pool has had to allocate
+  int bulletsCreated;
+  int shipsCreated;
+
+  // a bullet with the given fields, moving as a new Bullet with them would
+  Bullet bullet(double x, double y, int size, double direction, int colSoFar, Color color,
+      GameConfig config) {
+    if (this.freeBulletCount == 0) {
+      this.bulletsCreated++;
+      return new Bullet(x, y, size, direction, colSoFar, color, config);
+    }
+    Bullet bullet = this.freeBullets[--this.freeBulletCount];
+    this.freeBullets[this.freeBulletCount] = null;
+    bullet.x = x;
+    bullet.y = y;
+    bullet.size = size;
+    bullet.direction = direction;
+    bullet.colSoFar = colSoFar;
+    bullet.color = color;
+    bullet.config = config;
+    bullet.dx = config.velocityX(direction);
+    bullet.dy = config.velocityY(direction);
+    return bullet;
+  }
+
+  // a ship with the given fields, moving as a ship spawned in a game with the given
+  // settings would
+  Ship ship(double x, double y, int size, double direction, Color color, GameConfig config) {
+    if (this.freeShipCount == 0) {
+      this.shipsCreated++;
+      return new Ship(x, y, size, direction, color, config.shipVelocity(direction));
+    }
+    Ship ship = this.freeShips[--this.freeShipCount];
+    this.freeShips[this.freeShipCount] = null;
+    ship.x = x;
+    ship.y = y;
+    ship.size = size;
+    ship.direction = direction;
+    ship.color = color;
+    ship.dx = config.shipVelocity(direction);
+    ship.dy = 0;
+    return ship;
+  }
+
+  // takes back the given bullet, which must no longer be in the game
+  void free(Bullet bullet) {
+    if (this.freeBulletCount == this.freeBullets.length) {
+      this.freeBullets = Arrays.copyOf(this.freeBullets, this.freeBulletCount * 2);
+    }
+    this.freeBullets[this.freeBulletCount++] = bullet;
+  }
+
+  // takes back the given ship, which must no longer be in the game
+  void free(Ship ship) {
+    if (this.freeShipCount == this.freeShips.length) {
+      this.freeShips = Arrays.copyOf(this.freeShips, this.freeShipCount * 2);
+    }
+    this.freeShips[this.freeShipCount++] = ship;
+  }
+}
+
+// Represents the NBullets game on javalib's imperative World: every tick moves the
+// bullets and ships in place and hands the ones that leave the game back to a PiecePool,
+// instead of building a new list of new pieces. The rules are exactly those of
+// Simulation.step, updateBullets, updateShips and generateRandomShips, and the pieces are
+// kept in the same order as in the cons lists, so a game played with the same random
+// numbers and key presses goes the same way as a persistent NBullets.
+//
+// Run MutableNBullets's main to play this version instead of NBullets.
+class MutableNBullets extends World {
+
+  static final WorldImage BACKGROUND = new RectangleImage(NBullets.WIDTH, NBullets.HEIGHT,
+      OutlineMode.SOLID, Color.DARK_GRAY);
+
+  int bulletsLeft;
+  int shipsDestroyed;
+  // ticks since ships last had a chance to spawn
+  int currentTicks;
+  // ticks since the game started
+  long tick;
+  Random randGen;
+  GameConfig config;
+
+  // the live pieces, in the order the cons lists would hold them, and the arrays the
+  // next tick's pieces are written into before the two are swapped
+  Bullet[] bullets = new Bullet[64];
+  int bulletCount;
+  Bullet[] nextBullets = new Bullet[64];
+  Ship[] ships = new Ship[16];
+  int shipCount;
+  Ship[] nextShips = new Ship[16];
+
+  PiecePool pool = new PiecePool();
+  HitSet hits = new HitSet();
+  // holds each tick to its deadline by degrading chain reactions, or null for the game
+  // as its rules are, as in Simulation
+  ChainBudget budget;
+  // where the game's events are emitted, or null if they aren't recorded, as in
+  // Simulation
+  EventStream events;
+
+  // the HUD and the values it was drawn for, so it is only rebuilt when one changes
+  WorldImage hud;
+  int hudBulletsLeft = -1;
+  int hudShipsDestroyed = -1;
+
+  // Constructor
+  MutableNBullets(GameConfig config, Random randGen) {
+    this.config = config;
+    this.hits.shipGrid.fixedPoint = config.fixedPoint;
+    this.randGen = randGen;
+    this.bulletsLeft = config.startingBullets;
+  }
+
+  // Represents a new game with the default settings
+  MutableNBullets(Random randGen) {
+    this(GameConfig.DEFAULT, randGen);
+  }
+
+  // advances the game by one tick, in the same order as Simulation.step
+  public void onTick() {
+    long start = this.budget == null ? 0 : System.nanoTime();
+    int bulletsBefore = this.bulletCount;
+    this.currentTicks = (this.currentTicks + 1) % this.config.spawnTicks;
+    this.tick++;
+    this.hits.events = this.events;
+    if (this.events != null) {
+      this.events.tick = this.tick;
+    }
+
+    this.hits.clear();
+    for (int i = 0; i < this.shipCount; i++) {
+      this.ships[i].addTo(this.hits.shipGrid);
+    }
+    for (int i = 0; i < this.bulletCount; i++) {
+      this.bullets[i].markHits(this.hits.shipGrid, this.hits, i);
+    }
+    this.hits.finishContacts();
+    if (this.events != null) {
+      this.hits.emitShipHits();
+    }
+    if (this.budget != null) {
+      this.budget.applyTo(this.hits, bulletsBefore);
+    }
+
+    this.updateShips();
+    this.shipsDestroyed += this.hits.bulletHits;
+    this.updateBullets();
+
+    if (this.currentTicks == 0) {
+      this.generateRandomShips();
+    }
+    if (this.budget != null) {
+      this.budget.record(System.nanoTime() - start, bulletsBefore);
+    }
+  }
+
+  // moves the ships that weren't hit and are still on the screen, and frees the others
+  void updateShips() {
+    int kept = 0;
+    for (int i = 0; i < this.shipCount; i++) {
+      Ship ship = this.ships[i];
+      if (this.hits.shipHit(i) || ship.isOffScreen()) {
+        this.pool.free(ship);
+      }
+      else {
+        ship.x += ship.dx;
+        this.ships[kept++] = ship;
+      }
+    }
+    Arrays.fill(this.ships, kept, this.shipCount, null);
+    this.shipCount = kept;
+  }
+
+  // replaces each bullet that hit a ship with the bullets it splits into, frees the
+  // bullets that left the screen, and moves the rest
+  void updateBullets() {
+    int next = 0;
+    for (int i = 0; i < this.bulletCount; i++) {
+      Bullet bullet = this.bullets[i];
+      if (this.hits.bulletHit(i)) {
+        int curChain = bullet.colSoFar + 1;
+        int angleToAdd = 360 / curChain;
+        int size = this.config.grownSize(bullet.size);
+        double contact = this.hits.contactTime(i);
+        double lead = this.config.splitLead(contact);
+        double x = bullet.x + contact * bullet.dx;
+        double y = bullet.y + contact * bullet.dy;
+        int children = this.hits.split(x, y, curChain);
+        this.nextBullets = this.ensureRoom(this.nextBullets, next + children);
+        for (int chain = curChain; chain > curChain - children; chain--) {
+          Bullet split = this.pool.bullet(x, y,
+              chain == curChain ? this.config.splitSize(bullet.size, curChain - children + 1)
+                  : size,
+              chain * angleToAdd, curChain, bullet.color, bullet.config);
+          split.x = this.config.snap(split.x + lead * split.dx);
+          split.y = this.config.snap(split.y + lead * split.dy);
+          this.nextBullets[next++] = split;
+        }
+        this.pool.free(bullet);
+      }
+      else if (bullet.isOffScreen()) {
+        this.hits.cull(bullet.x, bullet.y, bullet.colSoFar, bullet.size);
+        this.pool.free(bullet);
+      }
+      else {
+        bullet.x += bullet.dx;
+        bullet.y += bullet.dy;
+        this.nextBullets = this.ensureRoom(this.nextBullets, next + 1);
+        this.nextBullets[next++] = bullet;
+      }
+    }
+    Bullet[] done = this.bullets;
+    Arrays.fill(done, 0, this.bulletCount, null);
+    this.bullets = this.nextBullets;
+    this.nextBullets = done;
+    this.bulletCount = next;
+  }
+
+  // spawns ships with the same random numbers as Simulation.generateRandomShips, in
+  // front of the ships already in the game
+  void generateRandomShips() {
+    int spawned = 0;
+    while (this.randGen.nextDouble() <= this.config.shipSpawnChance) {
+      int leftOrRight = (int) Math.round(this.randGen.nextDouble());
+      this.nextShips = this.ensureRoom(this.nextShips, spawned + 1);
+      Ship ship = this.pool.ship(
+          leftOrRight * NBullets.WIDTH,
+          this.config.snap(NBullets.SHIPSIZE
+              + this.randGen.nextDouble() * (NBullets.HEIGHT - 2 * NBullets.SHIPSIZE)),
+          NBullets.SHIPSIZE, 180 * leftOrRight,
+          NBullets.SHIPCOLOR, this.config);
+      if (this.events != null) {
+        this.events.emit(EventStream.SPAWN, ship.x, ship.y, 180 * leftOrRight, ship.size);
+      }
+      this.nextShips[spawned++] = ship;
+    }
+    if (spawned > 0) {
+      this.nextShips = this.ensureRoom(this.nextShips, spawned + this.shipCount);
+      System.arraycopy(this.ships, 0, this.nextShips, spawned, this.shipCount);
+      Ship[] done = this.ships;
+      Arrays.fill(done, 0, this.shipCount, null);
+      this.ships = this.nextShips;
+      this.nextShips = done;
+      this.shipCount += spawned;
+    }
+  }
+
+  // the given array, grown if needed to hold the given number of pieces
+  <T> T[] ensureRoom(T[] pieces, int count) {
+    if (count <= pieces.length) {
+      return pieces;
+    }
+    return Arrays.copyOf(pieces, Math.max(count, pieces.length * 2));
+  }
+
+  // fires a bullet from the bottom of the screen if there are any left, and
+  // determines if one was fired
+  boolean fire() {
+    if (this.bulletsLeft > 0) {
+      this.bulletsLeft--;
+      if (this.events != null) {
+        this.events.tick = this.tick;
+        this.events.emit(EventStream.SHOT, NBullets.WIDTH / 2, NBullets.HEIGHT,
+            this.bulletsLeft, 0);
+      }
+      // a new bullet goes to the front, as ILoBullet.addBullet puts it
+      this.nextBullets = this.ensureRoom(this.nextBullets, this.bulletCount + 1);
+      this.nextBullets[0] = this.pool.bullet(NBullets.WIDTH / 2, NBullets.HEIGHT,
+          NBullets.BULLETSIZE, 270, 1, NBullets.BULLETCOLOR, this.config);
+      System.arraycopy(this.bullets, 0, this.nextBullets, 1, this.bulletCount);
+      Bullet[] done = this.bullets;
+      Arrays.fill(done, 0, this.bulletCount, null);
+      this.bullets = this.nextBullets;
+      this.nextBullets = done;
+      this.bulletCount++;
+      return true;
+    }
+    return false;
+  }
+
+  // fires a bullet when the space bar is pressed
+  public void onKeyEvent(String keyName) {
+    if (keyName.equals(" ")) {
+      this.fire();
+    }
+  }
+
+  // determines if the game is over: every bullet has been fired and none are left
+  boolean isOver() {
+    return this.bulletsLeft == 0 && this.bulletCount == 0;
+  }
+
+  // draws the pieces and the HUD onto a new scene
+  public WorldScene makeScene() {
+    WorldScene scene = new WorldScene(NBullets.WIDTH, NBullets.HEIGHT);
+    scene.placeImageXY(BACKGROUND, NBullets.WIDTH / 2, NBullets.HEIGHT / 2);
+    for (int i = 0; i < this.bulletCount; i++) {
+      Bullet bullet = this.bullets[i];
+      scene.placeImageXY(bullet.drawPiece(), (int) bullet.x, (int) bullet.y);
+    }
+    for (int i = 0; i < this.shipCount; i++) {
+      Ship ship = this.ships[i];
+      scene.placeImageXY(ship.drawPiece(), (int) ship.x, (int) ship.y);
+    }
+    scene.placeImageXY(this.drawHud(), NBullets.WIDTH / 2, NBullets.HEIGHT - 20);
+    return scene;
+  }
+
+  // draws the remaining bullets and score, reusing the last image if neither changed
+  WorldImage drawHud() {
+    if (this.hud == null
+        || this.hudBulletsLeft != this.bulletsLeft
+        || this.hudShipsDestroyed != this.shipsDestroyed) {
+      this.hud = new BesideImage(
+          new TextImage("Remaining Bullets: " + this.bulletsLeft, Color.CYAN),
+          new TextImage("   Score: " + this.shipsDestroyed, Color.ORANGE));
+      this.hudBulletsLeft = this.bulletsLeft;
+      this.hudShipsDestroyed = this.shipsDestroyed;
+    }
+    return this.hud;
+  }
+
+  // ends the game once every bullet is gone, showing the final score
+  public WorldEnd worldEnds() {
+    if (this.isOver()) {
+      if (this.events != null) {
+        this.events.finish();
+      }
+      WorldScene scene = new WorldScene(NBullets.WIDTH, NBullets.HEIGHT);
+      scene.placeImageXY(BACKGROUND, NBullets.WIDTH / 2, NBullets.HEIGHT / 2);
+      scene.placeImageXY(
+          new AboveImage(
+              new TextImage("GAME OVER", 36, Color.cyan),
+              new TextImage("Final Score: " + this.shipsDestroyed, 18, Color.ORANGE)),
+          NBullets.WIDTH / 2, NBullets.HEIGHT / 2);
+      return new WorldEnd(true, scene);
+    }
+    else {
+      return new WorldEnd(false, this.makeScene());
+    }
+  }
+
+  // the bullets in the game as a list of bullets, in the same order
+  ILoBullet bulletList() {
+    BulletListBuilder list = new BulletListBuilder();
+    for (int i = 0; i < this.bulletCount; i++) {
+      list.add(this.bullets[i]);
+    }
+    return list.build(new MtLoBullet());
+  }
+
+  // the ships in the game as a list of ships, in the same order
+  ILoShip shipList() {
+    ShipListBuilder list = new ShipListBuilder();
+    for (int i = 0; i < this.shipCount; i++) {
+      list.add(this.ships[i]);
+    }
+    return list.build(new MtLoShip());
+  }
+
+  // plays a new game of this version in javalib's window, given as: [seed]
+  public static void main(String[] args) {
+    long seed = args.length > 0 ? Long.parseLong(args[0]) : System.nanoTime();
+    new MutableNBullets(new GameRandom(seed))
+        .bigBang(NBullets.WIDTH, NBullets.HEIGHT, NBullets.TICKRATE);
+  }
+}
@@ -1,6 +1,17 @@
 import javalib.funworld.*;
 import javalib.worldimages.*;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.LockSupport;
 import java.awt.Color;
 
 import tester.*;
@@ -29,21 +40,72 @@ class NBullets extends World {
               OutlineMode.SOLID,
               Color.DARK_GRAY), WIDTH / 2, HEIGHT / 2);
 
-  int bulletsLeft = 40;
-  int shipsDestroyed = 0;
-  ILoBullet activeBullets;
-  ILoShip activeShips;
-  int currentTicks;
-  Random randGen = new Random();
+  // the game being played and drawn
+  Simulation sim;
+  // where key presses are recorded for replay, or null if they aren't
+  GameRecorder recorder;
+  // what runs the game at a fixed rate of wall time, or null if every tick is one step
+  FixedStepLoop loop;
+
+  // the remaining bullets and score shown at the bottom of the screen, and the
+  // values it was drawn for, so it is only rebuilt when one of them changes
+  WorldImage hud;
+  int hudBulletsLeft = -1;
+  int hudShipsDestroyed = -1;
 
   // Constructor
   NBullets(int bulletsLeft, int shipsDestroyed, ILoBullet bulletList, 
       ILoShip shipList, int currentTicks) {
-    this.bulletsLeft = bulletsLeft;
-    this.shipsDestroyed = shipsDestroyed;
-    this.activeBullets = bulletList;
-    this.activeShips = shipList;
-    this.currentTicks = currentTicks;
+    this(new Simulation(bulletsLeft, shipsDestroyed, bulletList, shipList, currentTicks,
+        new GameRandom()));
+  }
+
+  // Represents the game being played by the given Simulation, measured if the
+  // nbullets.metrics system property names a CSV file, held to its deadline by a
+  // ChainBudget if the nbullets.budget system property is adaptive, its events
+  // recorded if the nbullets.events system property names an event file, and its key
+  // presses recorded for replay if the nbullets.record system property names a log
+  NBullets(Simulation sim) {
+    this(sim, null);
+  }
+
+  // Represents the game being played by the given Simulation, recording every key
+  // press to the given recorder; a recorded game is never given a budget, since its
+  // replay has to play the same. Each world keeps its game as it was, which a game
+  // whose bullets are in a BulletStore can't, since the store updates them in place;
+  // MutableNBullets plays the game in place instead.
+  NBullets(Simulation sim, GameRecorder recorder) {
+    if (sim.activeBullets instanceof BulletStore) {
+      throw new IllegalArgumentException(
+          "a BulletStore updates in place, so play it with MutableNBullets");
+    }
+    this.sim = sim;
+    this.recorder = recorder != null ? recorder : GameRecorder.fromSystemProperties(sim);
+    if (this.sim.metrics == null) {
+      this.sim.metrics = GameMetrics.fromSystemProperties();
+    }
+    if (this.sim.budget == null && this.recorder == null) {
+      this.sim.budget = ChainBudget.fromSystemProperties(sim.config);
+    }
+    EventFileWriter events = EventFileWriter.fromSystemProperties();
+    if (this.sim.events == null && events != null) {
+      this.sim.events = events.open();
+    }
+  }
+
+  // Represents the world after the given one, playing the given copy of its game, run by
+  // the given copy of its loop if it has one, and keeping its recorder, which notes how
+  // far the game has got, and HUD
+  NBullets(NBullets previous, Simulation sim, FixedStepLoop loop) {
+    this.sim = sim;
+    this.recorder = previous.recorder;
+    if (this.recorder != null) {
+      this.recorder.reached(sim.tick);
+    }
+    this.loop = loop;
+    this.hud = previous.hud;
+    this.hudBulletsLeft = previous.hudBulletsLeft;
+    this.hudShipsDestroyed = previous.hudShipsDestroyed;
   }
 
   // Represents the bullets left to shoot
@@ -53,79 +115,85 @@ class NBullets extends World {
 
   // Represents a random number generator
   NBullets(Random randGen) {
-    this(DEFAULTBULLETS, 0, new MtLoBullet(), new MtLoShip(), 0);
-    this.randGen = randGen;
+    this(new Simulation(randGen));
+  }
+
+  // makes this game run at TICKRATE steps per second of wall time however late its ticks
+  // arrive, catching up on slow ticks, and hold its key presses until the next step
+  NBullets fixedStep() {
+    this.loop = new FixedStepLoop(this.sim);
+    this.loop.recorder = this.recorder;
+    return this;
   }
 
   // Draws the updating world scene
   public WorldScene makeScene() {
+    long start = this.sim.clock();
 
-    WorldImage remainingBullets = new TextImage("Remaining Bullets: " + this.bulletsLeft, 
-        Color.CYAN);
-    WorldImage shipsDestroyedImage = new TextImage("   Score: " + this.shipsDestroyed, 
-        Color.ORANGE);
+    WorldScene sceneWithBullets = this.sim.activeBullets.drawBullets(blankScene);
+    WorldScene sceneWithPieces = this.sim.activeShips.drawShips(sceneWithBullets);
 
-    WorldImage combinedTextImage = new BesideImage(remainingBullets, shipsDestroyedImage);
+    WorldScene scene = sceneWithPieces.placeImageXY(this.drawHud(), WIDTH / 2, HEIGHT  - 20);
+    this.sim.lap(GameMetrics.MAKE_SCENE, start);
+    return scene;
+  }
 
+  // Draws the remaining bullets and score, reusing the last image if neither changed
+  public WorldImage drawHud() {
+    if (this.hud == null
+        || this.hudBulletsLeft != this.sim.bulletsLeft
+        || this.hudShipsDestroyed != this.sim.shipsDestroyed) {
 
-    WorldScene sceneWithBullets = this.activeBullets.drawBullets(blankScene);
-    WorldScene sceneWithPieces = this.activeShips.drawShips(sceneWithBullets);
+      WorldImage remainingBullets = new TextImage("Remaining Bullets: " + this.sim.bulletsLeft, 
+          Color.CYAN);
+      WorldImage shipsDestroyedImage = new TextImage("   Score: " + this.sim.shipsDestroyed, 
+          Color.ORANGE);
 
-    return sceneWithPieces.placeImageXY(combinedTextImage, WIDTH / 2, HEIGHT  - 20);
+      this.hud = new BesideImage(remainingBullets, shipsDestroyedImage);
+      this.hudBulletsLeft = this.sim.bulletsLeft;
+      this.hudShipsDestroyed = this.sim.shipsDestroyed;
+    }
+    return this.hud;
   }
 
-  // Represents the on tick method and continuously updates the methods
+  // Represents the on tick method and continuously updates the methods, as a new world
+  // that leaves this one as it was
   public World onTick() {
-
-    int curTicks = (this.currentTicks + 1) % (int) (SHIP_SPAWN_RATE * Math.pow(TICKRATE, -1));
-
-    if (curTicks == 0) {
-      return new NBullets(
-          this.bulletsLeft,
-          this.shipsDestroyed + this.activeBullets.countHitShips(this.activeShips),
-          this.activeBullets.updateBullets(this.activeShips),
-          generateRandomShips(this.activeShips.updateShips(this.activeBullets)),
-          curTicks++);
+    if (this.loop != null) {
+      FixedStepLoop loop = new FixedStepLoop(this.loop, new Simulation(this.sim));
+      loop.advance(System.nanoTime());
+      return new NBullets(this, loop.sim, loop);
     }
-    return new NBullets(
-        this.bulletsLeft,
-        this.shipsDestroyed + this.activeBullets.countHitShips(this.activeShips),
-        this.activeBullets.updateBullets(this.activeShips),
-        this.activeShips.updateShips(this.activeBullets),
-        curTicks++);
+    return new NBullets(this, this.sim.stepped(), null);
   }
 
-  // Launches the bullet which is shot by the user when pressing a key
+  // Launches the bullet which is shot by the user when pressing a key, as a new world
+  // that leaves this one as it was
   public World onKeyEvent(String keyName) {
-
-    if (keyName.equals(" ") && this.bulletsLeft > 0) {
-      return new NBullets(
-          this.bulletsLeft - 1, 
-          this.shipsDestroyed,
-          new ConsLoBullet(
-              new Bullet(
-                  WIDTH / 2,
-                  HEIGHT,
-                  BULLETSIZE,
-                  270,
-                  1,
-                  BULLETCOLOR), this.activeBullets),
-          this.activeShips,
-          this.currentTicks);
+    if (this.loop != null) {
+      FixedStepLoop loop = new FixedStepLoop(this.loop, new Simulation(this.sim));
+      loop.queueKey(keyName);
+      return new NBullets(this, loop.sim, loop);
     }
-    return this;
-
+    if (this.recorder != null) {
+      this.recorder.recordKey(this.sim.tick, keyName);
+    }
+    return new NBullets(this, this.sim.afterKey(keyName), null);
   }
 
   // Represents the world end method for when the game is over
   public WorldEnd worldEnds() {
-    if (this.bulletsLeft == 0 && this.activeBullets.isEmpty()) {
+    if (this.sim.isOver()) {
+      this.stopRecording();
+      if (this.sim.events != null) {
+        this.sim.events.finish();
+      }
       return new WorldEnd(
           true, 
           blankScene.placeImageXY(
               new AboveImage(
                   new TextImage("GAME OVER", 36, Color.cyan),
-                  new TextImage("Final Score: " + this.shipsDestroyed, 18, Color.ORANGE)),
+                  new TextImage("Final Score: " + this.sim.shipsDestroyed, 18, Color.ORANGE)),
               WIDTH / 2, HEIGHT / 2));
     }
     else {
@@ -133,25 +201,19 @@ class NBullets extends World {
     }
   }
 
-  // Generates a random number of ships for the game to display
-  public ILoShip generateRandomShips(ILoShip other) {
-
-    double x = this.randGen.nextDouble();
-
-    if (x <= .6) {
-
-      int leftOrRight = (int) Math.round(this.randGen.nextDouble());
-
-      return new ConsLoShip(
-          new Ship(
-              leftOrRight * WIDTH,
-              SHIPSIZE + this.randGen.nextDouble() * (HEIGHT - 2 * SHIPSIZE),
-              SHIPSIZE, 180 * leftOrRight,
-              SHIPCOLOR),
-          generateRandomShips(other));
-    }
-    else {
-      return other;
+  // finishes the recording of this game, if it is being recorded
+  public void stopRecording() {
+    if (this.recorder != null) {
+      try {
+        this.recorder.close(this.sim.tick);
+      }
+      catch (IOException e) {
+        throw new RuntimeException("could not finish recording the game", e);
+      }
+      this.recorder = null;
+      if (this.loop != null) {
+        this.loop.recorder = null;
+      }
     }
   }
 }
@@ -317,11 +379,651 @@ class ExamplesNBullets {
     t.checkExpect(this.b1.updateBullet(), this.b9);
   }
 
+  void testVelocity(Tester t) {
+    GameConfig config = GameConfig.DEFAULT;
+    t.checkExpect(config.velocityX(0), 8.0);
+    t.checkExpect(config.velocityY(270), -8.0);
+    t.checkExpect(config.velocityX(180), Math.cos(Math.toRadians(180)) * NBullets.BULLETSPEED);
+    t.checkExpect(config.velocityY(22.5), Math.sin(Math.toRadians(22.5)) * NBullets.BULLETSPEED);
+    t.checkExpect(config.velocityX(-90), Math.cos(Math.toRadians(-90)) * NBullets.BULLETSPEED);
+    t.checkExpect(new GameConfig(10, 1, 16, 12).velocityX(0), 16.0);
+    t.checkExpect(this.b7.dy, 8.0);
+    t.checkExpect(this.s4.dx, NBullets.SHIPSPEED * Math.cos(180));
+    t.checkExpect(this.s4.dy, 0.0);
+  }
+
+  void testCirclesCollided(Tester t) {
+    t.checkExpect(AGamePiece.circlesCollided(0, 0, 3, 3, 4, 2), true);
+    t.checkExpect(AGamePiece.circlesCollided(0, 0, 3, 3, 4, 1), false);
+    t.checkExpect(AGamePiece.circlesCollided(-5, 0, 2, 5, 0, 8), true);
+  }
+
   void testUpdateShip(Tester t) {
     t.checkExpect(this.s4.updateShip(), this.s11);
     t.checkExpect(this.s5.updateShip(), this.s10);
   }
 
+  void testImageCache(Tester t) {
+    WorldImage circle = ImageCache.circle(10, OutlineMode.SOLID, NBullets.BULLETCOLOR);
+    t.checkExpect(circle, this.i2);
+    t.checkExpect(ImageCache.circle(10, OutlineMode.SOLID, NBullets.BULLETCOLOR) == circle, true);
+    t.checkExpect(ImageCache.circle(10, OutlineMode.OUTLINE, NBullets.BULLETCOLOR) == circle,
+        false);
+    t.checkExpect(ImageCache.circle(12, OutlineMode.SOLID, NBullets.BULLETCOLOR) == circle, false);
+    t.checkExpect(this.b1.drawPiece() == this.b3.drawPiece(), true);
+    t.checkExpect(ImageCache.circle(1000, OutlineMode.SOLID, Color.RED),
+        new CircleImage(1000, OutlineMode.SOLID, Color.RED));
+  }
+
+  void testDrawHud(Tester t) {
+    NBullets world = new NBullets(3);
+    WorldImage hud = world.drawHud();
+    t.checkExpect(hud, new BesideImage(new TextImage("Remaining Bullets: 3", Color.CYAN),
+        new TextImage("   Score: 0", Color.ORANGE)));
+    t.checkExpect(world.drawHud() == hud, true);
+    NBullets fired = (NBullets) world.onKeyEvent(" ");
+    t.checkExpect(world.drawHud() == hud, true);
+    t.checkExpect(fired.drawHud() == hud, false);
+    t.checkExpect(fired.drawHud(), new BesideImage(
+        new TextImage("Remaining Bullets: 2", Color.CYAN),
+        new TextImage("   Score: 0", Color.ORANGE)));
+  }
+
+  void testRasterRenderer(Tester t) {
+    RasterRenderer renderer = new RasterRenderer(40, 40);
+    renderer.fillCircle(10, 10, 2, Color.YELLOW.getRGB());
+    t.checkExpect(renderer.spanFor(2), new int[] {0, 1, 2, 1, 0});
+    t.checkExpect(renderer.pixels[10 * 40 + 12], Color.YELLOW.getRGB() & 0xFFFFFF);
+    t.checkExpect(renderer.pixels[8 * 40 + 10], Color.YELLOW.getRGB() & 0xFFFFFF);
+    t.checkExpect(renderer.pixels[8 * 40 + 11], 0);
+    t.checkExpect(renderer.pixels[10 * 40 + 13], 0);
+    renderer.fillCircle(-1, 39, 3, Color.RED.getRGB());
+    t.checkExpect(renderer.pixels[39 * 40 + 2], Color.RED.getRGB() & 0xFFFFFF);
+    t.checkExpect(renderer.pixels[39 * 40 + 3], 0);
+
+    RasterRenderer full = new RasterRenderer();
+    Simulation sim = new Simulation(4, 7, this.bulletList3, this.shipList, 0, new Random(1));
+    full.render(sim);
+    int rgb = full.frame.getRGB(100, 300) & 0xFFFFFF;
+    t.checkExpect(rgb, NBullets.SHIPCOLOR.getRGB() & 0xFFFFFF);
+    t.checkExpect(full.frame.getRGB(122, 400) & 0xFFFFFF, NBullets.BULLETCOLOR.getRGB() & 0xFFFFFF);
+    t.checkExpect(full.frame.getRGB(300, 100) & 0xFFFFFF, Color.DARK_GRAY.getRGB() & 0xFFFFFF);
+    t.checkExpect(full.hudBulletsLeft, 4);
+    t.checkExpect(full.hudShipsDestroyed, 7);
+  }
+
+  void testInterpolatedRender(Tester t) {
+    RasterRenderer renderer = new RasterRenderer();
+    Simulation sim = new Simulation(0, 0,
+        new ConsLoBullet(new Bullet(100, 100, 2, 0, 1, NBullets.BULLETCOLOR),
+            new MtLoBullet()),
+        new ConsLoShip(new Ship(300, 100, NBullets.SHIPSIZE, 0, NBullets.SHIPCOLOR),
+            new MtLoShip()),
+        0, new Random(1));
+    int bullet = NBullets.BULLETCOLOR.getRGB() & 0xFFFFFF;
+    int background = RasterRenderer.BACKGROUND;
+    renderer.render(sim, 0.5);
+    t.checkExpect(renderer.lag, 0.5);
+    t.checkExpect(renderer.frame.getRGB(94, 100) & 0xFFFFFF, bullet);
+    t.checkExpect(renderer.frame.getRGB(102, 100) & 0xFFFFFF, background);
+    t.checkExpect(renderer.frame.getRGB(298 - NBullets.SHIPSIZE, 100) & 0xFFFFFF,
+        NBullets.SHIPCOLOR.getRGB() & 0xFFFFFF);
+    renderer.render(sim);
+    t.checkExpect(renderer.lag, 0.0);
+    t.checkExpect(renderer.frame.getRGB(94, 100) & 0xFFFFFF, background);
+    t.checkExpect(renderer.frame.getRGB(102, 100) & 0xFFFFFF, bullet);
+  }
+
+  void testFixedStepLoop(Tester t) {
+    FixedStepLoop loop = new FixedStepLoop(new Simulation(new GameRandom(9)), 100, 3);
+    t.checkExpect(loop.advance(1000), 0);
+    t.checkExpect(loop.advance(1250), 2);
+    t.checkExpect(loop.sim.tick, 2L);
+    t.checkExpect(loop.alpha(), 0.5);
+    t.checkExpect(loop.advance(1290), 0);
+    t.checkExpect(loop.advance(2250), 3);
+    t.checkExpect(loop.sim.tick, 5L);
+    t.checkExpect(loop.droppedSteps, 7L);
+    t.checkExpect(loop.alpha(), 0.5);
+    t.checkExpect(loop.frames, 4L);
+    t.checkConstructorException(
+        new IllegalArgumentException("steps need a positive length and frame limit"),
+        "FixedStepLoop", loop.sim, 0L, 3);
+
+    // keys wait for the next step, so the game only depends on which step they land in
+    loop.queueKey(" ");
+    t.checkExpect(loop.sim.bulletsLeft, NBullets.DEFAULTBULLETS);
+    loop.advance(2290);
+    t.checkExpect(loop.sim.bulletsLeft, NBullets.DEFAULTBULLETS);
+    loop.advance(2350);
+    t.checkExpect(loop.sim.bulletsLeft, NBullets.DEFAULTBULLETS - 1);
+    Simulation same = new Simulation(new GameRandom(9));
+    for (int tick = 0; tick < 5; tick++) {
+      same.step();
+    }
+    same.fire();
+    same.step();
+    t.checkExpect(loop.sim.activeBullets, same.activeBullets);
+    t.checkExpect(loop.sim.activeShips, same.activeShips);
+  }
+
+  void testFixedStepNBullets(Tester t) {
+    NBullets world = new NBullets(new Simulation(new GameRandom(4))).fixedStep();
+    NBullets pressed = (NBullets) world.onKeyEvent(" ");
+    t.checkExpect(pressed.sim.bulletsLeft, NBullets.DEFAULTBULLETS);
+    t.checkExpect(pressed.loop.keys.size(), 1);
+    t.checkExpect(world.loop.keys.size(), 0);
+    pressed.loop.lastFrame = System.nanoTime() - 2 * pressed.loop.stepNanos;
+    NBullets ticked = (NBullets) pressed.onTick();
+    t.checkExpect(ticked.sim.bulletsLeft, NBullets.DEFAULTBULLETS - 1);
+    t.checkExpect(ticked.sim.tick >= 2, true);
+    t.checkExpect(ticked.loop.sim, ticked.sim);
+    t.checkExpect(pressed.sim.tick, 0L);
+    t.checkExpect(pressed.loop.keys.size(), 1);
+  }
+
+  void testEventStream(Tester t) throws IOException {
+    t.checkConstructorException(
+        new IllegalArgumentException("a stream's capacity must be a power of two"),
+        "EventStream", 0, 3);
+
+    // a full ring drops what it has no room for, and drains oldest first
+    EventStream ring = new EventStream(0, 4);
+    for (int i = 0; i < 5; i++) {
+      ring.tick = i;
+      ring.emit(EventStream.SHOT, i, -i, i, -i);
+    }
+    t.checkExpect(ring.dropped, 1L);
+    t.checkExpect(ring.waiting(), 4);
+    EventChunk chunk = new EventChunk(2);
+    t.checkExpect(ring.drainTo(chunk, 3), 3);
+    t.checkExpect(Arrays.copyOf(chunk.ticks, 3), new long[] {0, 1, 2});
+    t.checkExpect(Arrays.copyOf(chunk.bs, 3), new int[] {0, -1, -2});
+    ring.tick = 9;
+    ring.emit(EventStream.CULL, 1.5, 2.5, 7, 8);
+    t.checkExpect(ring.dropped, 1L);
+    t.checkExpect(ring.drainTo(chunk, 10), 2);
+    t.checkExpect(chunk.ticks[1], 9L);
+    t.checkExpect(chunk.types[1], EventStream.CULL);
+    t.checkExpect(chunk.xs[1], 1.5f);
+    t.checkExpect(ring.waiting(), 0);
+
+    // every storage emits the same events for the same game, and the file holds them all;
+    // these games emit too few to fill a stream even if the writer never ran
+    Path path = Files.createTempFile("nbullets", ".events");
+    EventFileWriter writer = new EventFileWriter(path);
+    Simulation[] games = new Simulation[3];
+    for (byte storage = 0; storage < games.length; storage++) {
+      games[storage] = GameRecorder.newGame(storage, GameConfig.DEFAULT.withSpawnChance(0.8),
+          new GameRandom(7));
+      games[storage].events = writer.open();
+    }
+    MutableNBullets mutable = new MutableNBullets(GameConfig.DEFAULT.withSpawnChance(0.8),
+        new GameRandom(7));
+    mutable.events = writer.open();
+    ChainSeeker player = new ChainSeeker();
+    for (int step = 0; step < 1500; step++) {
+      final Simulation lead = games[0];
+      player.play(lead, new IKeyboard() {
+        public void press(String keyName) {
+          lead.handleKey(keyName);
+        }
+      });
+      if (lead.bulletsLeft < games[1].bulletsLeft) {
+        for (int g = 1; g < games.length; g++) {
+          games[g].fire();
+        }
+        mutable.fire();
+      }
+      for (Simulation game : games) {
+        game.step();
+      }
+      mutable.onTick();
+    }
+    writer.close();
+    long emitted = 0;
+    for (EventStream stream : writer.streams) {
+      t.checkExpect(stream.dropped, 0L);
+      emitted += stream.head;
+    }
+    t.checkExpect(writer.eventsWritten, emitted);
+
+    // the counts and sums of each type of event, for each game, scanning only the type
+    // and a columns
+    long[][] counts = new long[4][EventStream.TYPES.length];
+    long[][] sums = new long[4][EventStream.TYPES.length];
+    long lastTick = 0;
+    EventFileReader reader = new EventFileReader(path);
+    while (reader.nextChunk()) {
+      byte[] types = reader.types();
+      int[] as = reader.as();
+      t.checkExpect(reader.decoded[EventFileWriter.X], false);
+      for (int k = 0; k < reader.count; k++) {
+        counts[reader.game][types[k]]++;
+        sums[reader.game][types[k]] += as[k];
+      }
+      long[] ticks = reader.ticks();
+      lastTick = Math.max(lastTick, ticks[reader.count - 1]);
+    }
+    Simulation game = games[0];
+    t.checkExpect(lastTick > 0 && lastTick <= game.tick, true);
+    int fired = GameConfig.DEFAULT.startingBullets - game.bulletsLeft;
+    t.checkExpect(game.shipsDestroyed > 0, true);
+    t.checkExpect(counts[0][EventStream.SHOT], (long) fired);
+    t.checkExpect(counts[0][EventStream.CHAIN], (long) game.shipsDestroyed);
+    // every bullet fired or split off either left the screen or is still in the game
+    t.checkExpect(fired + sums[0][EventStream.CHAIN] - counts[0][EventStream.CHAIN]
+        - counts[0][EventStream.CULL], (long) game.activeBullets.countBullets());
+    for (int g = 1; g < 4; g++) {
+      t.checkExpect(counts[g], counts[0]);
+      t.checkExpect(sums[g], sums[0]);
+    }
+    t.checkExpect(mutable.shipsDestroyed, game.shipsDestroyed);
+
+    // a game that is over finishes its stream, which the writer drains and then drops
+    writer = new EventFileWriter(path);
+    Simulation over = new Simulation(new GameRandom(3));
+    over.bulletsLeft = 0;
+    NBullets ended = new NBullets(over);
+    over.events = writer.open();
+    for (int k = 0; k < 3; k++) {
+      over.events.emit(EventStream.SHOT, NBullets.WIDTH / 2, NBullets.HEIGHT, k, 0);
+    }
+    t.checkExpect(ended.worldEnds().worldEnds, true);
+    t.checkExpect(over.events.finished, true);
+    long deadline = System.nanoTime() + 5_000_000_000L;
+    while (writer.streams.contains(over.events) && System.nanoTime() < deadline) {
+      LockSupport.parkNanos(1_000_000L);
+    }
+    t.checkExpect(writer.streams.contains(over.events), false);
+    t.checkExpect(writer.eventsWritten, 3L);
+    writer.close();
+    Files.delete(path);
+  }
+
+  void testRecordAndReplay(Tester t) throws IOException {
+    Path log = Files.createTempFile("nbullets", ".log");
+    Simulation live = new Simulation(new GameRandom(77));
+    NBullets world = new NBullets(live, new GameRecorder(log, live));
+    Random keys = new Random(5);
+    for (int tick = 0; tick < 600; tick++) {
+      if (keys.nextInt(8) == 0) {
+        world = (NBullets) world.onKeyEvent(keys.nextBoolean() ? " " : "left");
+      }
+      world = (NBullets) world.onTick();
+    }
+    world.stopRecording();
+    live = world.sim;
+
+    GameReplayer replayer = new GameReplayer(log);
+    Simulation halfway = replayer.replayUntil(300);
+    t.checkExpect(halfway.tick, 300L);
+    t.checkExpect(replayer.isFinished(), false);
+    Simulation replayed = replayer.replay();
+    t.checkExpect(replayer.isFinished(), true);
+    t.checkExpect(replayed.tick, 600L);
+    t.checkExpect(replayed.shipsDestroyed, live.shipsDestroyed);
+    t.checkExpect(replayed.bulletsLeft, live.bulletsLeft);
+    t.checkExpect(replayed.activeBullets, live.activeBullets);
+    t.checkExpect(replayed.activeShips, live.activeShips);
+
+    // the seed comes from the game's GameRandom, so a plain Random can't be recorded
+    t.checkConstructorException(
+        new IllegalArgumentException("a recorded game needs a GameRandom"),
+        "GameRecorder", log, new Simulation(new Random(77)));
+
+    // the nbullets.record property records the first game launched, unseeded or not,
+    // and a log finished when the JVM exits ends where the game had got to
+    System.setProperty(GameRecorder.PROPERTY, log.toString());
+    NBullets launched = new NBullets(10);
+    t.checkExpect(launched.recorder == GameRecorder.configured, true);
+    t.checkExpect(launched.sim.budget, null);
+    t.checkExpect(new NBullets(10).recorder, null);
+    for (int tick = 0; tick < 200; tick++) {
+      if (tick % 20 == 0) {
+        launched = (NBullets) launched.onKeyEvent(" ");
+      }
+      launched = (NBullets) launched.onTick();
+    }
+    launched.recorder.close(launched.recorder.reachedTick);
+    replayed = new GameReplayer(log).replay();
+    t.checkExpect(replayed.tick, 200L);
+    t.checkExpect(replayed.bulletsLeft, 0);
+    t.checkExpect(replayed.activeBullets, launched.sim.activeBullets);
+    t.checkExpect(replayed.activeShips, launched.sim.activeShips);
+    System.clearProperty(GameRecorder.PROPERTY);
+    GameRecorder.configured = null;
+    Files.delete(log);
+  }
+
+  void testVarint(Tester t) {
+    ByteBuffer buffer = ByteBuffer.allocate(32);
+    GameRecorder.putVarint(buffer, 0);
+    GameRecorder.putVarint(buffer, 127);
+    GameRecorder.putVarint(buffer, 128);
+    GameRecorder.putVarint(buffer, 1L << 40);
+    t.checkExpect(buffer.position(), 1 + 1 + 2 + 6);
+    buffer.flip();
+    t.checkExpect(GameRecorder.getVarint(buffer), 0L);
+    t.checkExpect(GameRecorder.getVarint(buffer), 127L);
+    t.checkExpect(GameRecorder.getVarint(buffer), 128L);
+    t.checkExpect(GameRecorder.getVarint(buffer), 1L << 40);
+  }
+
+  void testGameRandom(Tester t) {
+    Random plain = new Random(42);
+    GameRandom saved = new GameRandom(42);
+    t.checkExpect(saved.nextDouble(), plain.nextDouble());
+    t.checkExpect(saved.nextInt(100), plain.nextInt(100));
+    long state = saved.saveState();
+    double next = saved.nextDouble();
+    saved.nextInt();
+    saved.restoreState(state);
+    t.checkExpect(saved.nextDouble(), next);
+    // a GameRandom made from the seed of one part way through carries on where it is
+    GameRandom resumed = new GameRandom(saved.seed());
+    t.checkExpect(resumed.nextLong(), saved.nextLong());
+    t.checkExpect(resumed.nextInt(360), saved.nextInt(360));
+  }
+
+  void testWorldSnapshot(Tester t) {
+    WorldSnapshot snapshot = new WorldSnapshot();
+    Simulation lists = new Simulation(new GameRandom(9));
+    Simulation store = new Simulation(new GameRandom(9), new BulletStore());
+    for (int i = 0; i < 60; i++) {
+      if (i % 6 == 0) {
+        lists.fire();
+        store.fire();
+      }
+      lists.step();
+      store.step();
+    }
+    t.checkExpect(lists.activeBullets.countBullets() > 0, true);
+
+    // a restored game is the same game, and carries on the same way
+    snapshot.save(lists);
+    Simulation restored = snapshot.restore();
+    t.checkExpect(restored.activeBullets, lists.activeBullets);
+    t.checkExpect(restored.activeShips, lists.activeShips);
+    t.checkExpect(restored.snapshot(), lists.snapshot());
+    snapshot.save(store);
+    Simulation restoredStore = snapshot.restore();
+    t.checkExpect(restoredStore.activeBullets instanceof BulletStore, true);
+    t.checkExpect(restoredStore.snapshot(), store.snapshot());
+    for (int i = 0; i < 40; i++) {
+      lists.step();
+      restored.step();
+      store.step();
+      restoredStore.step();
+    }
+    t.checkExpect(restored.activeBullets, lists.activeBullets);
+    t.checkExpect(restored.activeShips, lists.activeShips);
+    t.checkExpect(restored.snapshot(), lists.snapshot());
+    t.checkExpect(restoredStore.snapshot(), store.snapshot());
+
+    // the buffer is reused while it is big enough, and rejects a foreign layout
+    ByteBuffer first = snapshot.save(lists);
+    t.checkExpect(snapshot.save(restored) == first, true);
+    t.checkExpect(snapshot.save(lists).remaining(), WorldSnapshot.HEADER_BYTES
+        + lists.activeBullets.countBullets() * WorldSnapshot.BULLET_BYTES
+        + lists.activeShips.countShips() * WorldSnapshot.SHIP_BYTES);
+    snapshot.buffer.putInt(0, 0);
+    t.checkException(new IllegalStateException("not a world snapshot"), snapshot, "restore");
+    t.checkException(
+        new IllegalStateException("snapshots need a game that uses a GameRandom"),
+        snapshot, "save", new Simulation(new Random(1)));
+  }
+
+  void testHistogram(Tester t) {
+    Histogram histogram = new Histogram();
+    t.checkExpect(histogram.percentile(0.5), 0L);
+    for (int value = 1; value <= 100; value++) {
+      histogram.record(value);
+    }
+    t.checkExpect(histogram.count(), 100L);
+    t.checkExpect(histogram.max(), 100L);
+    t.checkExpect(histogram.mean(), 50.5);
+    t.checkExpect(histogram.percentile(0.1), 10L);
+    t.checkExpect(histogram.percentile(0.5), 51L);
+    t.checkExpect(histogram.percentile(0.99), 100L);
+    t.checkExpect(Histogram.highestIn(Histogram.bucketOf(1000000)) >= 1000000, true);
+    t.checkExpect(Histogram.highestIn(Histogram.bucketOf(1000000)) < 1125000, true);
+    t.checkExpect(Histogram.bucketOf(Long.MAX_VALUE) < Histogram.BUCKETS, true);
+    histogram.reset();
+    t.checkExpect(histogram.count(), 0L);
+  }
+
+  void testGameMetrics(Tester t) {
+    // one bullet about to hit a ship and one about to leave the screen
+    Simulation sim = new Simulation(0, 0,
+        new ConsLoBullet(new Bullet(100, 100, 2, 90, 2, Color.YELLOW),
+            new ConsLoBullet(new Bullet(100, -20, 2, 270, 1, Color.YELLOW), new MtLoBullet())),
+        new ConsLoShip(new Ship(100, 100, 24, 0, Color.magenta), new MtLoShip()),
+        1, new GameRandom(4));
+    sim.metrics = new GameMetrics();
+    sim.step();
+    t.checkExpect(sim.metrics.getTicks(), 1L);
+    t.checkExpect(sim.metrics.counters[GameMetrics.LIVE_BULLETS].max(), 3L);
+    t.checkExpect(sim.metrics.counters[GameMetrics.CHAIN_BULLETS].max(), 3L);
+    t.checkExpect(sim.metrics.counters[GameMetrics.CULLED_BULLETS].max(), 1L);
+    t.checkExpect(sim.metrics.counters[GameMetrics.COLLISION_TESTS].max(), 1L);
+    t.checkExpect(sim.metrics.phases[GameMetrics.STEP].count(), 1L);
+    new NBullets(sim).makeScene();
+    t.checkExpect(sim.metrics.phases[GameMetrics.MAKE_SCENE].count(), 1L);
+
+    // the counts are the same whichever way the bullets are kept
+    // a ship that stays in the line of fire
+    ILoShip target = new ConsLoShip(new Ship(360, 200, 24, 0, Color.magenta, 0), new MtLoShip());
+    Simulation lists = new Simulation(10, 0, new MtLoBullet(), target, 0, new GameRandom(6));
+    Simulation store = new Simulation(10, 0, new BulletStore(), target, 0, new GameRandom(6));
+    lists.metrics = new GameMetrics();
+    store.metrics = new GameMetrics();
+    for (int i = 0; i < 200; i++) {
+      if (i % 10 == 0) {
+        lists.fire();
+        store.fire();
+      }
+      lists.step();
+      store.step();
+    }
+    for (int i = 0; i < GameMetrics.COUNTERS.length; i++) {
+      // except the tests, since the store tests every bullet against a few ships with
+      // its kernels, without looking for the nearby ones first
+      if (i != GameMetrics.COLLISION_TESTS) {
+        t.checkExpect(store.metrics.counters[i].max(), lists.metrics.counters[i].max());
+        t.checkExpect(store.metrics.counters[i].mean(), lists.metrics.counters[i].mean());
+      }
+    }
+    t.checkExpect(store.metrics.counters[GameMetrics.COLLISION_TESTS].max()
+        >= lists.metrics.counters[GameMetrics.COLLISION_TESTS].max(), true);
+    t.checkExpect(lists.metrics.counters[GameMetrics.CHAIN_BULLETS].max() > 0, true);
+    t.checkExpect(lists.metrics.getColumns().length, lists.metrics.getMax().length);
+
+    // an unmeasured game doesn't read the clock
+    t.checkExpect(new Simulation(new GameRandom(1)).clock(), 0L);
+
+    StringWriter csv = new StringWriter();
+    lists.metrics.addSink(new CsvMetricsSink(csv));
+    lists.metrics.publish();
+    lists.metrics.publish();
+    String[] rows = csv.toString().split("\n");
+    t.checkExpect(rows.length, 3);
+    t.checkExpect(rows[0].startsWith("elapsedMillis,ticks,scoreP50,scoreP99,scoreMax"), true);
+    t.checkExpect(rows[1].split(",").length, 2 + 3 * 12);
+  }
+
+  void testListBuilder(Tester t) {
+    BulletListBuilder bullets = new BulletListBuilder();
+    t.checkExpect(bullets.build(this.bulletList), this.bulletList);
+    bullets.add(this.b1);
+    bullets.add(this.b2);
+    t.checkExpect(bullets.build(new MtLoBullet()),
+        new ConsLoBullet(this.b1, new ConsLoBullet(this.b2, new MtLoBullet())));
+    t.checkExpect(bullets.build(new MtLoBullet()), new MtLoBullet());
+    ShipListBuilder ships = new ShipListBuilder();
+    ships.add(this.s1);
+    t.checkExpect(ships.build(new ConsLoShip(this.s2, new MtLoShip())),
+        new ConsLoShip(this.s1, new ConsLoShip(this.s2, new MtLoShip())));
+  }
+
+  // every list operation runs in a loop, so a million pieces don't overflow the stack
+  void testMillionPieceLists(Tester t) {
+    BulletListBuilder bullets = new BulletListBuilder();
+    ShipListBuilder ships = new ShipListBuilder();
+    for (int i = 0; i < 1000000; i++) {
+      bullets.add(new Bullet(i % NBullets.WIDTH, 100, 2, 90, 1, NBullets.BULLETCOLOR));
+      ships.add(new Ship(i % NBullets.WIDTH, 300, NBullets.SHIPSIZE, 0, NBullets.SHIPCOLOR));
+    }
+    ILoBullet bulletList = bullets.build(new MtLoBullet());
+    ILoShip shipList = ships.build(new MtLoShip());
+    t.checkExpect(bulletList.countBullets(), 1000000);
+    t.checkExpect(shipList.countShips(), 1000000);
+    t.checkExpect(bulletList.listCollidedWithShip(
+        new Ship(360, 300, NBullets.SHIPSIZE, 0, NBullets.SHIPCOLOR)), false);
+    t.checkExpect(shipList.listCollidedWithBullet(
+        new Bullet(360, 100, 2, 90, 1, NBullets.BULLETCOLOR)), false);
+    t.checkExpect(bulletList.countHitShips(new MtLoShip()), 0);
+    t.checkExpect(bulletList.updateBullets(new MtLoShip()).countBullets(), 1000000);
+    t.checkExpect(shipList.updateShips(new MtLoBullet()).countShips() > 0, true);
+    HitSet hits = new HitSet().resolve(bulletList, shipList);
+    t.checkExpect(bulletList.updateBulletsFrom(hits, 0).countBullets(), 1000000);
+    t.checkExpect(this.b1.generateNewBullets(1000000, 0, new MtLoBullet()).countBullets(),
+        1000000);
+  }
+
+  void testPieceVector(Tester t) {
+    ILoBullet vector = new BulletVector();
+    BulletListBuilder list = new BulletListBuilder();
+    for (int i = 0; i < 100; i++) {
+      Bullet bullet = new Bullet(i * 7, 50 + i, 2, i, 1, NBullets.BULLETCOLOR);
+      vector = vector.addBullet(bullet);
+      list.add(bullet);
+    }
+    BulletVector bullets = (BulletVector) vector;
+    t.checkExpect(bullets.countBullets(), 100);
+    t.checkExpect(bullets.get(0).x, 0.0);
+    t.checkExpect(bullets.get(99).x, 693.0);
+
+    // adding a bullet shares every full chunk and leaves the old vector as it was
+    BulletVector more = (BulletVector) bullets.addBullet(this.b1);
+    t.checkExpect(more.chunks[0] == bullets.chunks[0], true);
+    t.checkExpect(more.chunks[2] == bullets.chunks[2], true);
+    t.checkExpect(more.chunks[3] == bullets.chunks[3], false);
+    t.checkExpect(bullets.countBullets(), 100);
+    t.checkExpect(more.get(100), this.b1);
+
+    // the updates match a cons list holding the same bullets in the same order
+    ILoBullet consList = list.build(new MtLoBullet());
+    Ship target = new Ship(350, 100, 24, 0, Color.magenta, 0);
+    ILoShip ships = new ConsLoShip(target, new MtLoShip());
+    HitSet hits = new HitSet().resolve(bullets, ships);
+    t.checkExpect(hits.bulletHits > 0, true);
+    BulletListBuilder updated = new BulletListBuilder();
+    for (Bullet bullet : (BulletVector) bullets.updateBulletsFrom(hits, 0)) {
+      updated.add(bullet);
+    }
+    t.checkExpect(updated.build(new MtLoBullet()), consList.updateBulletsFrom(hits, 0));
+    t.checkExpect(bullets.countHitShips(ships), consList.countHitShips(ships));
+    t.checkExpect(bullets.listCollidedWithShip(target), true);
+
+    // the spliterator splits whole chunks in half until one chunk is left, and streams
+    // see every bullet
+    Spliterator<Bullet> rest = bullets.spliterator();
+    t.checkExpect(rest.trySplit().estimateSize(), 32L);
+    t.checkExpect(rest.estimateSize(), 68L);
+    t.checkExpect(rest.trySplit().estimateSize(), 32L);
+    t.checkExpect(rest.estimateSize(), 36L);
+    t.checkExpect(rest.trySplit(), null);
+    t.checkExpect(bullets.stream().count(), 100L);
+    t.checkExpect(more.parallelStream().count(), 101L);
+
+    // ships spawn onto the end of a vector of ships
+    ShipListBuilder newShips = new ShipListBuilder();
+    newShips.add(this.s1);
+    newShips.add(this.s2);
+    ShipVector shipVector = (ShipVector) new ShipVector().addShips(newShips);
+    t.checkExpect(shipVector.countShips(), 2);
+    t.checkExpect(shipVector.get(1), this.s2);
+  }
+
+  void testVectorGame(Tester t) {
+    Simulation lists = new Simulation(GameConfig.DEFAULT, new GameRandom(8), new MtLoBullet());
+    Simulation vectors = GameRecorder.newGame(GameRecorder.STORAGE_VECTOR, GameConfig.DEFAULT,
+        new GameRandom(8));
+    t.checkExpect(vectors.activeShips instanceof ShipVector, true);
+    for (int i = 0; i < 300; i++) {
+      if (i % 20 == 0) {
+        lists.fire();
+        vectors.fire();
+      }
+      lists.step();
+      vectors.step();
+      t.checkExpect(vectors.snapshot(), lists.snapshot());
+    }
+    WorldSnapshot snapshot = new WorldSnapshot();
+    snapshot.save(vectors);
+    Simulation restored = snapshot.restore();
+    t.checkExpect(restored.activeBullets, vectors.activeBullets);
+    t.checkExpect(restored.activeShips, vectors.activeShips);
+  }
+
+  void testMutableNBullets(Tester t) {
+    Simulation sim = new Simulation(new GameRandom(12));
+    MutableNBullets world = new MutableNBullets(new GameRandom(12));
+    // a ship that stays in the line of fire, so bullets chain
+    sim.activeShips = new ConsLoShip(new Ship(360, 200, 24, 0, Color.magenta, 0),
+        new MtLoShip());
+    world.ships[0] = new Ship(360, 200, 24, 0, Color.magenta, 0);
+    world.shipCount = 1;
+    for (int i = 0; i < 400; i++) {
+      if (i % 15 == 0) {
+        sim.handleKey(" ");
+        world.onKeyEvent(" ");
+      }
+      sim.step();
+      world.onTick();
+      t.checkExpect(world.bulletList(), sim.activeBullets);
+      t.checkExpect(world.shipList(), sim.activeShips);
+      t.checkExpect(world.shipsDestroyed, sim.shipsDestroyed);
+      t.checkExpect(world.isOver(), sim.isOver());
+    }
+    t.checkExpect(world.shipsDestroyed > 0, true);
+    // pieces that left the game were reused instead of allocated
+    t.checkExpect(world.pool.bulletsCreated < world.shipsDestroyed + 10, true);
+    // and with steps four ticks long, tested along the whole step
+    GameConfig stepped = new GameConfig(40, 1, 8, 12).withSteps(4);
+    Simulation steppedSim = new Simulation(stepped, new GameRandom(12), new MtLoBullet());
+    MutableNBullets steppedWorld = new MutableNBullets(stepped, new GameRandom(12));
+    for (int i = 0; i < 300; i++) {
+      if (i % 4 == 0) {
+        steppedSim.handleKey(" ");
+        steppedWorld.onKeyEvent(" ");
+      }
+      steppedSim.step();
+      steppedWorld.onTick();
+      t.checkExpect(steppedWorld.bulletList(), steppedSim.activeBullets);
+      t.checkExpect(steppedWorld.shipList(), steppedSim.activeShips);
+    }
+    t.checkExpect(steppedWorld.shipsDestroyed, steppedSim.shipsDestroyed);
+    t.checkExpect(steppedWorld.shipsDestroyed > 0, true);
+  }
+
+  void testPiecePool(Tester t) {
+    PiecePool pool = new PiecePool();
+    Bullet bullet = pool.bullet(1, 2, 3, 90, 1, Color.YELLOW, GameConfig.DEFAULT);
+    t.checkExpect(bullet, new Bullet(1, 2, 3, 90, 1, Color.YELLOW));
+    pool.free(bullet);
+    Bullet reused = pool.bullet(5, 6, 4, 180, 2, Color.RED, GameConfig.DEFAULT);
+    t.checkExpect(reused == bullet, true);
+    t.checkExpect(reused, new Bullet(5, 6, 4, 180, 2, Color.RED));
+    t.checkExpect(pool.bulletsCreated, 1);
+    Ship ship = pool.ship(0, 50, 24, 0, Color.magenta, GameConfig.DEFAULT);
+    pool.free(ship);
+    t.checkExpect(pool.ship(720, 80, 24, 180, Color.magenta, GameConfig.DEFAULT),
+        new Ship(720, 80, 24, 180, Color.magenta));
+    t.checkExpect(pool.shipsCreated, 1);
+  }
+
   void testCollidedWithBullets(Tester t) {
     t.checkExpect(this.s3.collidedWithBullets(this.bulletList), true);
     t.checkExpect(this.s2.collidedWithBullets(this.bulletList), false);
@@ -374,4 +1076,989 @@ class ExamplesNBullets {
     t.checkExpect(this.mtBulletList.isEmpty(), true);
     t.checkExpect(this.bulletList.isEmpty(), false);
   }
+
+  void testSpatialGrid(Tester t) {
+    SpatialGrid shipGrid = new SpatialGrid(2);
+    this.shipList2.addShipsTo(shipGrid);
+    t.checkExpect(shipGrid.count, 9);
+    t.checkExpect(this.b2.collidedWithAny(shipGrid), true);
+    t.checkExpect(this.b1.collidedWithAny(shipGrid), this.shipList2.listCollidedWithBullet(this.b1));
+    t.checkExpect(this.b3.collidedWithAny(shipGrid), this.shipList2.listCollidedWithBullet(this.b3));
+    t.checkExpect(this.b4.collidedWithAny(shipGrid), this.shipList2.listCollidedWithBullet(this.b4));
+    t.checkExpect(this.b6.collidedWithAny(shipGrid), false);
+    t.checkExpect(this.b1.collidedWithAny(new SpatialGrid()), false);
+    shipGrid.clear();
+    t.checkExpect(this.b2.collidedWithAny(shipGrid), false);
+    t.checkExpect(shipGrid.colOf(-50), 0);
+    t.checkExpect(shipGrid.colOf(NBullets.WIDTH + 50), SpatialGrid.COLS - 1);
+    t.checkExpect(shipGrid.rowOf(NBullets.HEIGHT / 2), NBullets.HEIGHT / 2 / SpatialGrid.CELLSIZE);
+  }
+
+  void testBulletStore(Tester t) {
+    BulletStore store = new BulletStore(GameConfig.DEFAULT, 1);
+    t.checkExpect(store.isEmpty(), true);
+    t.checkExpect(store.addBullet(this.b2), store);
+    store.addBullet(this.b3);
+    store.addBullet(this.b4);
+    t.checkExpect(store.count, 3);
+    t.checkExpect(store.paletteSize, 1);
+    // more colors than a byte can index still read back as the colors they were
+    BulletStore colors = new BulletStore();
+    for (int rgb = 0; rgb < 300; rgb++) {
+      colors.addBullet(new Bullet(100, 100, 2, 90, 1, new Color(rgb)));
+    }
+    colors.addBullet(new Bullet(100, 100, 2, 90, 1, new Color(299)));
+    t.checkExpect(colors.paletteSize, 300);
+    ByteBuffer written = ByteBuffer.allocate(colors.count * (5 * 8 + 3 * 4));
+    colors.writeBullets(written);
+    t.checkExpect(written.getInt(299 * (5 * 8 + 3 * 4) + 5 * 8 + 2 * 4), new Color(299).getRGB());
+    t.checkExpect(written.getInt(300 * (5 * 8 + 3 * 4) + 5 * 8 + 2 * 4), new Color(299).getRGB());
+    t.checkExpect(store.listCollidedWithShip(this.s9), true);
+    t.checkExpect(store.listCollidedWithShip(this.s4), false);
+    t.checkExpect(store.countHitShips(this.shipList2), 1);
+    t.checkExpect(store.drawBullets(this.ws), this.bulletList3.drawBullets(this.ws)
+        .placeImageXY(this.i2, -1, 0));
+    // b2 splits in two, b3 moves right, and b4 is off screen so b2's second bullet takes its place
+    t.checkExpect(store.updateBullets(this.shipList2), store);
+    t.checkExpect(store.count, 3);
+    t.checkExpect(store.xs[0], 2.0);
+    t.checkExpect(store.directions[0], 360.0);
+    t.checkExpect(store.sizes[0], 12);
+    t.checkExpect(store.colSoFars[0], 2);
+    t.checkExpect(store.xs[1], 130.0);
+    t.checkExpect(store.directions[2], 180.0);
+    t.checkExpect(store.colSoFars[2], 2);
+  }
+
+  void testParallelBulletStore(Tester t) {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    BulletStore sequential = new BulletStore();
+    BulletStore parallel = new BulletStore().parallelAbove(1, pool);
+    ILoShip ships = new MtLoShip();
+    Random rand = new Random(11);
+    for (int i = 0; i < 60; i++) {
+      ships = new ConsLoShip(new Ship(rand.nextDouble() * NBullets.WIDTH,
+          rand.nextDouble() * NBullets.HEIGHT, NBullets.SHIPSIZE, 0, NBullets.SHIPCOLOR), ships);
+    }
+    for (int i = 0; i < 3 * BulletStore.CHUNK + 100; i++) {
+      double x = rand.nextDouble() * NBullets.WIDTH;
+      double y = rand.nextDouble() * NBullets.HEIGHT;
+      int direction = rand.nextInt(360);
+      sequential.add(x, y, 2, direction, 1 + rand.nextInt(3), NBullets.BULLETCOLOR);
+      parallel.add(x, y, 2, direction, sequential.colSoFars[i], NBullets.BULLETCOLOR);
+    }
+    t.checkExpect(parallel.runsInParallel(), true);
+    t.checkExpect(sequential.runsInParallel(), false);
+    for (int tick = 0; tick < 3; tick++) {
+      HitSet sequentialHits = new HitSet().resolve(sequential, ships);
+      HitSet parallelHits = new HitSet().resolve(parallel, ships);
+      t.checkExpect(parallelHits.bulletHits, sequentialHits.bulletHits);
+      t.checkExpect(parallelHits.shipHits, sequentialHits.shipHits);
+      ILoShip nextShips = ships.updateShipsFrom(sequentialHits, 0);
+      t.checkExpect(ships.updateShipsFrom(parallelHits, 0), nextShips);
+      sequential.updateBulletsFrom(sequentialHits, 0);
+      parallel.updateBulletsFrom(parallelHits, 0);
+      ships = nextShips;
+    }
+    pool.shutdown();
+    t.checkExpect(parallel.count, sequential.count);
+    // to the bit: checkExpect allows doubles a tolerance, and Arrays.equals compares
+    // them as Double.equals does, by their bits
+    int count = sequential.count;
+    t.checkExpect(Arrays.equals(Arrays.copyOf(parallel.xs, count),
+        Arrays.copyOf(sequential.xs, count)), true);
+    t.checkExpect(Arrays.equals(Arrays.copyOf(parallel.ys, count),
+        Arrays.copyOf(sequential.ys, count)), true);
+    t.checkExpect(Arrays.equals(Arrays.copyOf(parallel.dxs, count),
+        Arrays.copyOf(sequential.dxs, count)), true);
+    t.checkExpect(Arrays.equals(Arrays.copyOf(parallel.dys, count),
+        Arrays.copyOf(sequential.dys, count)), true);
+    t.checkExpect(Arrays.copyOf(parallel.sizes, count), Arrays.copyOf(sequential.sizes, count));
+    t.checkExpect(Arrays.copyOf(parallel.colSoFars, count),
+        Arrays.copyOf(sequential.colSoFars, count));
+  }
+
+  void testAddBullet(Tester t) {
+    t.checkExpect(this.mtBulletList.addBullet(this.b2), new ConsLoBullet(this.b2, this.mtBulletList));
+    t.checkExpect(this.bulletList3.addBullet(this.b1),
+        new ConsLoBullet(this.b1, this.bulletList3));
+  }
+
+  void testHitSet(Tester t) {
+    HitSet hits = new HitSet().resolve(this.bulletList6, this.shipList2);
+    t.checkExpect(hits.bulletHits, this.bulletList6.countHitShips(this.shipList2));
+    t.checkExpect(hits.bulletHit(3), true);
+    t.checkExpect(hits.bulletHit(6), true);
+    t.checkExpect(hits.bulletHit(0), false);
+    t.checkExpect(hits.bulletHit(500), false);
+    t.checkExpect(hits.shipHits, 3);
+    t.checkExpect(hits.shipHit(2), true);
+    t.checkExpect(hits.shipHit(4), true);
+    t.checkExpect(hits.shipHit(8), true);
+    t.checkExpect(hits.shipHit(0), false);
+    hits.markBullet(200);
+    t.checkExpect(hits.bulletHit(200), true);
+    t.checkExpect(hits.resolve(this.mtBulletList, this.shipList2).bulletHit(200), false);
+    t.checkExpect(hits.bulletHits, 0);
+  }
+
+  void testUpdateFromHits(Tester t) {
+    HitSet hits = new HitSet().resolve(this.bulletList, this.shipList2);
+    t.checkExpect(this.bulletList.updateBulletsFrom(hits, 0), this.bulletList5);
+    t.checkExpect(hits.bulletHits, this.bulletList.countHitShips(this.shipList2));
+    t.checkExpect(this.shipList.updateShipsFrom(
+        new HitSet().resolve(this.bulletList, this.shipList), 0), this.shipList1);
+    t.checkExpect(this.shipList3.updateShipsFrom(
+        new HitSet().resolve(this.bulletList, this.shipList3), 0), this.shipList1);
+  }
+
+  void testSimulationStep(Tester t) {
+    Simulation sim = new Simulation(3, 5, this.bulletList, this.shipList2, 0, new Random(1));
+    sim.step();
+    t.checkExpect(sim.activeBullets, this.bulletList5);
+    t.checkExpect(sim.shipsDestroyed, 6);
+    t.checkExpect(sim.currentTicks, 1);
+    t.checkExpect(sim.tick, 1L);
+    t.checkExpect(sim.activeShips.countShips(), 6);
+    sim.currentTicks = sim.config.spawnTicks - 1;
+    Random expected = new Random(1);
+    sim.randGen = new Random(1);
+    sim.step();
+    t.checkExpect(sim.currentTicks, 0);
+    t.checkExpect(sim.activeShips.countShips() >= 6, true);
+    t.checkExpect(sim.activeShips.countShips() > 6, expected.nextDouble() <= .6);
+  }
+
+  void testSimulationFire(Tester t) {
+    Simulation sim = new Simulation(1, 0, new MtLoBullet(), new MtLoShip(), 0, new Random(3));
+    t.checkExpect(sim.isOver(), false);
+    t.checkExpect(sim.fire(), true);
+    t.checkExpect(sim.activeBullets, new ConsLoBullet(
+        new Bullet(NBullets.WIDTH / 2, NBullets.HEIGHT, NBullets.BULLETSIZE, 270, 1,
+            NBullets.BULLETCOLOR), new MtLoBullet()));
+    t.checkExpect(sim.fire(), false);
+    t.checkExpect(sim.bulletsLeft, 0);
+    t.checkExpect(sim.isOver(), false);
+    t.checkExpect(sim.snapshot(), new SimulationSnapshot(0, 0, 0, 1, 0, false));
+    sim.step();
+    t.checkExpect(sim.snapshot().tick, 1L);
+    while (!sim.isOver() && sim.tick < 2000) {
+      sim.step();
+    }
+    t.checkExpect(sim.snapshot().over, true);
+    t.checkExpect(sim.snapshot().liveBullets, 0);
+  }
+
+  void testOnKeyEvent(Tester t) {
+    NBullets world = new NBullets(2);
+    t.checkExpect(((NBullets) world.onKeyEvent("a")).sim.bulletsLeft, 2);
+    NBullets fired = (NBullets) world.onKeyEvent(" ");
+    t.checkExpect(fired.sim.bulletsLeft, 1);
+    t.checkExpect(fired.sim.activeBullets.countBullets(), 1);
+    // the world that handled the key is left as it was
+    t.checkExpect(world.sim.bulletsLeft, 2);
+    t.checkExpect(world.sim.activeBullets.countBullets(), 0);
+  }
+
+  void testOnTick(Tester t) {
+    NBullets world = new NBullets(new Simulation(new GameRandom(6)));
+    for (int tick = 0; tick < 40; tick++) {
+      world = (NBullets) world.onKeyEvent(" ");
+      world = (NBullets) world.onTick();
+    }
+    NBullets next = (NBullets) world.onTick();
+    t.checkExpect(next.sim.tick, 41L);
+    t.checkExpect(world.sim.tick, 40L);
+    // the world that ticked is left as it was, random stream and all, so ticking it
+    // again gives the same world
+    NBullets again = (NBullets) world.onTick();
+    t.checkExpect(again.sim.activeBullets, next.sim.activeBullets);
+    t.checkExpect(again.sim.activeShips, next.sim.activeShips);
+    t.checkExpect(again.sim.shipsDestroyed, next.sim.shipsDestroyed);
+    t.checkExpect(again.sim.hits == world.sim.hits, true);
+
+    // so is a world seeded with a plain Random, whose stream is copied rather than shared
+    NBullets seeded = (NBullets) new NBullets(new Random(1)).onKeyEvent(" ");
+    NBullets first = seeded;
+    NBullets second = seeded;
+    for (int tick = 0; tick < 200; tick++) {
+      first = (NBullets) first.onTick();
+    }
+    for (int tick = 0; tick < 200; tick++) {
+      second = (NBullets) second.onTick();
+    }
+    t.checkExpect(second.sim.activeShips, first.sim.activeShips);
+    t.checkExpect(second.sim.activeBullets, first.sim.activeBullets);
+    t.checkExpect(seeded.sim.tick, 0L);
+    t.checkExpect(seeded.sim.activeBullets,
+        new ConsLoBullet(new Bullet(NBullets.WIDTH / 2, NBullets.HEIGHT, NBullets.BULLETSIZE,
+            270, 1, NBullets.BULLETCOLOR), new MtLoBullet()));
+
+    // a BulletStore updates in place, so it is played with MutableNBullets instead
+    t.checkConstructorException(
+        new IllegalArgumentException(
+            "a BulletStore updates in place, so play it with MutableNBullets"),
+        "NBullets", new Simulation(new GameRandom(6), new BulletStore()), null);
+  }
+
+  void testCount(Tester t) {
+    t.checkExpect(this.bulletList6.countBullets(), 7);
+    t.checkExpect(this.mtBulletList.countBullets(), 0);
+    t.checkExpect(this.shipList2.countShips(), 9);
+    t.checkExpect(this.mtShipList.countShips(), 0);
+  }
+
+  void testBatchRunner(Tester t) {
+    List<GameConfig> configs = BatchRunner.grid(new int[] {3, 5}, new double[] {0.5},
+        new int[] {8, 12}, new int[] {12});
+    t.checkExpect(configs.size(), 4);
+    t.checkExpect(configs.get(3).bulletSpeed, 12);
+    BatchRunner runner = new BatchRunner(configs, 6, 7, 10, 5000);
+    BatchReport oneThread = runner.run(1);
+    BatchReport fourThreads = runner.run(4);
+    t.checkExpect(oneThread.games(), 24);
+    for (int i = 0; i < configs.size(); i++) {
+      t.checkExpect(fourThreads.results.get(i).scores, oneThread.results.get(i).scores);
+      t.checkExpect(fourThreads.results.get(i).ticks, oneThread.results.get(i).ticks);
+    }
+  }
+
+  void testContactTime(Tester t) {
+    // already touching at the start of the step
+    t.checkExpect(AGamePiece.contactTime(100, 120, 0, -64, 2, 100, 100, 0, 0, 24), 0.0);
+    // reaches the ship three quarters of the way from 200 to 120
+    t.checkExpect(AGamePiece.contactTime(100, 200, 0, -80, 2, 100, 100, 0, 0, 24), 0.925);
+    t.checkExpect(AGamePiece.contactTime(100, 200, 0, -64, 2, 100, 100, 0, 0, 24),
+        AGamePiece.NO_CONTACT);
+    t.checkExpect(AGamePiece.contactTime(100, 200, 0, 80, 2, 100, 100, 0, 0, 24),
+        AGamePiece.NO_CONTACT);
+    t.checkExpect(AGamePiece.contactTime(100, 200, 0, 0, 2, 100, 100, 0, 0, 24),
+        AGamePiece.NO_CONTACT);
+    // both ends of the step miss, but the middle passes through the ship
+    t.checkExpect(AGamePiece.circlesCollided(100, 140, 2, 100, 100, 24), false);
+    t.checkExpect(AGamePiece.circlesCollided(100, 60, 2, 100, 100, 24), false);
+    t.checkExpect(AGamePiece.contactTime(100, 140, 0, -80, 2, 100, 100, 0, 0, 24), 0.175);
+    // a ship crossing the bullet's path
+    t.checkExpect(AGamePiece.contactTime(100, 100, 0, 0, 2, 20, 100, 80, 0, 24), 0.675);
+    t.checkExpect(AGamePiece.contactTime(100, 140, 0, -80, 2, 200, 100, 0, 0, 24),
+        AGamePiece.NO_CONTACT);
+  }
+
+  void testSweptCollisions(Tester t) {
+    GameConfig stepped = GameConfig.DEFAULT.withSteps(8);
+    GameConfig fast = new GameConfig(10, 1, 64, NBullets.MAX_BULLETSIZE);
+    Ship ship = new Ship(360, 100, NBullets.SHIPSIZE, 0, NBullets.SHIPCOLOR, 0);
+    Bullet steppedBullet = new Bullet(360, 140, 2, 270, 1, NBullets.BULLETCOLOR, stepped);
+    Bullet fastBullet = new Bullet(360, 140, 2, 270, 1, NBullets.BULLETCOLOR, fast);
+    ILoShip ships = new ConsLoShip(ship, new MtLoShip());
+    t.checkExpect(steppedBullet.dy, -64.0);
+    t.checkExpect(fastBullet.collidedWith(ship), false);
+    t.checkExpect(steppedBullet.collidedWith(ship), true);
+    t.checkExpect(ship.collidedWith(steppedBullet), true);
+    t.checkExpect(new ConsLoBullet(fastBullet, new MtLoBullet()).countHitShips(ships), 0);
+    t.checkExpect(new ConsLoBullet(steppedBullet, new MtLoBullet()).countHitShips(ships), 1);
+    t.checkExpect(ships.updateShips(new ConsLoBullet(steppedBullet, new MtLoBullet())),
+        new MtLoShip());
+    t.checkExpect(ships.updateShips(new ConsLoBullet(fastBullet, new MtLoBullet())),
+        new ConsLoShip(ship.updateShip(), new MtLoShip()));
+    // a bullet hitting a ship a quarter of the way through an 8-tick step splits a
+    // quarter of the way along, and its bullets move for the 5 ticks left after the split
+    t.checkExpect(stepped.splitLead(0.25), 0.625);
+    t.checkExpect(GameConfig.DEFAULT.splitLead(0.25), 0.0);
+    t.checkInexact(steppedBullet.chainBullet(1, 90, 0.25).x, 360.0, 0.001);
+    t.checkExpect(steppedBullet.chainBullet(1, 90, 0.25).y, 124.0 + 0.625 * 64);
+    t.checkExpect(steppedBullet.chainBullet(1, 90, 0), steppedBullet.chainBullet(1, 90));
+
+    // the bullet fired up the middle passes through a still ship halfway between two of
+    // its positions, y = 213 after its third step and y = 149 after its fourth, unless
+    // collisions are swept; then it splits where it reaches the ship, 26 pixels below it,
+    // and the bullets it splits into move sideways for the rest of the step
+    for (byte storage = 0; storage <= 2; storage++) {
+      Simulation swept = GameRecorder.newGame(storage, stepped, new GameRandom(1));
+      Simulation tunneled = GameRecorder.newGame(storage, fast, new GameRandom(1));
+      Ship still = new Ship(360, 181, NBullets.SHIPSIZE, 0, NBullets.SHIPCOLOR, 0);
+      ShipListBuilder wall = new ShipListBuilder();
+      wall.add(still);
+      swept.activeShips = swept.activeShips.addShips(wall);
+      wall.add(still);
+      tunneled.activeShips = tunneled.activeShips.addShips(wall);
+      swept.fire();
+      tunneled.fire();
+      for (int step = 0; step < 3; step++) {
+        swept.step();
+        tunneled.step();
+      }
+      t.checkExpect(swept.shipsDestroyed, 0);
+      swept.step();
+      tunneled.step();
+      t.checkExpect(swept.shipsDestroyed, 1);
+      t.checkExpect(tunneled.shipsDestroyed, 0);
+      t.checkExpect(swept.activeBullets.countBullets(), 2);
+      ByteBuffer bullets = ByteBuffer.allocate(2 * WorldSnapshot.BULLET_BYTES);
+      swept.activeBullets.writeBullets(bullets);
+      t.checkInexact(bullets.getDouble(0), 410.0, 0.001);
+      t.checkInexact(bullets.getDouble(8), 207.0, 0.001);
+      t.checkInexact(bullets.getDouble(WorldSnapshot.BULLET_BYTES), 310.0, 0.001);
+    }
+  }
+
+  void testStepMultiplier(Tester t) {
+    GameConfig stepped = GameConfig.DEFAULT.withSteps(4);
+    t.checkExpect(stepped.stepMultiplier, 4);
+    t.checkExpect(stepped.sweptCollisions, true);
+    t.checkExpect(stepped.spawnTicks, GameConfig.DEFAULT.spawnTicks / 4);
+    t.checkExpect(stepped.velocityX(0), 4.0 * NBullets.BULLETSPEED);
+    t.checkExpect(stepped.velocityY(45.5), 4 * GameConfig.DEFAULT.velocityY(45.5));
+    t.checkExpect(stepped.shipVelocity(180), 4 * NBullets.SHIPSPEED * Math.cos(180));
+    t.checkExpect(GameConfig.DEFAULT.shipVelocity(180), new Ship(0, 0, 1, 180, Color.RED).dx);
+    t.checkExpect(GameConfig.DEFAULT.withSteps(8).spawnTicks, 4);
+    t.checkExpect(GameConfig.of(10, 1, 8, NBullets.MAX_BULLETSIZE, 1, false, false, .6),
+        GameConfig.DEFAULT);
+    t.checkConstructorException(new IllegalArgumentException("a step must cover at least one tick"),
+        "GameConfig", 10, 1.0, 8, 12, 0, false);
+
+    // a stepped game survives a snapshot with its settings
+    Simulation sim = new Simulation(stepped, new GameRandom(3), new MtLoBullet());
+    for (int step = 0; step < 50; step++) {
+      if (step % 4 == 0) {
+        sim.fire();
+      }
+      sim.step();
+    }
+    WorldSnapshot snapshot = new WorldSnapshot();
+    snapshot.save(sim);
+    Simulation restored = snapshot.restore();
+    t.checkExpect(restored.config.stepMultiplier, 4);
+    t.checkExpect(restored.config.sweptCollisions, true);
+    t.checkExpect(restored.activeShips, sim.activeShips);
+
+    // a batch at 4 ticks a step plays a quarter of the steps for the same game time
+    List<GameConfig> configs = BatchRunner.withSteps(
+        BatchRunner.grid(new int[] {5}, new double[] {1}, new int[] {8}, new int[] {12}), 4);
+    BatchReport report = new BatchRunner(configs, 4, 7, 12, 400).run(1);
+    for (long ticks : report.results.get(0).ticks) {
+      t.checkExpect(ticks % 4, 0L);
+      t.checkExpect(ticks <= 400, true);
+    }
+  }
+
+  void testFixedPoint(Tester t) {
+    t.checkExpect(FixedPoint.toFixed(1.5), 98304);
+    t.checkExpect(FixedPoint.toDouble(98304), 1.5);
+    t.checkExpect(FixedPoint.snap(0.1), 6554.0 / 65536);
+    // a bullet of size 2 and a ship of size 24 touch 26 pixels apart, and not 1/65536
+    // of a pixel further
+    t.checkExpect(FixedPoint.circlesCollided(0, 0, 2, 26 << 16, 0, 24), true);
+    t.checkExpect(FixedPoint.circlesCollided(0, 0, 2, (26 << 16) + 1, 0, 24), false);
+    t.checkExpect(FixedPoint.isOffScreen(FixedPoint.WIDTH, 0), false);
+    t.checkExpect(FixedPoint.isOffScreen(FixedPoint.WIDTH + 1, 0), true);
+    t.checkExpect(FixedPoint.isOffScreen(0, -1), true);
+
+    GameConfig fixed = GameConfig.DEFAULT.withFixedPoint();
+    t.checkExpect(fixed.fixedDxTable[0], 8 << 16);
+    t.checkExpect(fixed.fixedDxTable[90], 0);
+    t.checkExpect(fixed.fixedDyTable[270], -8 << 16);
+    t.checkExpect(fixed.dxTable[120], FixedPoint.toDouble(fixed.fixedDxTable[120]));
+    t.checkExpect(fixed.velocityY(45.5), FixedPoint.snap(fixed.velocityY(45.5)));
+    t.checkExpect(fixed.shipVelocity(180), FixedPoint.snap(GameConfig.DEFAULT.shipVelocity(180)));
+    t.checkExpect(GameConfig.DEFAULT.dxTable[120], Math.cos(Math.toRadians(120)) * 8);
+    t.checkExpect(fixed.flags(), GameConfig.FIXED_POINT);
+    t.checkExpect(fixed.withSteps(2).flags(), (byte) (GameConfig.SWEPT | GameConfig.FIXED_POINT));
+    t.checkExpect(GameConfig.of(10, 1, 8, 12, 1, GameConfig.DEFAULT.flags(), .6),
+        GameConfig.DEFAULT);
+    Bullet bullet = new Bullet(720, 100, 2, 0, 1, NBullets.BULLETCOLOR, fixed);
+    t.checkExpect(bullet.isOffScreen(), false);
+    t.checkExpect(bullet.updateBullet().isOffScreen(), true);
+    t.checkExpect(bullet.collidedWith(new Ship(720, 126, 24, 0, NBullets.SHIPCOLOR, 0)), true);
+    t.checkExpect(bullet.collidedWith(new Ship(720, 126.0001, 24, 0, NBullets.SHIPCOLOR, 0)),
+        false);
+
+    // a fixed-point game keeps every coordinate on the 1/65536 grid, in every storage and
+    // with steps of one tick or several, and survives a snapshot with its settings
+    GameConfig[] configs = new GameConfig[] {
+        new GameConfig(40, 1, 8, 12).withFixedPoint(),
+        new GameConfig(40, 1, 8, 12).withSteps(4).withFixedPoint()};
+    for (GameConfig config : configs) {
+      int[] destroyed = new int[3];
+      for (byte storage = 0; storage <= 2; storage++) {
+        Simulation sim = GameRecorder.newGame(storage, config, new GameRandom(8));
+        // a ship that stays in the line of fire, so bullets chain
+        ShipListBuilder target = new ShipListBuilder();
+        target.add(new Ship(360, 200, 24, 0, Color.magenta, 0));
+        sim.activeShips = sim.activeShips.addShips(target);
+        for (int step = 0; step < 300; step++) {
+          if (step % 4 == 0) {
+            sim.fire();
+          }
+          sim.step();
+        }
+        destroyed[storage] = sim.shipsDestroyed;
+        WorldSnapshot snapshot = new WorldSnapshot();
+        ByteBuffer saved = snapshot.save(sim);
+        t.checkExpect(this.onFixedGrid(saved), true);
+        Simulation restored = snapshot.restore();
+        t.checkExpect(restored.config.flags(), config.flags());
+        t.checkExpect(restored.activeShips, sim.activeShips);
+      }
+      t.checkExpect(destroyed[0] > 0, true);
+      t.checkExpect(destroyed[1], destroyed[0]);
+      t.checkExpect(destroyed[2], destroyed[0]);
+    }
+
+    // a fixed-point BulletStore moves and tests its bullets on 16.16 values that stay in
+    // step with its doubles, and with too many ships for the kernels, on the grid, plays
+    // the same as lists
+    Simulation[] games = new Simulation[2];
+    boolean inStep = true;
+    for (byte storage = GameRecorder.STORAGE_LISTS; storage <= GameRecorder.STORAGE_STORE;
+        storage++) {
+      Simulation sim = GameRecorder.newGame(storage, configs[0], new GameRandom(8));
+      ShipListBuilder targets = new ShipListBuilder();
+      for (int k = 0; k <= BulletStore.KERNEL_SHIPS; k++) {
+        targets.add(new Ship(40 + 40 * k, 200, 24, 0, Color.magenta, 0));
+      }
+      sim.activeShips = sim.activeShips.addShips(targets);
+      for (int step = 0; step < 300; step++) {
+        if (step % 4 == 0) {
+          sim.fire();
+        }
+        sim.step();
+        if (storage == GameRecorder.STORAGE_STORE) {
+          inStep = inStep && this.fixedInStep((BulletStore) sim.activeBullets);
+        }
+      }
+      games[storage] = sim;
+    }
+    t.checkExpect(inStep, true);
+    t.checkExpect(games[1].shipsDestroyed > 0, true);
+    t.checkExpect(games[1].shipsDestroyed, games[0].shipsDestroyed);
+    t.checkExpect(games[1].activeBullets.countBullets(), games[0].activeBullets.countBullets());
+    t.checkExpect(games[1].activeShips, games[0].activeShips);
+    t.checkExpect(new BulletStore().fixedXs, null);
+  }
+
+  // determines if the 16.16 values of every bullet in the given fixed-point store are
+  // its doubles exactly
+  boolean fixedInStep(BulletStore store) {
+    boolean inStep = true;
+    for (int i = 0; i < store.count; i++) {
+      inStep = inStep && FixedPoint.toDouble(store.fixedXs[i]) == store.xs[i]
+          && FixedPoint.toDouble(store.fixedYs[i]) == store.ys[i]
+          && FixedPoint.toDouble(store.fixedDxs[i]) == store.dxs[i]
+          && FixedPoint.toDouble(store.fixedDys[i]) == store.dys[i];
+    }
+    return inStep;
+  }
+
+  // determines if every position and movement in the given saved snapshot is a whole
+  // number of 1/65536ths of a pixel
+  boolean onFixedGrid(ByteBuffer saved) {
+    ByteBuffer in = saved.duplicate();
+    in.position(WorldSnapshot.HEADER_BYTES - 8);
+    int bullets = in.getInt();
+    int ships = in.getInt();
+    boolean onGrid = true;
+    for (int i = 0; i < bullets; i++) {
+      onGrid = onGrid && this.onFixedGrid(in.getDouble()) && this.onFixedGrid(in.getDouble());
+      in.getDouble();
+      onGrid = onGrid && this.onFixedGrid(in.getDouble()) && this.onFixedGrid(in.getDouble());
+      in.position(in.position() + 12);
+    }
+    for (int i = 0; i < ships; i++) {
+      onGrid = onGrid && this.onFixedGrid(in.getDouble()) && this.onFixedGrid(in.getDouble());
+      in.getDouble();
+      onGrid = onGrid && this.onFixedGrid(in.getDouble());
+      in.position(in.position() + 8);
+    }
+    return onGrid;
+  }
+
+  // determines if the given coordinate is a whole number of 1/65536ths of a pixel
+  boolean onFixedGrid(double coordinate) {
+    return FixedPoint.snap(coordinate) == coordinate;
+  }
+
+  void testPieceKernels(Tester t) {
+    IPieceKernels scalar = new ScalarKernels();
+    double[] xs = new double[] {0, 10, 720, 721, -1, 300, 310, 500};
+    double[] ys = new double[] {0, 10, 405, 10, 10, 406, 200, 200};
+    double[] dxs = new double[] {1, 1, 1, 1, 1, 1, 1, 1};
+    double[] dys = new double[] {2, 2, 2, 2, 2, 2, 2, 2};
+    int[] sizes = new int[] {2, 2, 2, 2, 2, 2, 4, 2};
+    long[] mask = new long[] {-1L};
+    // only slots 1 to 6 move, and only their bits change
+    scalar.markOffScreen(xs, ys, 1, 7, mask);
+    t.checkExpect(mask[0], 0xFFFFFFFFFFFFFFFFL & ~0x46L);
+    scalar.move(xs, ys, dxs, dys, 1, 7);
+    t.checkExpect(xs[0], 0.0);
+    t.checkExpect(xs[6], 311.0);
+    t.checkExpect(ys[7], 200.0);
+    // a bullet of size 4 at (311, 202) touches the ships 28 and 26 pixels away, and no other
+    mask[0] = 0;
+    t.checkExpect(scalar.markCollisions(xs, ys, sizes, 0, 8, new double[] {311, 600, 337},
+        new double[] {230, 100, 202}, new int[] {24, 24, 24}, 3, mask), 0x5L);
+    t.checkExpect(mask[0], 0x40L);
+
+    // the kernels the game runs with give exactly what the scalar ones do, across words
+    // and with ranges that start and end part way through a vector
+    Random rand = new Random(21);
+    int size = 1000;
+    double[] xs1 = new double[size];
+    double[] ys1 = new double[size];
+    double[] dxs1 = new double[size];
+    double[] dys1 = new double[size];
+    int[] sizes1 = new int[size];
+    for (int i = 0; i < size; i++) {
+      xs1[i] = rand.nextDouble() * (NBullets.WIDTH + 40) - 20;
+      ys1[i] = rand.nextDouble() * (NBullets.HEIGHT + 40) - 20;
+      dxs1[i] = rand.nextDouble() * 16 - 8;
+      dys1[i] = rand.nextDouble() * 16 - 8;
+      sizes1[i] = 2 + 2 * rand.nextInt(6);
+    }
+    double[] xs2 = xs1.clone();
+    double[] ys2 = ys1.clone();
+    double[] circleXs = new double[] {100, 360.5, 700};
+    double[] circleYs = new double[] {50, 200, 400.25};
+    int[] circleSizes = new int[] {24, 24, 30};
+    long[] mask1 = new long[16];
+    long[] mask2 = new long[16];
+    scalar.move(xs1, ys1, dxs1, dys1, 3, 997);
+    PieceKernels.BEST.move(xs2, ys2, dxs1, dys1, 3, 997);
+    t.checkExpect(xs2, xs1);
+    t.checkExpect(ys2, ys1);
+    scalar.markOffScreen(xs1, ys1, 5, 990, mask1);
+    PieceKernels.BEST.markOffScreen(xs2, ys2, 5, 990, mask2);
+    t.checkExpect(mask2, mask1);
+    Arrays.fill(mask1, 0);
+    Arrays.fill(mask2, 0);
+    t.checkExpect(PieceKernels.BEST.markCollisions(xs2, ys2, sizes1, 1, 999,
+        circleXs, circleYs, circleSizes, 3, mask2),
+        scalar.markCollisions(xs1, ys1, sizes1, 1, 999,
+            circleXs, circleYs, circleSizes, 3, mask1));
+    t.checkExpect(mask2, mask1);
+
+    // runs too short for vectors go through the scalar kernels, whichever the store has
+    t.checkExpect(PieceKernels.forRun(PieceKernels.BEST, 64).name(), "scalar");
+    t.checkExpect(PieceKernels.forRun(PieceKernels.BEST, PieceKernels.MIN_VECTOR_PIECES),
+        PieceKernels.BEST);
+
+    // the kernels can be forced to the scalar ones
+    String kernels = System.getProperty(PieceKernels.PROPERTY);
+    System.setProperty(PieceKernels.PROPERTY, PieceKernels.SCALAR);
+    t.checkExpect(PieceKernels.load().name(), "scalar");
+    if (kernels == null) {
+      System.clearProperty(PieceKernels.PROPERTY);
+    }
+    else {
+      System.setProperty(PieceKernels.PROPERTY, kernels);
+    }
+  }
+
+  void testTimerWheel(Tester t) {
+    TimerWheel wheel = new TimerWheel(0);
+    GameSession soon = new GameSession(0, null, null);
+    soon.due = 500_000;
+    GameSession later = new GameSession(1, null, null);
+    later.due = 3_000_000;
+    // more than a turn of the wheel away, in the same slot as one due at 36ms
+    GameSession next = new GameSession(2, null, null);
+    next.due = 100_000_000;
+    GameSession past = new GameSession(3, null, null);
+    past.due = -5;
+    wheel.schedule(soon);
+    wheel.schedule(later);
+    wheel.schedule(next);
+    wheel.schedule(past);
+    t.checkExpect(next.rounds, 1L);
+
+    ConcurrentLinkedDeque<GameSession> due = new ConcurrentLinkedDeque<GameSession>();
+    wheel.expire(0, due);
+    t.checkExpect(due.pollFirst(), past);
+    t.checkExpect(due.isEmpty(), true);
+    // a session comes due at the end of the slot its time falls in, never before
+    wheel.expire(999_999, due);
+    t.checkExpect(due.isEmpty(), true);
+    wheel.expire(2_999_999, due);
+    t.checkExpect(due.pollFirst(), soon);
+    t.checkExpect(due.isEmpty(), true);
+    wheel.expire(99_999_999, due);
+    t.checkExpect(due.pollFirst(), later);
+    t.checkExpect(due.isEmpty(), true);
+    wheel.expire(100_000_000, due);
+    t.checkExpect(due.pollFirst(), next);
+    t.checkExpect(wheel.nanosToNextSlot(100_250_000), 750_000L);
+  }
+
+  // a host that isn't started, whose shards are run by hand on a clock the test moves
+  SessionHost manualHost(int shards, final long[] clock) {
+    return new SessionHost(shards) {
+      long now() {
+        return clock[0];
+      }
+    };
+  }
+
+  void testSessionShards(Tester t) {
+    long[] clock = {0};
+    SessionHost host = this.manualHost(2, clock);
+    GameSession[] sessions = new GameSession[4];
+    for (int i = 0; i < 4; i++) {
+      sessions[i] = host.open(new Simulation(new GameRandom(i)));
+    }
+    t.checkExpect(sessions[1].owner, host.shards[1]);
+    t.checkExpect(host.liveSessions(), 4);
+    t.checkExpect(sessions[0].due, sessions[0].loop.stepNanos);
+    sessions[2].queueKey(" ");
+
+    // the second shard falls behind with two sessions due, and the first runs its own
+    // two and then takes the other two, which go back to the second shard's wheel
+    clock[0] = 40_000_000L;
+    host.shards[1].collectDue(clock[0]);
+    t.checkExpect(host.shards[0].runDue(clock[0]), 4);
+    t.checkExpect(host.steals(), 2L);
+    t.checkExpect(host.shards[1].ready.isEmpty(), true);
+    t.checkExpect(host.shards[1].incoming.size(), 2);
+    for (GameSession session : sessions) {
+      t.checkExpect(session.loop.steps, 1L);
+      t.checkExpect(session.maxLateness, clock[0] - session.loop.stepNanos);
+    }
+    // the key press was applied before the step
+    t.checkExpect(sessions[2].loop.sim.bulletsLeft, NBullets.DEFAULTBULLETS - 1);
+    t.checkExpect(sessions[2].loop.sim.activeBullets.countBullets(), 1);
+
+    // a closed session is dropped when it next comes due, and the rest run again
+    host.close(sessions[3]);
+    clock[0] = 80_000_000L;
+    t.checkExpect(host.shards[1].runDue(clock[0]) + host.shards[0].runDue(clock[0]), 4);
+    t.checkExpect(host.liveSessions(), 3);
+    t.checkExpect(sessions[1].loop.steps, 2L);
+    t.checkExpect(sessions[3].loop.steps, 1L);
+    t.checkExpect(host.overruns.get(), 0L);
+  }
+
+  void testSessionCadence(Tester t) {
+    // hundreds of games on two shards, run every millisecond of a second of the test's
+    // clock, each step exactly at TICKRATE: as many steps as fit in the second, each
+    // run within the wheel's millisecond of when it was due, and every key press
+    // applied before the next step
+    long[] clock = {0};
+    SessionHost host = this.manualHost(2, clock);
+    int count = 400;
+    GameSession[] sessions = new GameSession[count];
+    for (int i = 0; i < count; i++) {
+      sessions[i] = host.open(new Simulation(new GameRandom(i), new BulletStore()));
+    }
+    long second = 1_000_000_000L;
+    for (clock[0] = 0; clock[0] <= second; clock[0] += SessionHost.WHEEL_TICK_NANOS) {
+      if (clock[0] > 0 && clock[0] <= 500_000_000L && clock[0] % 100_000_000L == 0) {
+        for (GameSession session : sessions) {
+          session.queueKey(" ");
+        }
+      }
+      for (SessionShard shard : host.shards) {
+        shard.runDue(clock[0]);
+      }
+    }
+
+    long steps = second / sessions[0].loop.stepNanos;
+    boolean onCadence = true;
+    boolean allFired = true;
+    for (GameSession session : sessions) {
+      onCadence = onCadence && session.loop.steps == steps;
+      allFired = allFired && session.loop.sim.bulletsLeft == NBullets.DEFAULTBULLETS - 5;
+    }
+    t.checkExpect(onCadence, true);
+    t.checkExpect(allFired, true);
+    t.checkExpect(host.liveSessions(), count);
+    t.checkExpect(host.lateness.count(), count * steps);
+    t.checkExpect(host.lateness.max() < SessionHost.WHEEL_TICK_NANOS, true);
+    t.checkExpect(host.overruns.get(), 0L);
+  }
+
+  void testBotPlayers(Tester t) {
+    StringBuilder pressed = new StringBuilder();
+    IKeyboard keyboard = new IKeyboard() {
+      public void press(String keyName) {
+        pressed.append('[').append(keyName).append(']');
+      }
+    };
+    Simulation sim = new Simulation(new GameRandom(1));
+    IBotPolicy every = new FireEvery(3);
+    for (int step = 0; step < 7; step++) {
+      every.play(sim, keyboard);
+      sim.tick++;
+    }
+    t.checkExpect(pressed.toString(), "[ ][ ][ ]");
+    t.checkExpect(every.name(), "every 3");
+    t.checkConstructorException(
+        new IllegalArgumentException("a player can fire at most every step"), "FireEvery", 0);
+
+    // a ship 3 pixels short of the middle, moving 4 a step, crosses it in the next step;
+    // one further off doesn't
+    Ship crossing = new Ship(357, 100, NBullets.SHIPSIZE, 0, NBullets.SHIPCOLOR, 4);
+    Ship away = new Ship(300, 100, NBullets.SHIPSIZE, 0, NBullets.SHIPCOLOR, 4);
+    Simulation crossingGame = new Simulation(10, 0, new MtLoBullet(),
+        new ConsLoShip(crossing, new MtLoShip()), 0, new Random(1));
+    Simulation awayGame = new Simulation(10, 0, new MtLoBullet(),
+        new ConsLoShip(away, new MtLoShip()), 0, new Random(1));
+    pressed.setLength(0);
+    new FireOnCenter().play(awayGame, keyboard);
+    t.checkExpect(pressed.toString(), "");
+    new FireOnCenter().play(crossingGame, keyboard);
+    t.checkExpect(pressed.toString(), "[ ]");
+
+    // a bullet takes 10 steps to climb 80 pixels, in which a ship 40 pixels short of the
+    // middle gets there; the one already in the middle is gone by then
+    Ship ahead = new Ship(320, NBullets.HEIGHT - 80, NBullets.SHIPSIZE, 0,
+        NBullets.SHIPCOLOR, 4);
+    Ship passing = new Ship(360, NBullets.HEIGHT - 80, NBullets.SHIPSIZE, 0,
+        NBullets.SHIPCOLOR, 4);
+    pressed.setLength(0);
+    new ChainSeeker().play(new Simulation(10, 0, new MtLoBullet(),
+        new ConsLoShip(passing, new MtLoShip()), 0, new Random(1)), keyboard);
+    t.checkExpect(pressed.toString(), "");
+    new ChainSeeker().play(new Simulation(10, 0, new MtLoBullet(),
+        new ConsLoShip(ahead, new MtLoShip()), 0, new Random(1)), keyboard);
+    t.checkExpect(pressed.toString(), "[ ]");
+
+    // a script's keys go in the order they were added, each once per step
+    ScriptedKeys script = new ScriptedKeys().at(2, "x").every(2, " ").at(5, "y");
+    sim.tick = 0;
+    pressed.setLength(0);
+    for (int step = 0; step < 6; step++) {
+      script.play(sim, keyboard);
+      sim.tick++;
+    }
+    t.checkExpect(pressed.toString(), "[ ][x][ ][ ][y]");
+  }
+
+  void testScenario(Tester t) throws IOException {
+    Scenario scenario = new Scenario("test", "# a comment\n"
+        + "seed 3   # the seed\n"
+        + "\n"
+        + "storage vector\n"
+        + "bullets 20\n"
+        + "spawn-chance 0.9\n"
+        + "steps 300\n"
+        + "bot every 5\n"
+        + "at 0 space\n");
+    t.checkExpect(scenario.seed, 3L);
+    t.checkExpect(scenario.storage, GameRecorder.STORAGE_VECTOR);
+    t.checkExpect(scenario.config.startingBullets, 20);
+    t.checkExpect(scenario.config.shipSpawnChance, 0.9);
+    t.checkExpect(scenario.config.bulletSpeed, NBullets.BULLETSPEED);
+    t.checkExpect(scenario.steps, 300L);
+    t.checkExpect(scenario.players.size(), 2);
+    t.checkExpect(scenario.players.get(0).name(), "every 5");
+    t.checkExpect(Scenario.named("steady").config, GameConfig.DEFAULT);
+    t.checkConstructorException(new IllegalArgumentException("line 2: unknown setting frob"),
+        "Scenario", "test", "seed 1\nfrob 2");
+    t.checkConstructorException(new IllegalArgumentException("line 1: every needs 2 values"),
+        "Scenario", "test", "every 4");
+    t.checkConstructorException(new IllegalArgumentException(
+        "a spawn chance must be at least 0 and below 1"),
+        "Scenario", "test", "spawn-chance 1\nsteps 5");
+
+    // a scenario plays the same game every time, and writes a row for every step
+    StringWriter rows = new StringWriter();
+    ScenarioRunner runner = new ScenarioRunner(scenario);
+    Simulation sim = runner.run(rows);
+    ScenarioRunner again = new ScenarioRunner(new Scenario("test", "seed 3\nstorage vector\n"
+        + "bullets 20\nspawn-chance 0.9\nsteps 300\nbot every 5\nat 0 space\n"));
+    Simulation same = again.run(null);
+    String[] lines = rows.toString().split("\n");
+    t.checkExpect(lines[0], ScenarioRunner.HEADER);
+    t.checkExpect(lines.length, (int) sim.tick + 1);
+    // the bot and the script both fire before the first step
+    t.checkExpect(lines[1].startsWith("1,18,0,2,0,"), true);
+    t.checkExpect(sim.shipsDestroyed, same.shipsDestroyed);
+    t.checkExpect(sim.tick, same.tick);
+    t.checkExpect(runner.peakBullets, again.peakBullets);
+    t.checkExpect(runner.peakShips, again.peakShips);
+    t.checkExpect(runner.peakChainBullets, again.peakChainBullets);
+    t.checkExpect(sim.bulletsLeft, 0);
+
+    // denser waves from the same random numbers spawn more ships, in every storage
+    for (byte storage = 0; storage <= 2; storage++) {
+      Simulation sparse = GameRecorder.newGame(storage, GameConfig.DEFAULT, new GameRandom(4));
+      Simulation dense = GameRecorder.newGame(storage,
+          GameConfig.DEFAULT.withSpawnChance(0.9), new GameRandom(4));
+      for (int step = 0; step < 60; step++) {
+        sparse.step();
+        dense.step();
+      }
+      t.checkExpect(dense.activeShips.countShips() > sparse.activeShips.countShips(), true);
+    }
+    MutableNBullets mutable = new MutableNBullets(GameConfig.DEFAULT.withSpawnChance(0.9),
+        new GameRandom(4));
+    Simulation dense = GameRecorder.newGame(GameRecorder.STORAGE_LISTS,
+        GameConfig.DEFAULT.withSpawnChance(0.9), new GameRandom(4));
+    for (int step = 0; step < 60; step++) {
+      mutable.onTick();
+      dense.step();
+    }
+    t.checkExpect(mutable.shipCount, dense.activeShips.countShips());
+
+    // the chance is kept by snapshots and the settings that build on it
+    GameConfig chance = new GameConfig(10, 1, 8, 12).withSpawnChance(0.25).withSteps(2);
+    t.checkExpect(chance.shipSpawnChance, 0.25);
+    t.checkExpect(chance.withFixedPoint().shipSpawnChance, 0.25);
+    Simulation saved = new Simulation(chance, new GameRandom(5), new BulletStore(chance));
+    WorldSnapshot snapshot = new WorldSnapshot();
+    snapshot.save(saved);
+    t.checkExpect(snapshot.restore().config.shipSpawnChance, 0.25);
+  }
+
+  void testChainBudget(Tester t) {
+    t.checkExpect(new ChainBudget(GameConfig.DEFAULT.withSteps(2)).deadlineNanos,
+        Math.round(NBullets.TICKRATE * 2 * 1e9));
+    t.checkConstructorException(new IllegalArgumentException("a step needs a positive deadline"),
+        "ChainBudget", 0L);
+
+    // three steps in a row under pressure raise the level, and a step in between
+    // starts the count over
+    ChainBudget budget = new ChainBudget(1000);
+    budget.record(900, 10);
+    budget.record(900, 10);
+    t.checkExpect(budget.level, ChainBudget.NORMAL);
+    budget.record(900, 10);
+    t.checkExpect(budget.level, ChainBudget.MERGE);
+    budget.record(900, 10);
+    budget.record(500, 10);
+    budget.record(900, 10);
+    budget.record(900, 10);
+    t.checkExpect(budget.level, ChainBudget.MERGE);
+    budget.record(900, 10);
+    t.checkExpect(budget.level, ChainBudget.CAP);
+    budget.record(900, 10);
+    budget.record(900, 10);
+    budget.record(900, 10);
+    t.checkExpect(budget.level, ChainBudget.CAP);
+
+    // at CAP, a step has room for as many bullets as it moves in half its deadline
+    budget.nanosPerBullet = 50;
+    t.checkExpect(budget.bulletCap(), 10L);
+    HitSet hits = new HitSet();
+    budget.applyTo(hits, 4);
+    t.checkExpect(hits.budgeted, true);
+    t.checkExpect(hits.splitLimit, 1);
+    t.checkExpect(hits.bulletRoom, 6L);
+    hits.chainBullets = 3;
+    t.checkExpect(hits.splitInto(3), 1);
+    t.checkExpect(hits.chainBullets, 1);
+    t.checkExpect(hits.bulletRoom, 6L);
+    // with no room a hit bullet still takes its own place, and past that it is removed
+    hits.bulletRoom = 0;
+    t.checkExpect(hits.splitInto(2), 1);
+    hits.bulletRoom = -1;
+    t.checkExpect(hits.splitInto(2), 0);
+    t.checkExpect(hits.bulletRoom, 0L);
+
+    // a second of steps with slack lowers the level by one
+    for (int i = 0; i < ChainBudget.SLACK_STEPS; i++) {
+      budget.record(100, 10);
+    }
+    t.checkExpect(budget.level, ChainBudget.MERGE);
+    for (int i = 0; i < ChainBudget.SLACK_STEPS - 1; i++) {
+      budget.record(100, 10);
+    }
+    t.checkExpect(budget.level, ChainBudget.MERGE);
+    budget.record(100, 10);
+    t.checkExpect(budget.level, ChainBudget.NORMAL);
+    t.checkExpect(budget.levelChanges, 4L);
+    t.checkExpect(budget.degradedSteps, 8L + 2 * ChainBudget.SLACK_STEPS);
+    budget.applyTo(hits, 4);
+    t.checkExpect(hits.budgeted, false);
+    t.checkExpect(hits.splitInto(3), 3);
+
+    // a merged bullet is as big around as the bullets merged into it, grown from at
+    // most the size limit
+    t.checkExpect(GameConfig.DEFAULT.splitSize(2, 1), 4);
+    t.checkExpect(GameConfig.DEFAULT.splitSize(2, 4), 8);
+    t.checkExpect(GameConfig.DEFAULT.splitSize(40, 4), 2 * NBullets.MAX_BULLETSIZE);
+
+    // whatever the storage, a hit bullet still scores when it merges its bullets into
+    // one heavier bullet at MERGE, or is removed at CAP once there is no room for it
+    for (int level = ChainBudget.NORMAL; level <= ChainBudget.CAP; level++) {
+      ILoBullet[] empties = {new MtLoBullet(), new BulletStore(), new BulletVector()};
+      for (ILoBullet empty : empties) {
+        Simulation sim = new Simulation(0, 0,
+            empty.addBullet(new Bullet(100, 100, 2, 90, 2, Color.YELLOW))
+                .addBullet(new Bullet(100, -20, 2, 270, 1, Color.YELLOW)),
+            new ConsLoShip(new Ship(100, 100, 24, 0, Color.magenta), new MtLoShip()),
+            1, new GameRandom(4));
+        sim.budget = new ChainBudget(1_000_000_000_000L);
+        sim.budget.level = level;
+        // no room for any bullets at CAP
+        sim.budget.nanosPerBullet = 1e13;
+        sim.metrics = new GameMetrics();
+        sim.step();
+        t.checkExpect(sim.shipsDestroyed, 1);
+        t.checkExpect(sim.activeBullets.countBullets(), new int[] {3, 1, 0}[level]);
+        t.checkExpect(sim.hits.chainBullets, new int[] {3, 1, 0}[level]);
+        if (level == ChainBudget.MERGE) {
+          // the three bullets are merged into one as big around as the three of size 4
+          ByteBuffer written = ByteBuffer.allocate(64);
+          sim.activeBullets.writeBullets(written);
+          t.checkExpect(written.getInt(40), 7);
+        }
+        t.checkExpect(sim.metrics.counters[GameMetrics.BUDGET_LEVEL].max(), (long) level);
+        t.checkExpect(sim.metrics.counters[GameMetrics.CULLED_BULLETS].max(), 1L);
+      }
+      MutableNBullets mutable = new MutableNBullets(GameConfig.DEFAULT, new GameRandom(4));
+      mutable.bullets[0] = new Bullet(100, 100, 2, 90, 2, Color.YELLOW);
+      mutable.bulletCount = 1;
+      mutable.ships[0] = new Ship(100, 100, 24, 0, Color.magenta);
+      mutable.shipCount = 1;
+      mutable.budget = new ChainBudget(1_000_000_000_000L);
+      mutable.budget.level = level;
+      mutable.budget.nanosPerBullet = 1e13;
+      mutable.onTick();
+      t.checkExpect(mutable.shipsDestroyed, 1);
+      t.checkExpect(mutable.bulletCount, new int[] {3, 1, 0}[level]);
+      if (level == ChainBudget.MERGE) {
+        t.checkExpect(mutable.bullets[0].size, 7);
+      }
+    }
+
+    // a game that can't make its deadline degrades to CAP, and its chains no longer
+    // grow the bullets
+    Simulation pressed = GameRecorder.newGame(GameRecorder.STORAGE_STORE, GameConfig.DEFAULT,
+        new GameRandom(2));
+    pressed.budget = new ChainBudget(1);
+    for (int step = 0; step < 2 * ChainBudget.PRESSURE_STEPS; step++) {
+      pressed.step();
+    }
+    t.checkExpect(pressed.budget.level, ChainBudget.CAP);
+    t.checkExpect(pressed.hits.budgeted, true);
+
+    // games only have a budget when asked for one
+    t.checkExpect(new Simulation(new GameRandom(1)).budget, null);
+    t.checkExpect(new NBullets(new GameRandom(1)).sim.budget, null);
+    System.setProperty(ChainBudget.PROPERTY, ChainBudget.ADAPTIVE);
+    try {
+      t.checkExpect(new NBullets(new GameRandom(1)).sim.budget.deadlineNanos,
+          Math.round(NBullets.TICKRATE * 1e9));
+    }
+    finally {
+      System.clearProperty(ChainBudget.PROPERTY);
+    }
+  }
+
+  void testBatchResult(Tester t) {
+    BatchResult result = new BatchResult(GameConfig.DEFAULT, new int[] {3, 0, 1, 3},
+        new long[] {10, 20, 30, 40});
+    t.checkExpect(result.meanScore(), 1.75);
+    t.checkExpect(result.percentile(0.5), 1);
+    t.checkExpect(result.percentile(1), 3);
+    t.checkExpect(result.histogram(), new int[] {1, 1, 0, 2});
+    t.checkExpect(result.totalTicks(), 100L);
+  }
+
+  void testUpdateShipsWith(Tester t) {
+    SpatialGrid bulletGrid = new SpatialGrid();
+    this.bulletList.addBulletsTo(bulletGrid);
+    t.checkExpect(this.shipList.updateShipsWith(bulletGrid), this.shipList1);
+    t.checkExpect(this.bulletList.countHitShipsWith(new SpatialGrid()), 0);
+  }
 }
\ No newline at end of file
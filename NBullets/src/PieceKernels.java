@@ -0,0 +1,125 @@
+// Represents the per-piece arithmetic of a tick run over flat arrays of coordinates, as a
+// BulletStore keeps them, with one bit per piece in long[] masks: bit i & 63 of word
+// i >>> 6 stands for the piece in slot i, as in a HitSet. Every implementation must
+// give exactly the results ScalarKernels does, so which one runs never changes a game.
+interface IPieceKernels {
+
+  // the name these kernels are reported under
+  String name();
+
+  // moves each piece in slots from to to by its dx and dy
+  void move(double[] xs, double[] ys, double[] dxs, double[] dys, int from, int to);
+
+  // sets the bit in the given mask of each piece in slots from to to that is off the
+  // screen, as AGamePiece.isOffScreen decides, and clears the bit of each that isn't
+  void markOffScreen(double[] xs, double[] ys, int from, int to, long[] mask);
+
+  // sets the bit in the given mask of each piece in slots from to to that touches or
+  // overlaps any of the first count circles with the given centers and radii, as
+  // AGamePiece.circlesCollided decides, leaving the other bits as they are, and returns
+  // the circles any of them touched, with bit j standing for circle j. count can be at
+  // most 64.
+  long markCollisions(double[] xs, double[] ys, int[] sizes, int from, int to,
+      double[] circleXs, double[] circleYs, int[] circleSizes, int count, long[] mask);
+}
+
+// The kernels as plain loops, one piece at a time, which the JIT may vectorize itself
+class ScalarKernels implements IPieceKernels {
+
+  // the name these kernels are reported under
+  public String name() {
+    return "scalar";
+  }
+
+  // moves each piece in the range by its dx and dy
+  public void move(double[] xs, double[] ys, double[] dxs, double[] dys, int from, int to) {
+    for (int i = from; i < to; i++) {
+      xs[i] += dxs[i];
+      ys[i] += dys[i];
+    }
+  }
+
+  // sets the bits of the pieces in the range that are off the screen and clears the rest
+  public void markOffScreen(double[] xs, double[] ys, int from, int to, long[] mask) {
+    for (int i = from; i < to; i++) {
+      if (xs[i] > NBullets.WIDTH || xs[i] < 0 || ys[i] < 0 || ys[i] > NBullets.HEIGHT) {
+        mask[i >>> 6] |= 1L << i;
+      }
+      else {
+        mask[i >>> 6] &= ~(1L << i);
+      }
+    }
+  }
+
+  // sets the bits of the pieces in the range that touch any of the circles, and
+  // returns the circles touched
+  public long markCollisions(double[] xs, double[] ys, int[] sizes, int from, int to,
+      double[] circleXs, double[] circleYs, int[] circleSizes, int count, long[] mask) {
+    long touched = 0;
+    for (int i = from; i < to; i++) {
+      for (int j = 0; j < count; j++) {
+        if (AGamePiece.circlesCollided(xs[i], ys[i], sizes[i],
+            circleXs[j], circleYs[j], circleSizes[j])) {
+          mask[i >>> 6] |= 1L << i;
+          touched |= 1L << j;
+        }
+      }
+    }
+    return touched;
+  }
+}
+
+// Chooses the kernels pieces are run with: the ones in VectorKernels, which use the
+// incubating Vector API, when they were compiled in and the JVM was started with
+// --add-modules jdk.incubator.vector, and ScalarKernels otherwise. VectorKernels lives
+// in its own source root, simd, and is only ever loaded by name, so the rest of the
+// game compiles and runs on a JDK or a build without the incubator module. The
+// nbullets.kernels system property set to "scalar" forces the scalar kernels.
+//
+// Vectors only pay for themselves over long runs of pieces: until the JIT has compiled
+// a vector loop, every vector in it is a boxed object, so a small store whose kernels
+// never get hot would allocate on every tick. Runs shorter than MIN_VECTOR_PIECES, one
+// of VectorKernels's collision blocks, go through the scalar kernels instead.
+class PieceKernels {
+
+  static final String PROPERTY = "nbullets.kernels";
+  static final String SCALAR = "scalar";
+  static final String VECTOR_CLASS = "VectorKernels";
+  static final int MIN_VECTOR_PIECES = 1024;
+
+  // the kernels this JVM runs pieces with
+  static final IPieceKernels BEST = load();
+  // the kernels for runs too short for vectors
+  static final IPieceKernels SCALAR_KERNELS = new ScalarKernels();
+
+  // the given kernels for a run over the given number of pieces, or the scalar ones if
+  // it is too short for vectors to pay for themselves
+  static IPieceKernels forRun(IPieceKernels kernels, int pieces) {
+    return pieces >= MIN_VECTOR_PIECES ? kernels : SCALAR_KERNELS;
+  }
+
+  // the vector kernels if they can run here and aren't turned off, else the scalar ones
+  static IPieceKernels load() {
+    if (SCALAR.equals(System.getProperty(PROPERTY))) {
+      return new ScalarKernels();
+    }
+    IPieceKernels vector = vector();
+    return vector != null ? vector : new ScalarKernels();
+  }
+
+  // the vector kernels, or null if they weren't compiled in or the incubator module
+  // isn't in this JVM
+  static IPieceKernels vector() {
+    try {
+      return (IPieceKernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor()
+          .newInstance();
+    }
+    catch (ReflectiveOperationException e) {
+      return null;
+    }
+    catch (LinkageError e) {
+      // VectorKernels was found but jdk.incubator.vector wasn't
+      return null;
+    }
+  }
+}
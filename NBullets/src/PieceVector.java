@@ -0,0 +1,449 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javalib.funworld.*;
+
+// Represents an immutable sequence of game pieces kept in fixed-size chunks of CHUNK
+// pieces, instead of one cons cell per piece. A chunk is never changed once a vector
+// holding it exists, so vectors share them: adding a piece copies only the list of chunks
+// and the last, partly filled chunk, and every full chunk stays shared with the vector it
+// came from. Walking the chunks reads pieces from a few arrays instead of chasing a
+// pointer per piece, and the chunks split evenly, so a parallel stream over a vector
+// hands each thread an equal run of whole chunks.
+abstract class APieceVector<T extends AGamePiece> implements Iterable<T> {
+
+  static final int SHIFT = 5;
+  static final int CHUNK = 1 << SHIFT;
+
+  // every chunk is full except possibly the last
+  Object[][] chunks;
+  int size;
+
+  // Constructor
+  APieceVector(Object[][] chunks, int size) {
+    this.chunks = chunks;
+    this.size = size;
+  }
+
+  // the piece at the given index
+  @SuppressWarnings("unchecked")
+  T get(int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException("no piece " + index + " in " + this.size);
+    }
+    return (T) this.chunks[index >>> SHIFT][index & (CHUNK - 1)];
+  }
+
+  // iterates over the pieces of this vector in order
+  public Iterator<T> iterator() {
+    final APieceVector<T> vector = this;
+    return new Iterator<T>() {
+      int next = 0;
+
+      public boolean hasNext() {
+        return this.next < vector.size;
+      }
+
+      public T next() {
+        if (this.next >= vector.size) {
+          throw new NoSuchElementException();
+        }
+        return vector.get(this.next++);
+      }
+    };
+  }
+
+  // a Spliterator over the pieces of this vector that splits on chunk boundaries
+  public Spliterator<T> spliterator() {
+    return new PieceSpliterator<T>(this.chunks, 0, this.size);
+  }
+
+  // a sequential stream of the pieces of this vector
+  Stream<T> stream() {
+    return StreamSupport.stream(this.spliterator(), false);
+  }
+
+  // a parallel stream of the pieces of this vector
+  Stream<T> parallelStream() {
+    return StreamSupport.stream(this.spliterator(), true);
+  }
+}
+
+// Represents a run of the pieces in a vector's chunks, from index from up to to, that
+// splits in half on a chunk boundary while it covers more than one chunk
+class PieceSpliterator<T> implements Spliterator<T> {
+  Object[][] chunks;
+  int from;
+  int to;
+
+  // Constructor
+  PieceSpliterator(Object[][] chunks, int from, int to) {
+    this.chunks = chunks;
+    this.from = from;
+    this.to = to;
+  }
+
+  // gives the given action the next piece, if there is one
+  @SuppressWarnings("unchecked")
+  public boolean tryAdvance(Consumer<? super T> action) {
+    if (this.from >= this.to) {
+      return false;
+    }
+    action.accept((T) this.chunks[this.from >>> APieceVector.SHIFT]
+        [this.from & (APieceVector.CHUNK - 1)]);
+    this.from++;
+    return true;
+  }
+
+  // gives the given action every remaining piece, a chunk at a time
+  @SuppressWarnings("unchecked")
+  public void forEachRemaining(Consumer<? super T> action) {
+    int index = this.from;
+    while (index < this.to) {
+      Object[] chunk = this.chunks[index >>> APieceVector.SHIFT];
+      int end = Math.min(this.to, (index | (APieceVector.CHUNK - 1)) + 1);
+      for (int slot = index & (APieceVector.CHUNK - 1); index < end; slot++, index++) {
+        action.accept((T) chunk[slot]);
+      }
+    }
+    this.from = this.to;
+  }
+
+  // hands the first half of the remaining pieces to a new spliterator, or returns null
+  // if they fit in one chunk
+  public Spliterator<T> trySplit() {
+    int chunks = (this.to - this.from) >>> APieceVector.SHIFT;
+    if (chunks < 2) {
+      return null;
+    }
+    int mid = ((this.from >>> APieceVector.SHIFT) + chunks / 2) << APieceVector.SHIFT;
+    PieceSpliterator<T> prefix = new PieceSpliterator<T>(this.chunks, this.from, mid);
+    this.from = mid;
+    return prefix;
+  }
+
+  // the number of pieces left
+  public long estimateSize() {
+    return this.to - this.from;
+  }
+
+  // the pieces are in order, never null, never change, and are counted exactly
+  public int characteristics() {
+    return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+  }
+}
+
+// Builds the chunks of a vector one piece at a time. Its chunks must not be touched
+// after chunks is called.
+class PieceVectorBuilder {
+  Object[][] chunks;
+  int size;
+
+  // Constructor
+  PieceVectorBuilder() {
+    this.chunks = new Object[4][];
+  }
+
+  // Represents a builder that starts with the pieces of the given vector, sharing its
+  // full chunks and copying only the last one if it has room left, since that is the
+  // only chunk adding to the end writes into
+  PieceVectorBuilder(APieceVector<?> vector) {
+    this.chunks = Arrays.copyOf(vector.chunks, vector.chunks.length + 1);
+    this.size = vector.size;
+    int last = this.size >>> APieceVector.SHIFT;
+    if ((this.size & (APieceVector.CHUNK - 1)) != 0) {
+      this.chunks[last] = Arrays.copyOf(this.chunks[last], APieceVector.CHUNK);
+    }
+  }
+
+  // adds the given piece at the end
+  void add(AGamePiece piece) {
+    int chunk = this.size >>> APieceVector.SHIFT;
+    if (chunk == this.chunks.length) {
+      this.chunks = Arrays.copyOf(this.chunks, chunk * 2);
+    }
+    if (this.chunks[chunk] == null) {
+      this.chunks[chunk] = new Object[APieceVector.CHUNK];
+    }
+    this.chunks[chunk][this.size & (APieceVector.CHUNK - 1)] = piece;
+    this.size++;
+  }
+
+  // the chunks of the pieces added, with no room left over in the list of chunks
+  Object[][] chunks() {
+    int chunks = (this.size + APieceVector.CHUNK - 1) >>> APieceVector.SHIFT;
+    return Arrays.copyOf(this.chunks, chunks);
+  }
+}
+
+// Represents a list of bullets kept in a chunked vector. A bullet is added at the end
+// instead of the front, and the updates keep the order the bullets are in.
+class BulletVector extends APieceVector<Bullet> implements ILoBullet {
+
+  // Represents an empty vector of bullets
+  BulletVector() {
+    super(new Object[0][], 0);
+  }
+
+  // Represents a vector of the given size made of the given chunks
+  BulletVector(Object[][] chunks, int size) {
+    super(chunks, size);
+  }
+
+  // Represents a vector of the bullets added to the given builder
+  BulletVector(PieceVectorBuilder built) {
+    this(built.chunks(), built.size);
+  }
+
+  // draws every bullet in this vector onto the given WorldScene
+  public WorldScene drawBullets(WorldScene prevScene) {
+    for (Bullet bullet : this) {
+      prevScene = prevScene.placeImageXY(bullet.drawPiece(), (int) bullet.x, (int) bullet.y);
+    }
+    return prevScene;
+  }
+
+  // determines if any bullet in this vector collided with the given ship
+  public boolean listCollidedWithShip(Ship ship) {
+    for (Bullet bullet : this) {
+      if (bullet.collidedWith(ship)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // updates every bullet in this vector given a list of ships
+  public ILoBullet updateBullets(ILoShip activeShips) {
+    SpatialGrid shipGrid = new SpatialGrid();
+    activeShips.addShipsTo(shipGrid);
+    return this.updateBulletsWith(shipGrid);
+  }
+
+  // counts the bullets in this vector that hit one of the given ships
+  public int countHitShips(ILoShip activeShips) {
+    SpatialGrid shipGrid = new SpatialGrid();
+    activeShips.addShipsTo(shipGrid);
+    return this.countHitShipsWith(shipGrid);
+  }
+
+  // determines if this vector has no bullets
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  // updates every bullet in this vector given a grid of the active ships: a bullet
+  // that hit a ship splits in place, one off the screen is dropped, and the rest move
+  public ILoBullet updateBulletsWith(SpatialGrid shipGrid) {
+    PieceVectorBuilder updated = new PieceVectorBuilder();
+    for (Bullet bullet : this) {
+      if (bullet.collidedWithAny(shipGrid)) {
+        this.addNewBullets(updated, bullet, 0, bullet.colSoFar + 1);
+      }
+      else if (!bullet.isOffScreen()) {
+        updated.add(bullet.updateBullet());
+      }
+    }
+    return new BulletVector(updated);
+  }
+
+  // counts the bullets in this vector that hit a ship in the given grid
+  public int countHitShipsWith(SpatialGrid shipGrid) {
+    int count = 0;
+    for (Bullet bullet : this) {
+      if (bullet.collidedWithAny(shipGrid)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  // adds every bullet in this vector to the given grid
+  public void addBulletsTo(SpatialGrid grid) {
+    for (Bullet bullet : this) {
+      bullet.addTo(grid);
+    }
+  }
+
+  // a vector of these bullets with the given bullet added at the end
+  public ILoBullet addBullet(Bullet bullet) {
+    PieceVectorBuilder added = new PieceVectorBuilder(this);
+    added.add(bullet);
+    return new BulletVector(added);
+  }
+
+  // records which bullets in this vector hit a ship in the given grid, where the first
+  // bullet in this vector is at the given index
+  public void markHits(SpatialGrid shipGrid, HitSet hits, int index) {
+    for (Bullet bullet : this) {
+      bullet.markHits(shipGrid, hits, index);
+      index++;
+    }
+  }
+
+  // updates every bullet in this vector given which bullets hit a ship, where the
+  // first bullet in this vector is at the given index
+  public ILoBullet updateBulletsFrom(HitSet hits, int index) {
+    PieceVectorBuilder updated = new PieceVectorBuilder();
+    for (Bullet bullet : this) {
+      if (hits.bulletHit(index)) {
+        double contact = hits.contactTime(index);
+        this.addNewBullets(updated, bullet, contact,
+            hits.split(bullet.x + contact * bullet.dx, bullet.y + contact * bullet.dy,
+                bullet.colSoFar + 1));
+      }
+      else if (bullet.isOffScreen()) {
+        hits.cull(bullet.x, bullet.y, bullet.colSoFar, bullet.size);
+      }
+      else {
+        updated.add(bullet.updateBullet());
+      }
+      index++;
+    }
+    return new BulletVector(updated);
+  }
+
+  // adds the bullets the given bullet splits into, when it hits a ship the given
+  // fraction of the way through its step, to the given builder, in the same order as
+  // Bullet.generateNewBullets, or only the first given number of them, the first
+  // carrying the weight of the rest
+  void addNewBullets(PieceVectorBuilder builder, Bullet bullet, double contact,
+      int children) {
+    int curChain = bullet.colSoFar + 1;
+    for (int chain = curChain; chain > curChain - children; chain--) {
+      builder.add(bullet.chainBullet(chain, 360 / curChain, contact,
+          bullet.config.splitSize(bullet.size, chain == curChain ? curChain - children + 1 : 1)));
+    }
+  }
+
+  // counts the bullets in this vector
+  public int countBullets() {
+    return this.size;
+  }
+
+  // draws every bullet in this vector into the frame of the given renderer
+  public void drawBulletsOn(RasterRenderer renderer) {
+    for (Bullet bullet : this) {
+      bullet.drawOn(renderer);
+    }
+  }
+
+  // writes every bullet in this vector, in order, to the given buffer
+  public void writeBullets(ByteBuffer out) {
+    for (Bullet bullet : this) {
+      bullet.writeTo(out);
+    }
+  }
+}
+
+// Represents a list of ships kept in a chunked vector. New ships are added at the end,
+// sharing every full chunk of the ships already there.
+class ShipVector extends APieceVector<Ship> implements ILoShip {
+
+  // Represents an empty vector of ships
+  ShipVector() {
+    super(new Object[0][], 0);
+  }
+
+  // Represents a vector of the given size made of the given chunks
+  ShipVector(Object[][] chunks, int size) {
+    super(chunks, size);
+  }
+
+  // Represents a vector of the ships added to the given builder
+  ShipVector(PieceVectorBuilder built) {
+    this(built.chunks(), built.size);
+  }
+
+  // draws every ship in this vector onto the given WorldScene
+  public WorldScene drawShips(WorldScene prevScene) {
+    for (Ship ship : this) {
+      prevScene = prevScene.placeImageXY(ship.drawPiece(), (int) ship.x, (int) ship.y);
+    }
+    return prevScene;
+  }
+
+  // updates every ship in this vector given a list of bullets
+  public ILoShip updateShips(ILoBullet activeBullets) {
+    SpatialGrid bulletGrid = new SpatialGrid();
+    activeBullets.addBulletsTo(bulletGrid);
+    return this.updateShipsWith(bulletGrid);
+  }
+
+  // determines if any ship in this vector collided with the given bullet
+  public boolean listCollidedWithBullet(Bullet first) {
+    for (Ship ship : this) {
+      if (ship.collidedWith(first)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // moves every ship in this vector that hasn't collided with a bullet in the given
+  // grid or left the screen, and drops the others
+  public ILoShip updateShipsWith(SpatialGrid bulletGrid) {
+    PieceVectorBuilder updated = new PieceVectorBuilder();
+    for (Ship ship : this) {
+      if (!ship.collidedWithAny(bulletGrid) && !ship.isOffScreen()) {
+        updated.add(ship.updateShip());
+      }
+    }
+    return new ShipVector(updated);
+  }
+
+  // adds every ship in this vector to the given grid
+  public void addShipsTo(SpatialGrid grid) {
+    for (Ship ship : this) {
+      ship.addTo(grid);
+    }
+  }
+
+  // moves every ship in this vector that wasn't hit and hasn't left the screen, and
+  // drops the others, where the first ship in this vector is at the given index
+  public ILoShip updateShipsFrom(HitSet hits, int index) {
+    PieceVectorBuilder updated = new PieceVectorBuilder();
+    for (Ship ship : this) {
+      if (!hits.shipHit(index) && !ship.isOffScreen()) {
+        updated.add(ship.updateShip());
+      }
+      index++;
+    }
+    return new ShipVector(updated);
+  }
+
+  // counts the ships in this vector
+  public int countShips() {
+    return this.size;
+  }
+
+  // draws every ship in this vector into the frame of the given renderer
+  public void drawShipsOn(RasterRenderer renderer) {
+    for (Ship ship : this) {
+      ship.drawOn(renderer);
+    }
+  }
+
+  // writes every ship in this vector, in order, to the given buffer
+  public void writeShips(ByteBuffer out) {
+    for (Ship ship : this) {
+      ship.writeTo(out);
+    }
+  }
+
+  // a vector of these ships with the ships collected in the given builder added at the end
+  public ILoShip addShips(ShipListBuilder newShips) {
+    PieceVectorBuilder added = new PieceVectorBuilder(this);
+    ILoShip ships = newShips.build(new MtLoShip());
+    while (ships instanceof ConsLoShip) {
+      added.add(((ConsLoShip) ships).first);
+      ships = ((ConsLoShip) ships).rest;
+    }
+    return new ShipVector(added);
+  }
+}
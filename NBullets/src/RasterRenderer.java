@@ -0,0 +1,187 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+
+// Draws a game straight into the pixels of one reused BufferedImage instead of
+// building a WorldScene, so the cost of a frame grows with the pixels painted rather
+// than with a tree of placed images. Works without a display, so frames can also be
+// written to disk from a headless game.
+class RasterRenderer {
+
+  // colors are stored as 0xRRGGBB, the layout of a TYPE_INT_RGB pixel
+  static final int BACKGROUND = Color.DARK_GRAY.getRGB() & 0xFFFFFF;
+  static final int HUD_HEIGHT = 20;
+
+  BufferedImage frame;
+  // the pixels of frame, one int per pixel in rows from the top left
+  int[] pixels;
+  int width;
+  int height;
+
+  // for each radius, the half-width of the circle's span on each row from its top
+  // to its bottom, worked out the first time a circle of that radius is drawn
+  int[][] spans = new int[NBullets.MAX_BULLETSIZE + NBullets.SHIPSIZE + 1][];
+
+  // the remaining bullets and score, drawn once per change and copied into each frame
+  BufferedImage hudImage;
+  int[] hudPixels;
+  int hudBulletsLeft = -1;
+  int hudShipsDestroyed = -1;
+
+  // how many steps back along its velocity each piece is drawn, so a frame drawn
+  // between two steps can show the pieces between where they were and where they are
+  double lag;
+
+  // Constructor
+  RasterRenderer() {
+    this(NBullets.WIDTH, NBullets.HEIGHT);
+  }
+
+  // Represents a renderer with a frame of the given size
+  RasterRenderer(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    this.pixels = ((DataBufferInt) this.frame.getRaster().getDataBuffer()).getData();
+    this.hudImage = new BufferedImage(width, HUD_HEIGHT, BufferedImage.TYPE_INT_RGB);
+    this.hudPixels = ((DataBufferInt) this.hudImage.getRaster().getDataBuffer()).getData();
+  }
+
+  // draws the given game into the frame the same way NBullets.makeScene lays it out:
+  // the background, then the bullets, then the ships, then the remaining bullets
+  // and score, and returns the frame
+  BufferedImage render(Simulation sim) {
+    return this.render(sim, 1.0);
+  }
+
+  // draws the given game as render does, with every piece alpha of the way from where it
+  // was one step ago to where it is now. A piece that only appeared in the last step is
+  // treated as if it had moved there too, which puts it at most one step's movement
+  // behind where it appeared.
+  BufferedImage render(Simulation sim, double alpha) {
+    this.lag = 1.0 - alpha;
+    Arrays.fill(this.pixels, BACKGROUND);
+    sim.activeBullets.drawBulletsOn(this);
+    sim.activeShips.drawShipsOn(this);
+    this.drawHud(sim.bulletsLeft, sim.shipsDestroyed);
+    return this.frame;
+  }
+
+  // fills the circle of a piece at the given position moving the given distance per
+  // step, drawn lag steps back along that movement
+  void fillPiece(double x, double y, double dx, double dy, int size, int rgb) {
+    this.fillCircle((int) (x - this.lag * dx), (int) (y - this.lag * dy), size, rgb);
+  }
+
+  // fills a circle with the given center, radius and color, clipped to the frame
+  void fillCircle(int x, int y, int size, int rgb) {
+    if (size < 0) {
+      return;
+    }
+    int pixel = rgb & 0xFFFFFF;
+    int[] span = this.spanFor(size);
+    int top = Math.max(0, y - size);
+    int bottom = Math.min(this.height - 1, y + size);
+    for (int row = top; row <= bottom; row++) {
+      int half = span[row - y + size];
+      int left = Math.max(0, x - half);
+      int right = Math.min(this.width - 1, x + half);
+      if (left <= right) {
+        int start = row * this.width;
+        Arrays.fill(this.pixels, start + left, start + right + 1, pixel);
+      }
+    }
+  }
+
+  // the half-widths of the rows of a circle of the given radius
+  int[] spanFor(int size) {
+    if (size >= this.spans.length) {
+      this.spans = Arrays.copyOf(this.spans, size + 1);
+    }
+    if (this.spans[size] == null) {
+      int[] span = new int[2 * size + 1];
+      for (int dy = -size; dy <= size; dy++) {
+        span[dy + size] = (int) Math.sqrt((double) size * size - dy * dy);
+      }
+      this.spans[size] = span;
+    }
+    return this.spans[size];
+  }
+
+  // copies the remaining bullets and score into the bottom of the frame, redrawing
+  // them first if either changed since the last frame
+  void drawHud(int bulletsLeft, int shipsDestroyed) {
+    if (bulletsLeft != this.hudBulletsLeft || shipsDestroyed != this.hudShipsDestroyed) {
+      Graphics2D g = this.hudImage.createGraphics();
+      g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+          RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+      g.setColor(Color.DARK_GRAY);
+      g.fillRect(0, 0, this.width, HUD_HEIGHT);
+      g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 13));
+      FontMetrics metrics = g.getFontMetrics();
+      String remaining = "Remaining Bullets: " + bulletsLeft;
+      String score = "   Score: " + shipsDestroyed;
+      int left = (this.width - metrics.stringWidth(remaining + score)) / 2;
+      int baseline = (HUD_HEIGHT + metrics.getAscent() - metrics.getDescent()) / 2;
+      g.setColor(Color.CYAN);
+      g.drawString(remaining, left, baseline);
+      g.setColor(Color.ORANGE);
+      g.drawString(score, left + metrics.stringWidth(remaining), baseline);
+      g.dispose();
+      this.hudBulletsLeft = bulletsLeft;
+      this.hudShipsDestroyed = shipsDestroyed;
+    }
+    // the HUD is centered 20 pixels above the bottom, as in makeScene, and only
+    // the text is copied so the pieces behind it still show
+    int top = this.height - 20 - HUD_HEIGHT / 2;
+    for (int row = 0; row < HUD_HEIGHT; row++) {
+      int frameRow = top + row;
+      if (frameRow >= 0 && frameRow < this.height) {
+        int from = row * this.width;
+        int to = frameRow * this.width;
+        for (int col = 0; col < this.width; col++) {
+          int rgb = this.hudPixels[from + col] & 0xFFFFFF;
+          if (rgb != BACKGROUND) {
+            this.pixels[to + col] = rgb;
+          }
+        }
+      }
+    }
+  }
+
+  // writes the current frame to the given file as a PNG
+  void writeFrame(File file) throws IOException {
+    ImageIO.write(this.frame, "png", file);
+  }
+
+  // plays a headless game firing a bullet every 10 ticks and writes every nth frame
+  // to a directory, given as: directory ticks n [seed]
+  public static void main(String[] args) throws IOException {
+    File dir = new File(args.length > 0 ? args[0] : "frames");
+    int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+    int every = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+    long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+    dir.mkdirs();
+
+    Simulation sim = new Simulation(new GameRandom(seed), new BulletStore());
+    RasterRenderer renderer = new RasterRenderer();
+    for (int tick = 0; tick < ticks && !sim.isOver(); tick++) {
+      if (tick % 10 == 0) {
+        sim.fire();
+      }
+      sim.step();
+      if (tick % every == 0) {
+        renderer.render(sim);
+        renderer.writeFrame(new File(dir, String.format("frame%06d.png", tick)));
+      }
+    }
+  }
+}
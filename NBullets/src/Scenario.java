@@ -0,0 +1,299 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Represents a reproducible way of playing a game headless: its settings and seed, how
+// it keeps its pieces, how many steps to run at most, and the players pressing keys.
+// A scenario is written as a script of one setting per line, with blank lines and
+// anything after a # ignored:
+//   seed <n>               the game's GameRandom seed, 1 unless given
+//   storage <kind>         lists, store or vector, as GameRecorder names them; store
+//                          unless given
+//   bullets <n>            the bullets the game starts with
+//   spawn-rate <seconds>   how often ships have a chance to spawn
+//   spawn-chance <p>       the chance another ship spawns each time, below 1
+//   bullet-speed <n>       how far a bullet moves each tick
+//   max-bullet-size <n>    how big split bullets can grow
+//   steps <n>              the most steps to run; the game can end sooner
+//   bot <name> [<n>]       a player: every <n>, center or chain, as in BotPlayers
+//   at <step> <key>        presses the key before the given step
+//   every <n> <key>        presses the key before every n-th step, from the first
+//   budget [<ms>]          holds each step to a deadline of the given milliseconds, a
+//                          tick's worth unless given, with a ChainBudget
+// Keys are named as javalib names them, with space for the space bar. Every setting not
+// given is the one in GameConfig.DEFAULT.
+class Scenario {
+
+  static final long DEFAULT_STEPS = 2000;
+
+  // the scenarios ScenarioRunner knows by name
+  static final String[] NAMES = {"steady", "center", "rapid-fire"};
+  static final String[] SCRIPTS = {
+      "# the default game, fired into every 20 steps\n"
+          + "every 20 space\n",
+      "# fires whenever a ship crosses the middle\n"
+          + "bot center\n",
+      "# rapid fire at dense waves whenever a bullet will meet a ship, which sets off\n"
+          + "# chains of thousands of bullets; denser waves or more bullets than this grow\n"
+          + "# chains past what fits in memory\n"
+          + "bullets 100\n"
+          + "spawn-chance 0.75\n"
+          + "bot chain\n"};
+
+  String name;
+  long seed = 1;
+  byte storage = GameRecorder.STORAGE_STORE;
+  GameConfig config;
+  long steps = DEFAULT_STEPS;
+  // the deadline a ChainBudget holds each step to, in nanoseconds, or 0 for no budget
+  long budgetNanos;
+  List<IBotPolicy> players = new ArrayList<IBotPolicy>();
+
+  // Represents the scenario the given script describes, reported under the given name
+  Scenario(String name, String script) {
+    this.name = name;
+    int startingBullets = GameConfig.DEFAULT.startingBullets;
+    double shipSpawnRate = GameConfig.DEFAULT.shipSpawnRate;
+    double shipSpawnChance = GameConfig.DEFAULT.shipSpawnChance;
+    int bulletSpeed = GameConfig.DEFAULT.bulletSpeed;
+    int maxBulletSize = GameConfig.DEFAULT.maxBulletSize;
+    ScriptedKeys keys = new ScriptedKeys();
+    String[] lines = script.split("\n");
+    for (int i = 0; i < lines.length; i++) {
+      String line = lines[i];
+      int comment = line.indexOf('#');
+      String[] words = (comment < 0 ? line : line.substring(0, comment)).trim().split("\\s+");
+      if (words[0].isEmpty()) {
+        continue;
+      }
+      try {
+        String setting = words[0];
+        if (setting.equals("seed")) {
+          this.seed = Long.parseLong(this.argument(words, 1));
+        }
+        else if (setting.equals("storage")) {
+          this.storage = storageNamed(this.argument(words, 1));
+        }
+        else if (setting.equals("bullets")) {
+          startingBullets = Integer.parseInt(this.argument(words, 1));
+        }
+        else if (setting.equals("spawn-rate")) {
+          shipSpawnRate = Double.parseDouble(this.argument(words, 1));
+        }
+        else if (setting.equals("spawn-chance")) {
+          shipSpawnChance = Double.parseDouble(this.argument(words, 1));
+        }
+        else if (setting.equals("bullet-speed")) {
+          bulletSpeed = Integer.parseInt(this.argument(words, 1));
+        }
+        else if (setting.equals("max-bullet-size")) {
+          maxBulletSize = Integer.parseInt(this.argument(words, 1));
+        }
+        else if (setting.equals("steps")) {
+          this.steps = Long.parseLong(this.argument(words, 1));
+        }
+        else if (setting.equals("bot")) {
+          this.players.add(botNamed(this.argument(words, 1), words));
+        }
+        else if (setting.equals("at")) {
+          keys.at(Long.parseLong(this.argument(words, 1)), keyNamed(this.argument(words, 2)));
+        }
+        else if (setting.equals("budget")) {
+          this.budgetNanos = words.length > 1
+              ? Math.round(Double.parseDouble(words[1]) * 1e6)
+              : Math.round(NBullets.TICKRATE * 1e9);
+          if (this.budgetNanos <= 0) {
+            throw new IllegalArgumentException("a budget needs a positive deadline");
+          }
+        }
+        else if (setting.equals("every")) {
+          keys.every(Integer.parseInt(this.argument(words, 1)),
+              keyNamed(this.argument(words, 2)));
+        }
+        else {
+          throw new IllegalArgumentException("unknown setting " + setting);
+        }
+      }
+      catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("line " + (i + 1) + ": " + e.getMessage());
+      }
+    }
+    if (!keys.keys.isEmpty() || !keys.repeatedKeys.isEmpty()) {
+      this.players.add(keys);
+    }
+    this.config = GameConfig.of(startingBullets, shipSpawnRate, bulletSpeed, maxBulletSize,
+        1, false, false, shipSpawnChance);
+  }
+
+  // the scenario with the given name, one of NAMES
+  static Scenario named(String name) {
+    for (int i = 0; i < NAMES.length; i++) {
+      if (NAMES[i].equals(name)) {
+        return new Scenario(name, SCRIPTS[i]);
+      }
+    }
+    throw new IllegalArgumentException("no scenario named " + name);
+  }
+
+  // the word at the given index of a setting's line
+  String argument(String[] words, int index) {
+    if (index >= words.length) {
+      throw new IllegalArgumentException(words[0] + " needs " + index + " value"
+          + (index == 1 ? "" : "s"));
+    }
+    return words[index];
+  }
+
+  // the storage byte GameRecorder uses for the given kind of storage
+  static byte storageNamed(String kind) {
+    if (kind.equals("lists")) {
+      return GameRecorder.STORAGE_LISTS;
+    }
+    if (kind.equals("store")) {
+      return GameRecorder.STORAGE_STORE;
+    }
+    if (kind.equals("vector")) {
+      return GameRecorder.STORAGE_VECTOR;
+    }
+    throw new IllegalArgumentException("unknown storage " + kind);
+  }
+
+  // the player with the given name, taking its number from the given bot line
+  static IBotPolicy botNamed(String name, String[] words) {
+    if (name.equals("every")) {
+      if (words.length < 3) {
+        throw new IllegalArgumentException("bot every needs a number of steps");
+      }
+      return new FireEvery(Integer.parseInt(words[2]));
+    }
+    if (name.equals("center")) {
+      return new FireOnCenter();
+    }
+    if (name.equals("chain")) {
+      return new ChainSeeker();
+    }
+    throw new IllegalArgumentException("unknown bot " + name);
+  }
+
+  // the javalib name of the key a script calls by the given name
+  static String keyNamed(String name) {
+    return name.equals("space") ? " " : name;
+  }
+}
+
+// Plays a Scenario headless, as fast as the CPU allows, and writes a CSV row of what
+// each step did: the live bullets and ships after it, the collision tests, hits and
+// chain bullets in it, how long it took, and the level its budget ran it at. The same
+// scenario always plays the same game, so the rows are the same from run to run but
+// for the timings, unless it has a budget, whose levels depend on the timings.
+class ScenarioRunner {
+
+  static final String HEADER =
+      "step,bulletsLeft,score,liveBullets,liveShips,collisionTests,hits,chainBullets,stepNanos,"
+          + "budgetLevel";
+
+  Scenario scenario;
+  Simulation sim;
+  IKeyboard keyboard;
+  // the most live bullets and ships after any step, the most chain bullets in one, and
+  // the longest one took
+  int peakBullets;
+  int peakShips;
+  int peakChainBullets;
+  long slowestStepNanos;
+
+  // Constructor
+  ScenarioRunner(Scenario scenario) {
+    this.scenario = scenario;
+    this.sim = GameRecorder.newGame(scenario.storage, scenario.config,
+        new GameRandom(scenario.seed));
+    if (scenario.budgetNanos > 0) {
+      this.sim.budget = new ChainBudget(scenario.budgetNanos);
+    }
+    this.keyboard = new IKeyboard() {
+      public void press(String keyName) {
+        ScenarioRunner.this.sim.handleKey(keyName);
+      }
+    };
+  }
+
+  // plays the scenario until it runs out of steps or the game ends, writing the header
+  // and a row per step to the given writer unless it is null, and returns the game
+  Simulation run(Writer out) throws IOException {
+    if (out != null) {
+      out.write(HEADER + "\n");
+    }
+    while (this.sim.tick < this.scenario.steps && !this.sim.isOver()) {
+      this.step(out);
+    }
+    if (out != null) {
+      out.flush();
+    }
+    return this.sim;
+  }
+
+  // lets every player press its keys and steps the game, writing its row to the given
+  // writer unless it is null
+  void step(Writer out) throws IOException {
+    for (IBotPolicy player : this.scenario.players) {
+      player.play(this.sim, this.keyboard);
+    }
+    int level = this.sim.budget == null ? ChainBudget.NORMAL : this.sim.budget.level;
+    long start = System.nanoTime();
+    this.sim.step();
+    long nanos = System.nanoTime() - start;
+    int bullets = this.sim.activeBullets.countBullets();
+    int ships = this.sim.activeShips.countShips();
+    HitSet hits = this.sim.hits;
+    this.peakBullets = Math.max(this.peakBullets, bullets);
+    this.peakShips = Math.max(this.peakShips, ships);
+    this.peakChainBullets = Math.max(this.peakChainBullets, hits.chainBullets);
+    this.slowestStepNanos = Math.max(this.slowestStepNanos, nanos);
+    if (out != null) {
+      out.write(new StringBuilder()
+          .append(this.sim.tick).append(',')
+          .append(this.sim.bulletsLeft).append(',')
+          .append(this.sim.shipsDestroyed).append(',')
+          .append(bullets).append(',')
+          .append(ships).append(',')
+          .append(hits.collisionTests).append(',')
+          .append(hits.bulletHits).append(',')
+          .append(hits.chainBullets).append(',')
+          .append(nanos).append(',')
+          .append(level).append('\n').toString());
+    }
+  }
+
+  // plays a scenario, given as: <scenario name or script file> [rows.csv], and writes its
+  // rows to the file or else standard output, then a summary to standard error
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("usage: ScenarioRunner <" + String.join("|", Scenario.NAMES)
+          + "|script file> [rows.csv]");
+      System.exit(2);
+    }
+    Path script = Paths.get(args[0]);
+    Scenario scenario = Files.isRegularFile(script)
+        ? new Scenario(args[0], Files.readString(script))
+        : Scenario.named(args[0]);
+    Writer out = args.length > 1
+        ? Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)
+        : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+    ScenarioRunner runner = new ScenarioRunner(scenario);
+    Simulation sim = runner.run(out);
+    if (args.length > 1) {
+      out.close();
+    }
+    System.err.printf("%s: %d steps, score %d, peak %d bullets, %d ships, "
+        + "%d chain bullets in a step, slowest step %.3fms%n",
+        scenario.name, sim.tick, sim.shipsDestroyed, runner.peakBullets, runner.peakShips,
+        runner.peakChainBullets, runner.slowestStepNanos / 1e6);
+  }
+}
@@ -0,0 +1,377 @@
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs thousands of games at once in one JVM, each at its own TICKRATE, on one worker
+// thread per shard instead of a timer and a window per game. Every game is a session
+// with a FixedStepLoop, so its key presses can come from any thread and are applied
+// just before its next step, and a session that fires late catches up the steps it
+// missed just as a window's game does.
+//
+// Each session belongs to one shard, which keeps it in a TimerWheel until its next step
+// is due and then moves it to the shard's deque of due sessions. A shard's worker runs
+// its due sessions from the front of its deque; a worker with none of its own takes due
+// sessions from the back of the other shards' deques, so a shard that falls behind
+// under load is helped out by the rest. A session run by another shard's worker goes
+// back to its own shard's wheel through that shard's queue of incoming sessions, since
+// a wheel is only ever touched by its own worker.
+//
+// A session is late by however long after its step was due it runs; the host counts
+// every lateness in a Histogram, and a session that runs a whole step or more late has
+// overrun, which its own count and the host's both record.
+class SessionHost {
+
+  // the wheel turns one slot a millisecond, and 64 slots cover a step at TICKRATE
+  static final long WHEEL_TICK_NANOS = 1_000_000L;
+  static final int WHEEL_SLOTS = 64;
+
+  SessionShard[] shards;
+  volatile boolean running;
+  AtomicLong nextId = new AtomicLong();
+  AtomicInteger live = new AtomicInteger();
+  // how late each session ran, in nanoseconds, and how many times one was a step late
+  Histogram lateness = new Histogram();
+  AtomicLong overruns = new AtomicLong();
+
+  // Constructor
+  SessionHost() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  // Represents a host with the given number of shards, each with a worker once started
+  SessionHost(int shards) {
+    if (shards < 1) {
+      throw new IllegalArgumentException("a host needs at least one shard");
+    }
+    this.shards = new SessionShard[shards];
+    long now = this.now();
+    for (int i = 0; i < shards; i++) {
+      this.shards[i] = new SessionShard(this, i, new TimerWheel(now));
+    }
+  }
+
+  // starts a worker thread for every shard, and returns this host
+  SessionHost start() {
+    this.running = true;
+    for (SessionShard shard : this.shards) {
+      shard.worker = new Thread(shard, "nbullets-shard-" + shard.index);
+      shard.worker.setDaemon(true);
+      shard.worker.start();
+    }
+    return this;
+  }
+
+  // stops every worker once it finishes the session it is running, and waits for them
+  void shutdown() throws InterruptedException {
+    this.running = false;
+    for (SessionShard shard : this.shards) {
+      if (shard.worker != null) {
+        LockSupport.unpark(shard.worker);
+        shard.worker.join();
+      }
+    }
+  }
+
+  // hosts the given game, running it a step every TICKRATE seconds from now
+  GameSession open(Simulation sim) {
+    return this.open(new FixedStepLoop(sim));
+  }
+
+  // hosts the game the given loop runs, at the loop's step length from now
+  GameSession open(FixedStepLoop loop) {
+    long id = this.nextId.getAndIncrement();
+    GameSession session = new GameSession(id, loop,
+        this.shards[(int) (id % this.shards.length)]);
+    long now = this.now();
+    loop.advance(now);
+    session.due = now + loop.stepNanos;
+    this.live.incrementAndGet();
+    session.owner.incoming.add(session);
+    return session;
+  }
+
+  // stops hosting the given session before its next step
+  void close(GameSession session) {
+    session.closed = true;
+  }
+
+  // stops hosting the given session, which has been closed or whose game is over, and
+  // finishes its game's events, if they are recorded
+  void drop(GameSession session) {
+    this.live.decrementAndGet();
+    if (session.loop.sim.events != null) {
+      session.loop.sim.events.finish();
+    }
+  }
+
+  // the clock sessions are scheduled and run by, in nanoseconds
+  long now() {
+    return System.nanoTime();
+  }
+
+  // the number of sessions being hosted, which stops counting a session once it has
+  // been closed or its game is over and it comes due
+  int liveSessions() {
+    return this.live.get();
+  }
+
+  // the number of due sessions the workers took from shards other than their own
+  long steals() {
+    long steals = 0;
+    for (SessionShard shard : this.shards) {
+      steals += shard.steals;
+    }
+    return steals;
+  }
+
+  // runs the given due session on the given shard's worker: catches its game up to now
+  // and puts it back on its own shard's wheel for its next step, unless it is finished
+  void run(GameSession session, SessionShard by) {
+    if (session.closed) {
+      this.drop(session);
+      return;
+    }
+    long now = this.now();
+    long late = now - session.due;
+    this.lateness.record(late);
+    if (late >= session.loop.stepNanos) {
+      session.overruns++;
+      this.overruns.incrementAndGet();
+    }
+    session.maxLateness = Math.max(session.maxLateness, late);
+    session.loop.advance(now);
+    if (session.loop.sim.isOver()) {
+      this.drop(session);
+      return;
+    }
+    session.due = now + session.loop.stepNanos - session.loop.accumulator;
+    if (by == session.owner) {
+      by.wheel.schedule(session);
+    }
+    else {
+      session.owner.incoming.add(session);
+    }
+  }
+
+  // a due session of a shard other than the given one, taken from the back of its
+  // deque, or null if no other shard has any
+  GameSession steal(SessionShard thief) {
+    for (int i = 1; i < this.shards.length; i++) {
+      SessionShard victim = this.shards[(thief.index + i) % this.shards.length];
+      GameSession session = victim.ready.pollLast();
+      if (session != null) {
+        thief.steals++;
+        return session;
+      }
+    }
+    return null;
+  }
+
+  // hosts many games for a while, firing a bullet in each once a second, and prints how
+  // late their steps ran and how many games fell off their cadence: a game on cadence
+  // ran as many steps as fit in the time it was hosted, give or take the one in flight
+  // at either end. Given as: [sessions [seconds [shards]]]
+  public static void main(String[] args) throws InterruptedException {
+    int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+    int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    SessionHost host = args.length > 2
+        ? new SessionHost(Integer.parseInt(args[2])) : new SessionHost();
+    host.start();
+    GameSession[] hosted = new GameSession[sessions];
+    long firstOpen = System.nanoTime();
+    for (int i = 0; i < sessions; i++) {
+      hosted[i] = host.open(new Simulation(new GameRandom(i), new BulletStore()));
+    }
+    long lastOpen = System.nanoTime();
+    // key presses come from this thread, a player's worth at a time
+    long end = System.nanoTime() + seconds * 1_000_000_000L;
+    while (System.nanoTime() < end) {
+      for (GameSession session : hosted) {
+        session.queueKey(" ");
+      }
+      Thread.sleep(1000);
+    }
+    long firstStop = System.nanoTime();
+    host.shutdown();
+    long lastStop = System.nanoTime();
+    long stepNanos = hosted[0].loop.stepNanos;
+    long fewest = (firstStop - lastOpen) / stepNanos - 1;
+    long most = (lastStop - firstOpen) / stepNanos + 1;
+    long steps = 0;
+    int offCadence = 0;
+    for (GameSession session : hosted) {
+      steps += session.loop.steps;
+      if (!session.loop.sim.isOver()
+          && (session.loop.steps < fewest || session.loop.steps > most)) {
+        offCadence++;
+      }
+    }
+    System.out.printf("%d sessions on %d shards for %ds: %d steps, %d live, "
+        + "%d off their cadence of %d to %d steps%n",
+        sessions, host.shards.length, seconds, steps, host.liveSessions(), offCadence,
+        fewest, most);
+    System.out.printf("lateness p50 %.3fms, p99 %.3fms, max %.3fms; %d overruns, %d steals%n",
+        host.lateness.percentile(0.5) / 1e6, host.lateness.percentile(0.99) / 1e6,
+        host.lateness.max() / 1e6, host.overruns.get(), host.steals());
+  }
+}
+
+// Represents a game hosted by a SessionHost
+class GameSession {
+
+  long id;
+  FixedStepLoop loop;
+  // the shard whose wheel this session waits on
+  SessionShard owner;
+  volatile boolean closed;
+  // the clock reading the next step is due at
+  long due;
+  // the times this session ran a whole step or more late, and the latest it ran, in
+  // nanoseconds; only the worker running the session writes these
+  long overruns;
+  long maxLateness;
+
+  // where this session waits in its TimerWheel: the next session in its slot, and the
+  // turns of the wheel left before it is due
+  GameSession nextInSlot;
+  long rounds;
+
+  // Constructor
+  GameSession(long id, FixedStepLoop loop, SessionShard owner) {
+    this.id = id;
+    this.loop = loop;
+    this.owner = owner;
+  }
+
+  // queues the given key press, from any thread, to be handled just before the next step
+  void queueKey(String keyName) {
+    this.loop.queueKey(keyName);
+  }
+}
+
+// Represents a share of a SessionHost's sessions and the worker that runs them: the
+// wheel they wait on, the ones due to run, and the ones handed to it from other threads
+class SessionShard implements Runnable {
+
+  SessionHost host;
+  int index;
+  TimerWheel wheel;
+  ConcurrentLinkedDeque<GameSession> ready = new ConcurrentLinkedDeque<GameSession>();
+  ConcurrentLinkedQueue<GameSession> incoming = new ConcurrentLinkedQueue<GameSession>();
+  Thread worker;
+  // due sessions this shard's worker took from other shards; only the worker writes this
+  long steals;
+
+  // Constructor
+  SessionShard(SessionHost host, int index, TimerWheel wheel) {
+    this.host = host;
+    this.index = index;
+    this.wheel = wheel;
+  }
+
+  // runs due sessions until the host shuts down, sleeping until the wheel's next slot
+  // whenever none are due here or anywhere else
+  public void run() {
+    while (this.host.running) {
+      long now = this.host.now();
+      if (this.runDue(now) == 0) {
+        LockSupport.parkNanos(this.wheel.nanosToNextSlot(now));
+      }
+    }
+  }
+
+  // collects the sessions due by the given clock reading and runs due sessions, this
+  // shard's and then other shards', until there are none; returns the number run
+  int runDue(long now) {
+    this.collectDue(now);
+    int ran = 0;
+    GameSession session = this.next();
+    while (session != null) {
+      this.host.run(session, this);
+      ran++;
+      session = this.next();
+    }
+    return ran;
+  }
+
+  // puts every incoming session on the wheel, and moves the ones due by the given clock
+  // reading to the due deque
+  void collectDue(long now) {
+    GameSession session = this.incoming.poll();
+    while (session != null) {
+      this.wheel.schedule(session);
+      session = this.incoming.poll();
+    }
+    this.wheel.expire(now, this.ready);
+  }
+
+  // the next due session of this shard, or else one of another shard's, or null
+  GameSession next() {
+    GameSession session = this.ready.pollFirst();
+    return session != null ? session : this.host.steal(this);
+  }
+}
+
+// Represents a hashed timer wheel: a ring of slots that each hold the sessions due in
+// one WHEEL_TICK_NANOS of time, so scheduling and expiring a session take constant time
+// however many are waiting. A session due more than a turn of the wheel away waits in
+// its slot for that many turns. Sessions come due up to one slot after they are due,
+// never before. A wheel belongs to one thread.
+class TimerWheel {
+
+  GameSession[] slots = new GameSession[SessionHost.WHEEL_SLOTS];
+  // the next slot to expire, counted in WHEEL_TICK_NANOS since the clock's zero
+  long current;
+
+  // Represents an empty wheel whose first slot holds what is due at the given time
+  TimerWheel(long now) {
+    this.current = Math.floorDiv(now, SessionHost.WHEEL_TICK_NANOS);
+  }
+
+  // adds the given session to the slot its due time falls at the end of, or to the
+  // next slot to expire if that time has passed
+  void schedule(GameSession session) {
+    long tick = Math.max(this.current,
+        Math.floorDiv(session.due + SessionHost.WHEEL_TICK_NANOS - 1,
+            SessionHost.WHEEL_TICK_NANOS));
+    int slot = (int) (tick & (this.slots.length - 1));
+    session.rounds = (tick - this.current) / this.slots.length;
+    session.nextInSlot = this.slots[slot];
+    this.slots[slot] = session;
+  }
+
+  // moves every session due by the given clock reading to the end of the given deque
+  void expire(long now, ConcurrentLinkedDeque<GameSession> due) {
+    long last = Math.floorDiv(now, SessionHost.WHEEL_TICK_NANOS);
+    for (; this.current <= last; this.current++) {
+      int slot = (int) (this.current & (this.slots.length - 1));
+      GameSession previous = null;
+      GameSession session = this.slots[slot];
+      while (session != null) {
+        GameSession next = session.nextInSlot;
+        if (session.rounds == 0) {
+          if (previous == null) {
+            this.slots[slot] = next;
+          }
+          else {
+            previous.nextInSlot = next;
+          }
+          session.nextInSlot = null;
+          due.addLast(session);
+        }
+        else {
+          session.rounds--;
+          previous = session;
+        }
+        session = next;
+      }
+    }
+  }
+
+  // how long after the given clock reading the next slot is due to expire
+  long nanosToNextSlot(long now) {
+    return Math.max(0, this.current * SessionHost.WHEEL_TICK_NANOS - now);
+  }
+}
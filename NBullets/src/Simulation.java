@@ -0,0 +1,276 @@
+import java.util.Random;
+
+// Represents the rules of the NBullets game on their own, with no drawing, key
+// handling or javalib World, so the game can be run headless as fast as the
+// CPU allows. NBullets draws a Simulation, and steps and forwards key presses to a copy
+// of it, so each of its worlds keeps the game as it was.
+class Simulation {
+
+  // the chance that another ship spawns, each time ships spawn, unless a game's
+  // GameConfig says otherwise
+  static final double SHIP_SPAWN_CHANCE = .6;
+
+  int bulletsLeft;
+  int shipsDestroyed;
+  ILoBullet activeBullets;
+  ILoShip activeShips;
+  // ticks since ships last had a chance to spawn
+  int currentTicks;
+  // ticks since the game started
+  long tick;
+  Random randGen;
+  GameConfig config;
+
+  // reused every tick to resolve collisions
+  HitSet hits;
+  // where each tick is measured, or null if this game isn't being measured
+  GameMetrics metrics;
+  // holds each tick to its deadline by degrading chain reactions, or null for the game
+  // as its rules are
+  ChainBudget budget;
+  // where this game's events are emitted for an EventFileWriter, or null if they
+  // aren't being recorded
+  EventStream events;
+
+  // Constructor
+  Simulation(int bulletsLeft, int shipsDestroyed, ILoBullet bulletList,
+      ILoShip shipList, int currentTicks, Random randGen) {
+    this(bulletsLeft, shipsDestroyed, bulletList, shipList, currentTicks, randGen,
+        GameConfig.DEFAULT);
+  }
+
+  // Represents a game in progress with the given settings
+  Simulation(int bulletsLeft, int shipsDestroyed, ILoBullet bulletList,
+      ILoShip shipList, int currentTicks, Random randGen, GameConfig config) {
+    this.config = config;
+    this.hits = new HitSet();
+    this.hits.shipGrid.fixedPoint = config.fixedPoint;
+    this.bulletsLeft = bulletsLeft;
+    this.shipsDestroyed = shipsDestroyed;
+    this.activeBullets = bulletList;
+    this.activeShips = shipList;
+    this.currentTicks = currentTicks;
+    this.randGen = randGen;
+  }
+
+  // Represents a new game with the default number of bullets
+  Simulation(Random randGen) {
+    this(NBullets.DEFAULTBULLETS, 0, new MtLoBullet(), new MtLoShip(), 0, randGen);
+  }
+
+  // Represents a new game that keeps its bullets in the given empty list of bullets,
+  // such as a BulletStore
+  Simulation(Random randGen, ILoBullet emptyBullets) {
+    this(NBullets.DEFAULTBULLETS, 0, emptyBullets, new MtLoShip(), 0, randGen);
+  }
+
+  // Represents a new game with the given settings that keeps its bullets in the
+  // given empty list of bullets
+  Simulation(GameConfig config, Random randGen, ILoBullet emptyBullets) {
+    this(config, randGen, emptyBullets, new MtLoShip());
+  }
+
+  // Represents a new game with the given settings that keeps its bullets and ships in
+  // the given empty lists, such as a BulletVector and a ShipVector
+  Simulation(GameConfig config, Random randGen, ILoBullet emptyBullets, ILoShip emptyShips) {
+    this(config.startingBullets, 0, emptyBullets, emptyShips, 0, randGen, config);
+  }
+
+  // Represents a copy of the given game as it is, to carry on without changing it. The
+  // copy shares the game's pieces, which only a BulletStore updates in place, what
+  // measures and records it, and the HitSet holding its last tick's workings, and
+  // carries on a copy of its random stream, so stepping either leaves the other as it
+  // was unless it keeps its bullets in a BulletStore.
+  Simulation(Simulation game) {
+    this.config = game.config;
+    this.hits = game.hits;
+    this.bulletsLeft = game.bulletsLeft;
+    this.shipsDestroyed = game.shipsDestroyed;
+    this.activeBullets = game.activeBullets;
+    this.activeShips = game.activeShips;
+    this.currentTicks = game.currentTicks;
+    this.tick = game.tick;
+    this.randGen = GameRandom.copyOf(game.randGen);
+    this.metrics = game.metrics;
+    this.budget = game.budget;
+    this.events = game.events;
+  }
+
+  // a copy of this game advanced by one tick, leaving this one as it was
+  Simulation stepped() {
+    Simulation next = new Simulation(this);
+    next.step();
+    return next;
+  }
+
+  // a copy of this game after the given key press, leaving this one as it was
+  Simulation afterKey(String keyName) {
+    Simulation next = new Simulation(this);
+    next.handleKey(keyName);
+    return next;
+  }
+
+  // advances the game by one tick: scores and removes the ships hit by bullets,
+  // splits the bullets that hit them, moves everything else, and every
+  // config.spawnTicks ticks spawns a random number of ships
+  void step() {
+    long start = this.clock();
+    int bulletsBefore = this.metrics == null && this.budget == null
+        ? 0 : this.activeBullets.countBullets();
+    int budgetLevel = this.budget == null ? ChainBudget.NORMAL : this.budget.level;
+    this.currentTicks = (this.currentTicks + 1) % this.config.spawnTicks;
+    this.tick++;
+    this.hits.events = this.events;
+    if (this.events != null) {
+      this.events.tick = this.tick;
+    }
+
+    // every bullet is tested against every ship once, and the score and both
+    // updates read the result; the ships go first since a BulletStore updates
+    // its bullets in place
+    this.hits.resolve(this.activeBullets, this.activeShips);
+    if (this.events != null) {
+      this.hits.emitShipHits();
+    }
+    if (this.budget != null) {
+      this.budget.applyTo(this.hits, bulletsBefore);
+    }
+    this.shipsDestroyed += this.hits.bulletHits;
+    long lap = this.lap(GameMetrics.SCORE, start);
+    ILoShip updatedShips = this.activeShips.updateShipsFrom(this.hits, 0);
+    lap = this.lap(GameMetrics.SHIP_UPDATE, lap);
+    this.activeBullets = this.activeBullets.updateBulletsFrom(this.hits, 0);
+    lap = this.lap(GameMetrics.BULLET_UPDATE, lap);
+
+    if (this.currentTicks == 0) {
+      updatedShips = this.generateRandomShips(updatedShips);
+    }
+    this.activeShips = updatedShips;
+    this.lap(GameMetrics.SPAWN, lap);
+
+    if (this.metrics != null) {
+      this.lap(GameMetrics.STEP, start);
+      int bulletsAfter = this.activeBullets.countBullets();
+      this.metrics.recordTick(
+          bulletsAfter,
+          this.activeShips.countShips(),
+          this.hits.collisionTests,
+          this.hits.chainBullets,
+          bulletsBefore - this.hits.bulletHits + this.hits.chainBullets - bulletsAfter,
+          budgetLevel);
+    }
+    if (this.budget != null) {
+      this.budget.record(System.nanoTime() - start, bulletsBefore);
+    }
+  }
+
+  // the current time in nanoseconds if this game is being measured or has a budget,
+  // otherwise 0
+  long clock() {
+    return this.metrics == null && this.budget == null ? 0 : System.nanoTime();
+  }
+
+  // records the time since the given clock reading against the given phase if this
+  // game is being measured, and returns the current clock reading
+  long lap(int phase, long since) {
+    if (this.metrics == null) {
+      return 0;
+    }
+    long now = System.nanoTime();
+    this.metrics.recordPhase(phase, now - since);
+    return now;
+  }
+
+  // fires a bullet from the bottom of the screen if there are any left,
+  // and determines if one was fired
+  boolean fire() {
+    if (this.bulletsLeft > 0) {
+      this.bulletsLeft--;
+      if (this.events != null) {
+        this.events.tick = this.tick;
+        this.events.emit(EventStream.SHOT, NBullets.WIDTH / 2, NBullets.HEIGHT,
+            this.bulletsLeft, 0);
+      }
+      this.activeBullets = this.activeBullets.addBullet(
+          new Bullet(
+              NBullets.WIDTH / 2,
+              NBullets.HEIGHT,
+              NBullets.BULLETSIZE,
+              270,
+              1,
+              NBullets.BULLETCOLOR,
+              this.config));
+      return true;
+    }
+    return false;
+  }
+
+  // responds to a key press: the space bar fires a bullet
+  void handleKey(String keyName) {
+    if (keyName.equals(" ")) {
+      this.fire();
+    }
+  }
+
+  // determines if the game is over: every bullet has been fired and none are left
+  boolean isOver() {
+    return this.bulletsLeft == 0 && this.activeBullets.isEmpty();
+  }
+
+  // Generates a random number of ships for the game to display and adds them to the
+  // given list, adding another ship each time the config's spawn chance, 60% unless
+  // it says otherwise, comes up
+  ILoShip generateRandomShips(ILoShip other) {
+    ShipListBuilder newShips = new ShipListBuilder();
+
+    while (this.randGen.nextDouble() <= this.config.shipSpawnChance) {
+
+      int leftOrRight = (int) Math.round(this.randGen.nextDouble());
+
+      Ship ship = new Ship(
+          leftOrRight * NBullets.WIDTH,
+          this.config.snap(NBullets.SHIPSIZE
+              + this.randGen.nextDouble() * (NBullets.HEIGHT - 2 * NBullets.SHIPSIZE)),
+          NBullets.SHIPSIZE, 180 * leftOrRight,
+          NBullets.SHIPCOLOR,
+          this.config.shipVelocity(180 * leftOrRight));
+      if (this.events != null) {
+        this.events.emit(EventStream.SPAWN, ship.x, ship.y, 180 * leftOrRight, ship.size);
+      }
+      newShips.add(ship);
+    }
+    return other.addShips(newShips);
+  }
+
+  // a summary of the current state of this game
+  SimulationSnapshot snapshot() {
+    return new SimulationSnapshot(
+        this.tick,
+        this.bulletsLeft,
+        this.shipsDestroyed,
+        this.activeBullets.countBullets(),
+        this.activeShips.countShips(),
+        this.isOver());
+  }
+}
+
+// Represents the state of a Simulation at one tick, as plain numbers
+class SimulationSnapshot {
+  long tick;
+  int bulletsLeft;
+  int shipsDestroyed;
+  int liveBullets;
+  int liveShips;
+  boolean over;
+
+  // Constructor
+  SimulationSnapshot(long tick, int bulletsLeft, int shipsDestroyed,
+      int liveBullets, int liveShips, boolean over) {
+    this.tick = tick;
+    this.bulletsLeft = bulletsLeft;
+    this.shipsDestroyed = shipsDestroyed;
+    this.liveBullets = liveBullets;
+    this.liveShips = liveShips;
+    this.over = over;
+  }
+}
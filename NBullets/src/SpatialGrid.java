@@ -0,0 +1,267 @@
+import java.util.Arrays;
+
+// Represents a uniform grid laid over the playing field that buckets game pieces
+// by position, so a collision query only has to look at the pieces in nearby cells
+// instead of every piece on the field
+class SpatialGrid {
+
+  // a cell is as wide as a ship plus the largest bullet, so a piece can only touch
+  // pieces in its own cell or one of the eight around it
+  static final int CELLSIZE = NBullets.SHIPSIZE + NBullets.MAX_BULLETSIZE;
+  static final int COLS = NBullets.WIDTH / CELLSIZE + 1;
+  static final int ROWS = NBullets.HEIGHT / CELLSIZE + 1;
+
+  // index of the first piece in each cell, or -1 if the cell is empty
+  int[] cellHeads = new int[COLS * ROWS];
+  // index of the next piece in the same cell, or -1 at the end of the cell
+  int[] next;
+  double[] xs;
+  double[] ys;
+  // how far each piece moves in its next step
+  double[] dxs;
+  double[] dys;
+  int[] sizes;
+  // the position of each piece in fixed point, only kept while this grid is in fixed
+  // point, so pieces are converted once when they are added rather than at every test
+  int[] fixedXs;
+  int[] fixedYs;
+  int count;
+  int maxSize;
+  // the furthest any piece moves along either axis in its next step
+  double maxStep;
+  // whether the pieces in this grid are tested along their whole next step instead
+  // of only where they are now
+  boolean swept;
+  // whether the pieces in this grid are kept in fixed point, so they are tested on
+  // integers; unlike swept, this outlasts clear, since a grid is reused for one game,
+  // and it must be set before the pieces are added
+  boolean fixedPoint;
+
+  // Constructor
+  SpatialGrid() {
+    this(16);
+  }
+
+  // Represents a grid with room for the given number of pieces before it grows
+  SpatialGrid(int capacity) {
+    this.next = new int[capacity];
+    this.xs = new double[capacity];
+    this.ys = new double[capacity];
+    this.dxs = new double[capacity];
+    this.dys = new double[capacity];
+    this.sizes = new int[capacity];
+    this.fixedXs = new int[capacity];
+    this.fixedYs = new int[capacity];
+    this.clear();
+  }
+
+  // removes every piece from this grid, keeping its storage for reuse
+  void clear() {
+    Arrays.fill(this.cellHeads, -1);
+    this.count = 0;
+    this.maxSize = 0;
+    this.maxStep = 0;
+    this.swept = false;
+  }
+
+  // adds a piece with the given position and size to this grid and
+  // returns its index in the order pieces were added
+  int add(double x, double y, int size) {
+    return this.add(x, y, size, 0, 0);
+  }
+
+  // adds a piece with the given position, size and next step to this grid and
+  // returns its index in the order pieces were added
+  int add(double x, double y, int size, double dx, double dy) {
+    if (this.count == this.xs.length) {
+      int capacity = this.count * 2;
+      this.next = Arrays.copyOf(this.next, capacity);
+      this.xs = Arrays.copyOf(this.xs, capacity);
+      this.ys = Arrays.copyOf(this.ys, capacity);
+      this.dxs = Arrays.copyOf(this.dxs, capacity);
+      this.dys = Arrays.copyOf(this.dys, capacity);
+      this.sizes = Arrays.copyOf(this.sizes, capacity);
+      this.fixedXs = Arrays.copyOf(this.fixedXs, capacity);
+      this.fixedYs = Arrays.copyOf(this.fixedYs, capacity);
+    }
+    int index = this.count;
+    int cell = this.rowOf(y) * COLS + this.colOf(x);
+    this.xs[index] = x;
+    this.ys[index] = y;
+    this.dxs[index] = dx;
+    this.dys[index] = dy;
+    this.sizes[index] = size;
+    if (this.fixedPoint) {
+      this.fixedXs[index] = FixedPoint.toFixed(x);
+      this.fixedYs[index] = FixedPoint.toFixed(y);
+    }
+    this.next[index] = this.cellHeads[cell];
+    this.cellHeads[cell] = index;
+    this.maxSize = Math.max(this.maxSize, size);
+    this.maxStep = Math.max(this.maxStep, Math.max(Math.abs(dx), Math.abs(dy)));
+    this.count = index + 1;
+    return index;
+  }
+
+  // determines if any piece in this grid collided with a piece of the given
+  // position and size, using the same test as AGamePiece.collidedWith
+  boolean anyCollidedWith(double x, double y, int size) {
+    return this.anyCollidedWith(x, y, this.fixed(x), this.fixed(y), size);
+  }
+
+  // determines if any piece in this grid collided with a piece of the given position,
+  // also given in fixed point for a grid in fixed point to test it on, and size
+  boolean anyCollidedWith(double x, double y, int fixedX, int fixedY, int size) {
+    if (this.swept) {
+      return this.anyCollidedWith(x, y, 0, 0, size, true);
+    }
+    int reach = size + this.maxSize;
+    int lastRow = this.rowOf(y, fixedY, reach);
+    int lastCol = this.colOf(x, fixedX, reach);
+    for (int row = this.rowOf(y, fixedY, -reach); row <= lastRow; row++) {
+      for (int col = this.colOf(x, fixedX, -reach); col <= lastCol; col++) {
+        for (int i = this.cellHeads[row * COLS + col]; i != -1; i = this.next[i]) {
+          if (this.touches(x, y, fixedX, fixedY, size, i)) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  // marks every piece in this grid that collided with a piece of the given position
+  // and size as a hit ship in the given HitSet, and determines if there were any
+  boolean markCollisions(double x, double y, int size, HitSet hits) {
+    return this.markCollisions(x, y, this.fixed(x), this.fixed(y), size, hits);
+  }
+
+  // marks every piece in this grid that collided with a piece of the given position,
+  // also given in fixed point for a grid in fixed point to test it on, and size as a
+  // hit ship in the given HitSet, and determines if there were any
+  boolean markCollisions(double x, double y, int fixedX, int fixedY, int size,
+      HitSet hits) {
+    boolean anyHit = false;
+    int reach = size + this.maxSize;
+    int lastRow = this.rowOf(y, fixedY, reach);
+    int lastCol = this.colOf(x, fixedX, reach);
+    for (int row = this.rowOf(y, fixedY, -reach); row <= lastRow; row++) {
+      for (int col = this.colOf(x, fixedX, -reach); col <= lastCol; col++) {
+        for (int i = this.cellHeads[row * COLS + col]; i != -1; i = this.next[i]) {
+          hits.collisionTests++;
+          if (this.touches(x, y, fixedX, fixedY, size, i)) {
+            hits.markShip(i);
+            anyHit = true;
+          }
+        }
+      }
+    }
+    return anyHit;
+  }
+
+  // determines if any piece in this grid collided with a piece of the given position,
+  // next step and size, using the same test as AGamePiece.collidedWith: along the
+  // whole step if either the piece sweeps or this grid does, otherwise where they are
+  boolean anyCollidedWith(double x, double y, double dx, double dy, int size,
+      boolean sweeps) {
+    if (!sweeps && !this.swept) {
+      return this.anyCollidedWith(x, y, size);
+    }
+    int reach = (int) Math.ceil(size + this.maxSize + this.maxStep);
+    int lastRow = this.rowOf(Math.max(y, y + dy) + reach);
+    int lastCol = this.colOf(Math.max(x, x + dx) + reach);
+    for (int row = this.rowOf(Math.min(y, y + dy) - reach); row <= lastRow; row++) {
+      for (int col = this.colOf(Math.min(x, x + dx) - reach); col <= lastCol; col++) {
+        for (int i = this.cellHeads[row * COLS + col]; i != -1; i = this.next[i]) {
+          if (AGamePiece.contactTime(x, y, dx, dy, size,
+              this.xs[i], this.ys[i], this.dxs[i], this.dys[i], this.sizes[i])
+              != AGamePiece.NO_CONTACT) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  // records in the given HitSet a contact between the bullet at the given index, which
+  // splits into the given number of bullets, and every piece in this grid it touches
+  // during its next step, and how far through the step each contact comes. Unlike
+  // markCollisions this marks nothing: HitSet.finishContacts works out which of the
+  // contacts happen, once every bullet's are known.
+  void addContacts(double x, double y, double dx, double dy, int size, int bullet,
+      int children, HitSet hits) {
+    int reach = (int) Math.ceil(size + this.maxSize + this.maxStep);
+    int lastRow = this.rowOf(Math.max(y, y + dy) + reach);
+    int lastCol = this.colOf(Math.max(x, x + dx) + reach);
+    for (int row = this.rowOf(Math.min(y, y + dy) - reach); row <= lastRow; row++) {
+      for (int col = this.colOf(Math.min(x, x + dx) - reach); col <= lastCol; col++) {
+        for (int i = this.cellHeads[row * COLS + col]; i != -1; i = this.next[i]) {
+          hits.collisionTests++;
+          double contact = AGamePiece.contactTime(x, y, dx, dy, size,
+              this.xs[i], this.ys[i], this.dxs[i], this.dys[i], this.sizes[i]);
+          if (contact != AGamePiece.NO_CONTACT) {
+            hits.addContact(bullet, i, contact, children);
+          }
+        }
+      }
+    }
+  }
+
+  // determines if a piece of the given position and size touches the piece at the given
+  // index where they are now, as AGamePiece.circlesCollided does, or as
+  // FixedPoint.circlesCollided does on the fixed-point positions if this grid is in
+  // fixed point
+  boolean touches(double x, double y, int fixedX, int fixedY, int size, int i) {
+    if (this.fixedPoint) {
+      return FixedPoint.circlesCollided(fixedX, fixedY, size,
+          this.fixedXs[i], this.fixedYs[i], this.sizes[i]);
+    }
+    return AGamePiece.circlesCollided(x, y, size, this.xs[i], this.ys[i], this.sizes[i]);
+  }
+
+  // the given coordinate in fixed point if this grid is in fixed point, otherwise 0,
+  // since only a grid in fixed point reads it
+  int fixed(double coordinate) {
+    return this.fixedPoint ? FixedPoint.toFixed(coordinate) : 0;
+  }
+
+  // the column holding the given x coordinate, with pieces off the edge of the
+  // field kept in the outermost column
+  int colOf(double x) {
+    return Math.max(0, Math.min(COLS - 1, (int) Math.floor(x / CELLSIZE)));
+  }
+
+  // the row holding the given y coordinate, with pieces off the edge of the
+  // field kept in the outermost row
+  int rowOf(double y) {
+    return Math.max(0, Math.min(ROWS - 1, (int) Math.floor(y / CELLSIZE)));
+  }
+
+  // the column holding the given x coordinate moved by the given whole number of
+  // pixels, found on the integers from its fixed-point value if this grid is in fixed
+  // point
+  int colOf(double x, int fixedX, int offset) {
+    if (this.fixedPoint) {
+      return this.cellOf((fixedX >> FixedPoint.SHIFT) + offset, COLS);
+    }
+    return this.colOf(x + offset);
+  }
+
+  // the row holding the given y coordinate moved by the given whole number of pixels,
+  // found on the integers from its fixed-point value if this grid is in fixed point
+  int rowOf(double y, int fixedY, int offset) {
+    if (this.fixedPoint) {
+      return this.cellOf((fixedY >> FixedPoint.SHIFT) + offset, ROWS);
+    }
+    return this.rowOf(y + offset);
+  }
+
+  // the column or row, of the given number of them, holding the given whole-pixel
+  // coordinate, the same one colOf or rowOf gives: shifting a fixed-point value rounds
+  // it down to its pixel, and dividing rounds toward zero rather than down only for
+  // coordinates off the edge, which are kept in the first column or row either way
+  int cellOf(int pixel, int cells) {
+    return Math.max(0, Math.min(cells - 1, pixel / CELLSIZE));
+  }
+}
@@ -0,0 +1,163 @@
+import java.awt.Color;
+import java.nio.ByteBuffer;
+
+// Saves the whole state of a Simulation into a flat, versioned binary form in a reused
+// direct ByteBuffer, and rebuilds a Simulation from it in one pass, so a game can be
+// checkpointed every tick for rewind or recovery. The game must use a GameRandom so
+// its random stream can be saved with it.
+//
+// Layout:
+//   int MAGIC, short VERSION, byte storage (0 = cons lists, 1 = BulletStore, 2 = vectors),
+//   int bulletsLeft, int shipsDestroyed, int currentTicks, long tick, long random state,
+//   int startingBullets, double shipSpawnRate, int bulletSpeed, int maxBulletSize,
+//   int stepMultiplier, byte flags (GameConfig.flags), double shipSpawnChance,
+//   int bullet count, int ship count,
+//   then each bullet:  double x, y, direction, dx, dy, int size, colSoFar, rgb
+//   then each ship:    double x, y, direction, dx, int size, rgb
+class WorldSnapshot {
+
+  static final int MAGIC = 0x4E425353; // "NBSS"
+  static final short VERSION = 3;
+  static final int HEADER_BYTES = 4 + 2 + 1 + 4 * 3 + 8 * 2 + 4 + 8 + 4 * 2 + 4 + 1 + 8 + 4 * 2;
+  static final int BULLET_BYTES = 8 * 5 + 4 * 3;
+  static final int SHIP_BYTES = 8 * 4 + 4 * 2;
+
+  ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+  // colors seen while restoring, so each distinct color is only built once
+  Color[] colors = new Color[] {NBullets.BULLETCOLOR, NBullets.SHIPCOLOR};
+
+  // saves the given game into this snapshot's buffer, replacing what it held, and
+  // returns the buffer ready to read
+  ByteBuffer save(Simulation sim) {
+    if (!(sim.randGen instanceof GameRandom)) {
+      throw new IllegalStateException("snapshots need a game that uses a GameRandom");
+    }
+    int bullets = sim.activeBullets.countBullets();
+    int ships = sim.activeShips.countShips();
+    int needed = HEADER_BYTES + bullets * BULLET_BYTES + ships * SHIP_BYTES;
+    if (this.buffer.capacity() < needed) {
+      this.buffer = ByteBuffer.allocateDirect(Math.max(needed, this.buffer.capacity() * 2));
+    }
+    ByteBuffer out = this.buffer;
+    out.clear();
+    out.putInt(MAGIC);
+    out.putShort(VERSION);
+    out.put(GameRecorder.storageOf(sim));
+    out.putInt(sim.bulletsLeft);
+    out.putInt(sim.shipsDestroyed);
+    out.putInt(sim.currentTicks);
+    out.putLong(sim.tick);
+    out.putLong(((GameRandom) sim.randGen).saveState());
+    out.putInt(sim.config.startingBullets);
+    out.putDouble(sim.config.shipSpawnRate);
+    out.putInt(sim.config.bulletSpeed);
+    out.putInt(sim.config.maxBulletSize);
+    out.putInt(sim.config.stepMultiplier);
+    out.put(sim.config.flags());
+    out.putDouble(sim.config.shipSpawnChance);
+    out.putInt(bullets);
+    out.putInt(ships);
+    sim.activeBullets.writeBullets(out);
+    sim.activeShips.writeShips(out);
+    out.flip();
+    return out;
+  }
+
+  // rebuilds the game saved in this snapshot's buffer
+  Simulation restore() {
+    ByteBuffer in = this.buffer.duplicate();
+    if (in.getInt() != MAGIC) {
+      throw new IllegalStateException("not a world snapshot");
+    }
+    short version = in.getShort();
+    if (version != VERSION) {
+      throw new IllegalStateException("unsupported snapshot version " + version);
+    }
+    byte storage = in.get();
+    int bulletsLeft = in.getInt();
+    int shipsDestroyed = in.getInt();
+    int currentTicks = in.getInt();
+    long tick = in.getLong();
+    GameRandom randGen = new GameRandom(0);
+    randGen.restoreState(in.getLong());
+    GameConfig config = GameConfig.of(in.getInt(), in.getDouble(), in.getInt(), in.getInt(),
+        in.getInt(), in.get(), in.getDouble());
+    int bullets = in.getInt();
+    int ships = in.getInt();
+
+    ILoBullet bulletList;
+    if (storage == GameRecorder.STORAGE_STORE) {
+      BulletStore store = new BulletStore(config, Math.max(1, bullets));
+      for (int i = 0; i < bullets; i++) {
+        double x = in.getDouble();
+        double y = in.getDouble();
+        double direction = in.getDouble();
+        double dx = in.getDouble();
+        double dy = in.getDouble();
+        store.add(x, y, in.getInt(), direction, in.getInt(), this.color(in.getInt()), dx, dy);
+      }
+      bulletList = store;
+    }
+    else {
+      BulletListBuilder list = new BulletListBuilder();
+      PieceVectorBuilder vector = new PieceVectorBuilder();
+      for (int i = 0; i < bullets; i++) {
+        double x = in.getDouble();
+        double y = in.getDouble();
+        double direction = in.getDouble();
+        double dx = in.getDouble();
+        double dy = in.getDouble();
+        int size = in.getInt();
+        Bullet bullet = new Bullet(x, y, size, direction, in.getInt(),
+            this.color(in.getInt()), config, dx, dy);
+        if (storage == GameRecorder.STORAGE_VECTOR) {
+          vector.add(bullet);
+        }
+        else {
+          list.add(bullet);
+        }
+      }
+      bulletList = storage == GameRecorder.STORAGE_VECTOR
+          ? new BulletVector(vector) : list.build(new MtLoBullet());
+    }
+
+    ShipListBuilder shipList = new ShipListBuilder();
+    PieceVectorBuilder shipVector = new PieceVectorBuilder();
+    for (int i = 0; i < ships; i++) {
+      double x = in.getDouble();
+      double y = in.getDouble();
+      double direction = in.getDouble();
+      double dx = in.getDouble();
+      int size = in.getInt();
+      Ship ship = new Ship(x, y, size, direction, this.color(in.getInt()), dx);
+      if (storage == GameRecorder.STORAGE_VECTOR) {
+        shipVector.add(ship);
+      }
+      else {
+        shipList.add(ship);
+      }
+    }
+
+    Simulation sim = new Simulation(bulletsLeft, shipsDestroyed, bulletList,
+        storage == GameRecorder.STORAGE_VECTOR
+            ? new ShipVector(shipVector) : shipList.build(new MtLoShip()),
+        currentTicks, randGen, config);
+    sim.tick = tick;
+    return sim;
+  }
+
+  // the color with the given RGB value, reusing one already seen
+  Color color(int rgb) {
+    for (Color color : this.colors) {
+      if (color.getRGB() == rgb) {
+        return color;
+      }
+    }
+    Color color = new Color(rgb, true);
+    Color[] colors = new Color[this.colors.length + 1];
+    System.arraycopy(this.colors, 0, colors, 0, this.colors.length);
+    colors[this.colors.length] = color;
+    this.colors = colors;
+    return color;
+  }
+}